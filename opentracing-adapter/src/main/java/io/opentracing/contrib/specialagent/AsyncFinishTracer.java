@@ -0,0 +1,236 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import static io.opentracing.contrib.specialagent.Constants.*;
+
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import io.opentracing.Tracer;
+
+/**
+ * A {@link DelegateTracer} that finishes the spans of the target tracer on a
+ * dedicated export thread, so that the cost of exporting spans is not paid by
+ * application threads. Finished spans are enqueued into a bounded lock-free
+ * queue, which the export thread drains in batches of the size specified by
+ * {@code -Dsa.export.async.batch}, at least every flush interval specified by
+ * {@code -Dsa.export.async.interval}. If the queue is full, the finished span
+ * is dropped, and the number of dropped spans is counted and logged. Spans
+ * that are finished after the export thread is stopped are also dropped, and
+ * are counted separately.
+ *
+ * @author Seva Safris
+ */
+public class AsyncFinishTracer extends DelegateTracer {
+  private static final Logger logger = Logger.getLogger(AsyncFinishTracer.class);
+
+  /**
+   * Returns a new {@link AsyncFinishTracer} for the specified target
+   * {@link Tracer}, configured by the specified properties, or the target
+   * {@link Tracer} if {@code -Dsa.export.async} is not specified.
+   *
+   * @param target The target {@link Tracer}.
+   * @param properties The properties, such as {@link System#getProperties()}.
+   * @return A new {@link AsyncFinishTracer} for the specified target
+   *         {@link Tracer}, or the target {@link Tracer} if
+   *         {@code -Dsa.export.async} is not specified.
+   * @throws IllegalArgumentException If a property has an invalid value.
+   */
+  public static Tracer create(final Tracer target, final Properties properties) {
+    final String async = properties.getProperty(EXPORT_ASYNC);
+    if (async == null || "false".equals(async))
+      return target;
+
+    final double capacity = SamplingTracer.parse(properties, EXPORT_ASYNC_QUEUE, 8192);
+    if (capacity < 1 || capacity > Integer.MAX_VALUE)
+      throw new IllegalArgumentException(EXPORT_ASYNC_QUEUE + " must be a positive integer");
+
+    final double batchSize = SamplingTracer.parse(properties, EXPORT_ASYNC_BATCH, 512);
+    if (batchSize < 1 || batchSize > Integer.MAX_VALUE)
+      throw new IllegalArgumentException(EXPORT_ASYNC_BATCH + " must be a positive integer");
+
+    final double interval = SamplingTracer.parse(properties, EXPORT_ASYNC_INTERVAL, 100);
+    if (!(interval > 0))
+      throw new IllegalArgumentException(EXPORT_ASYNC_INTERVAL + " must be a positive number");
+
+    if (logger.isLoggable(Level.FINE))
+      logger.fine("Exporting spans asynchronously with a queue of " + (int)capacity + " spans, in batches of " + (int)batchSize + " spans, every " + interval + "ms");
+
+    return new AsyncFinishTracer(target, (int)capacity, (int)batchSize, TimeUnit.MILLISECONDS.toNanos((long)interval));
+  }
+
+  private final ConcurrentLinkedQueue<AsyncSpan> queue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong droppedAfterStop = new AtomicLong();
+  private final int capacity;
+  private final int batchSize;
+  private final long interval;
+  private final Thread thread;
+  private volatile boolean closed;
+  private long reported;
+
+  AsyncFinishTracer(final Tracer target, final int capacity, final int batchSize, final long interval) {
+    super(target);
+    if (batchSize > capacity)
+      throw new IllegalArgumentException(EXPORT_ASYNC_BATCH + " (" + batchSize + ") must not be greater than " + EXPORT_ASYNC_QUEUE + " (" + capacity + ")");
+
+    this.capacity = capacity;
+    this.batchSize = batchSize;
+    this.interval = interval;
+    this.thread = new Thread("SpecialAgent-Exporter") {
+      @Override
+      public void run() {
+        drain();
+      }
+    };
+
+    thread.setDaemon(true);
+    thread.start();
+    Runtime.getRuntime().addShutdownHook(new Thread("SpecialAgent-Exporter-Shutdown") {
+      @Override
+      public void run() {
+        stop();
+      }
+    });
+  }
+
+  @Override
+  public SpanBuilder buildSpan(final String operationName) {
+    return new AsyncSpanBuilder(this, target.buildSpan(operationName));
+  }
+
+  /**
+   * Returns the number of finished spans that were dropped because the queue
+   * was full.
+   *
+   * @return The number of finished spans that were dropped because the queue
+   *         was full.
+   */
+  public long getDroppedSpans() {
+    return dropped.get();
+  }
+
+  /**
+   * Returns the number of spans that were dropped because they were finished
+   * after the export thread was stopped.
+   *
+   * @return The number of spans that were dropped because they were finished
+   *         after the export thread was stopped.
+   */
+  public long getDroppedSpansAfterStop() {
+    return droppedAfterStop.get();
+  }
+
+  /**
+   * Drops the specified span, which was finished after the export thread was
+   * stopped. The first such span is logged, because the export thread that
+   * logs the spans dropped from a full queue is no longer running.
+   */
+  private void dropAfterStop(final AsyncSpan span) {
+    if (droppedAfterStop.incrementAndGet() == 1)
+      logger.warning("Dropping span(s) finished after the export thread was stopped, starting with: " + span);
+  }
+
+  /**
+   * Enqueues the specified finished span to be finished in the target tracer
+   * by the export thread, or drops the span if the queue is full.
+   *
+   * @param span The finished span.
+   */
+  void enqueue(final AsyncSpan span) {
+    if (closed) {
+      dropAfterStop(span);
+      return;
+    }
+
+    final int size = this.size.incrementAndGet();
+    if (size > capacity) {
+      this.size.decrementAndGet();
+      dropped.incrementAndGet();
+      return;
+    }
+
+    queue.offer(span);
+    // If the export thread stopped before it could observe the span, drop it
+    if (closed && queue.remove(span)) {
+      this.size.decrementAndGet();
+      dropAfterStop(span);
+      return;
+    }
+
+    if (size == batchSize)
+      LockSupport.unpark(thread);
+  }
+
+  private void drain() {
+    while (true) {
+      final boolean closed = this.closed;
+      if (size.get() < batchSize && !closed)
+        LockSupport.parkNanos(this, interval);
+
+      AsyncSpan span;
+      for (int i = 0; i < batchSize && (span = queue.poll()) != null; ++i) {
+        size.decrementAndGet();
+        try {
+          span.target.finish(span.finishMicros);
+        }
+        catch (final RuntimeException e) {
+          logger.log(Level.WARNING, "Failed to finish span: " + span, e);
+        }
+      }
+
+      final long dropped = this.dropped.get();
+      if (dropped != reported) {
+        logger.warning((dropped - reported) + " span(s) dropped because the export queue was full");
+        reported = dropped;
+      }
+
+      if (closed && queue.isEmpty())
+        return;
+    }
+  }
+
+  /**
+   * Stops the export thread after all enqueued spans are finished in the
+   * target tracer. Spans that are finished after this method is called are
+   * dropped, and are counted in {@link #getDroppedSpansAfterStop()}.
+   */
+  void stop() {
+    if (closed)
+      return;
+
+    closed = true;
+    LockSupport.unpark(thread);
+    try {
+      thread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+    catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public void close() {
+    stop();
+    super.close();
+  }
+}
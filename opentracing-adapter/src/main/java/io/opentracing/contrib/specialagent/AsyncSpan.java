@@ -0,0 +1,46 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import io.opentracing.Span;
+
+/**
+ * A {@link Span} of the {@link AsyncFinishTracer}, which enqueues the finish
+ * of the target span to be performed by the export thread.
+ *
+ * @author Seva Safris
+ */
+class AsyncSpan extends DelegateSpan {
+  private final AsyncFinishTracer tracer;
+  long finishMicros;
+
+  AsyncSpan(final Span target, final AsyncFinishTracer tracer) {
+    super(target);
+    this.tracer = tracer;
+  }
+
+  @Override
+  public void finish() {
+    finishMicros = SpanClock.currentTimeMicros();
+    tracer.enqueue(this);
+  }
+
+  @Override
+  public void finish(final long finishMicros) {
+    this.finishMicros = finishMicros;
+    tracer.enqueue(this);
+  }
+}
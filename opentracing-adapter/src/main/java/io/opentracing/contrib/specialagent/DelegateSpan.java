@@ -0,0 +1,131 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.util.Map;
+import java.util.Objects;
+
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.tag.Tag;
+
+/**
+ * A {@link DelegateSpan} contains some other {@link Span}, to which it
+ * delegates all calls. Subclasses of {@link DelegateSpan} may override some of
+ * these methods to provide additional functionality, such as deferring the
+ * finish of the target {@link Span}.
+ *
+ * @author Seva Safris
+ */
+public class DelegateSpan implements Span {
+  /** The target {@link Span}. */
+  protected final Span target;
+
+  /**
+   * Creates a new {@link DelegateSpan} with the specified target {@link Span}.
+   *
+   * @param target The target {@link Span}.
+   * @throws NullPointerException If the target {@link Span} is null.
+   */
+  public DelegateSpan(final Span target) {
+    this.target = Objects.requireNonNull(target);
+  }
+
+  @Override
+  public SpanContext context() {
+    return target.context();
+  }
+
+  @Override
+  public Span setTag(final String key, final String value) {
+    target.setTag(key, value);
+    return this;
+  }
+
+  @Override
+  public Span setTag(final String key, final boolean value) {
+    target.setTag(key, value);
+    return this;
+  }
+
+  @Override
+  public Span setTag(final String key, final Number value) {
+    target.setTag(key, value);
+    return this;
+  }
+
+  @Override
+  public <T>Span setTag(final Tag<T> tag, final T value) {
+    target.setTag(tag, value);
+    return this;
+  }
+
+  @Override
+  public Span log(final Map<String,?> fields) {
+    target.log(fields);
+    return this;
+  }
+
+  @Override
+  public Span log(final long timestampMicroseconds, final Map<String,?> fields) {
+    target.log(timestampMicroseconds, fields);
+    return this;
+  }
+
+  @Override
+  public Span log(final String event) {
+    target.log(event);
+    return this;
+  }
+
+  @Override
+  public Span log(final long timestampMicroseconds, final String event) {
+    target.log(timestampMicroseconds, event);
+    return this;
+  }
+
+  @Override
+  public Span setBaggageItem(final String key, final String value) {
+    target.setBaggageItem(key, value);
+    return this;
+  }
+
+  @Override
+  public String getBaggageItem(final String key) {
+    return target.getBaggageItem(key);
+  }
+
+  @Override
+  public Span setOperationName(final String operationName) {
+    target.setOperationName(operationName);
+    return this;
+  }
+
+  @Override
+  public void finish() {
+    target.finish();
+  }
+
+  @Override
+  public void finish(final long finishMicros) {
+    target.finish(finishMicros);
+  }
+
+  @Override
+  public String toString() {
+    return String.valueOf(target);
+  }
+}
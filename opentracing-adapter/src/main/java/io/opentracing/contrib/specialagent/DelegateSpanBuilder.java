@@ -0,0 +1,120 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.util.Objects;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.tag.Tag;
+
+/**
+ * A {@link DelegateSpanBuilder} contains some other
+ * {@link Tracer.SpanBuilder}, to which it delegates all calls. Subclasses of
+ * {@link DelegateSpanBuilder} may override some of these methods, such as
+ * {@link #start()} to wrap the started {@link Span}.
+ *
+ * @author Seva Safris
+ */
+public class DelegateSpanBuilder implements Tracer.SpanBuilder {
+  /** The target {@link Tracer.SpanBuilder}. */
+  protected final Tracer.SpanBuilder target;
+
+  /**
+   * Creates a new {@link DelegateSpanBuilder} with the specified target
+   * {@link Tracer.SpanBuilder}.
+   *
+   * @param target The target {@link Tracer.SpanBuilder}.
+   * @throws NullPointerException If the target {@link Tracer.SpanBuilder} is
+   *           null.
+   */
+  public DelegateSpanBuilder(final Tracer.SpanBuilder target) {
+    this.target = Objects.requireNonNull(target);
+  }
+
+  @Override
+  public Tracer.SpanBuilder asChildOf(final SpanContext parent) {
+    target.asChildOf(parent);
+    return this;
+  }
+
+  @Override
+  public Tracer.SpanBuilder asChildOf(final Span parent) {
+    target.asChildOf(parent == null ? null : parent.context());
+    return this;
+  }
+
+  @Override
+  public Tracer.SpanBuilder addReference(final String referenceType, final SpanContext referencedContext) {
+    target.addReference(referenceType, referencedContext);
+    return this;
+  }
+
+  @Override
+  public Tracer.SpanBuilder ignoreActiveSpan() {
+    target.ignoreActiveSpan();
+    return this;
+  }
+
+  @Override
+  public Tracer.SpanBuilder withTag(final String key, final String value) {
+    target.withTag(key, value);
+    return this;
+  }
+
+  @Override
+  public Tracer.SpanBuilder withTag(final String key, final boolean value) {
+    target.withTag(key, value);
+    return this;
+  }
+
+  @Override
+  public Tracer.SpanBuilder withTag(final String key, final Number value) {
+    target.withTag(key, value);
+    return this;
+  }
+
+  @Override
+  public <T>Tracer.SpanBuilder withTag(final Tag<T> tag, final T value) {
+    target.withTag(tag, value);
+    return this;
+  }
+
+  @Override
+  public Tracer.SpanBuilder withStartTimestamp(final long microseconds) {
+    target.withStartTimestamp(microseconds);
+    return this;
+  }
+
+  @Override
+  public Span start() {
+    return target.start();
+  }
+
+  @Override
+  @Deprecated
+  public Span startManual() {
+    return start();
+  }
+
+  @Override
+  @Deprecated
+  public Scope startActive(final boolean finishSpanOnClose) {
+    return target.startActive(finishSpanOnClose);
+  }
+}
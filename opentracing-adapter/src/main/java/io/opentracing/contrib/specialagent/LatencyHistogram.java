@@ -0,0 +1,131 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies with logarithmic buckets, which estimates the
+ * latency at a percentile of the recent samples. Each power of 2 is divided
+ * into 4 buckets, so the estimate is within 25% of the actual latency. When
+ * the number of samples reaches a maximum, the counts of all buckets are
+ * halved, so that older samples decay in favor of newer samples.
+ * <p>
+ * The histogram is lock-free: a sample is added with atomic increments, and
+ * the latency at the percentile is recomputed once every
+ * {@value #recomputeInterval} samples by the thread that adds the sample, so
+ * that {@link #threshold()} is a volatile read.
+ *
+ * @author Seva Safris
+ */
+class LatencyHistogram {
+  private static final int subBits = 2;
+  private static final int subMask = (1 << subBits) - 1;
+  static final int recomputeInterval = 16;
+
+  static int index(final long value) {
+    if (value <= subMask)
+      return value < 0 ? 0 : (int)value;
+
+    final int exp = 63 - Long.numberOfLeadingZeros(value);
+    return ((exp - subBits + 1) << subBits) | (int)((value >>> (exp - subBits)) & subMask);
+  }
+
+  static long lowerBound(final int index) {
+    if (index <= subMask)
+      return index;
+
+    final int exp = (index >> subBits) + subBits - 1;
+    return ((1L << subBits) | (index & subMask)) << (exp - subBits);
+  }
+
+  private final AtomicLongArray counts = new AtomicLongArray(64 << subBits);
+  private final AtomicLong total = new AtomicLong();
+  private final double percentile;
+  private final int minSamples;
+  private final int maxSamples;
+  private volatile long threshold = Long.MAX_VALUE;
+
+  /**
+   * Creates a new {@link LatencyHistogram}.
+   *
+   * @param percentile The percentile at which the latency is estimated,
+   *          between 0 and 1.
+   * @param minSamples The minimum number of samples for which the latency is
+   *          estimated.
+   * @param maxSamples The number of samples at which the counts are halved.
+   */
+  LatencyHistogram(final double percentile, final int minSamples, final int maxSamples) {
+    this.percentile = percentile;
+    this.minSamples = minSamples;
+    this.maxSamples = maxSamples;
+  }
+
+  void add(final long value) {
+    counts.incrementAndGet(index(value));
+    final long total = this.total.incrementAndGet();
+    if (total == maxSamples)
+      halve();
+    else if (total < minSamples || total % recomputeInterval != 0)
+      return;
+
+    recompute();
+  }
+
+  private void halve() {
+    long removed = 0;
+    for (int i = 0; i < counts.length(); ++i) {
+      long count;
+      do
+        count = counts.get(i);
+      while (!counts.compareAndSet(i, count, count >> 1));
+
+      removed += count - (count >> 1);
+    }
+
+    total.addAndGet(-removed);
+  }
+
+  private void recompute() {
+    long total = 0;
+    final long[] snapshot = new long[counts.length()];
+    for (int i = 0; i < snapshot.length; ++i)
+      total += snapshot[i] = counts.get(i);
+
+    final long rank = (long)Math.ceil(percentile * total);
+    long count = 0;
+    for (int i = 0; i < snapshot.length; ++i) {
+      if ((count += snapshot[i]) >= rank) {
+        threshold = lowerBound(i);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Returns the lower bound of the bucket of the latency at the percentile
+   * of this histogram, or {@link Long#MAX_VALUE} if there are not yet enough
+   * samples.
+   *
+   * @return The lower bound of the bucket of the latency at the percentile of
+   *         this histogram, or {@link Long#MAX_VALUE} if there are not yet
+   *         enough samples.
+   */
+  long threshold() {
+    return threshold;
+  }
+}
@@ -15,41 +15,91 @@
 
 package io.opentracing.contrib.specialagent;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.opentracing.Scope;
 import io.opentracing.Span;
 
 /**
- * Thread local map holder for Span, Scope and counter to control stack of
- * calls. Map is used to avoid suppressing of creation of new span when active
- * span of another component exists. Key of the map is component name.
+ * Thread local holder for Span, Scope and counter to control stack of calls.
+ * A holder is kept per component, to avoid suppressing of creation of new span
+ * when active span of another component exists.
+ * <p>
+ * Each component name is assigned an id by {@link #register(String)}, which
+ * indexes a per-thread array of holders. While a holder of a component is
+ * active in the thread, the holders are reused by nested calls of the same or
+ * other components, so that entering and exiting a component does not
+ * allocate. {@link #closeScope()} and {@link #closeAndFinish()} release the
+ * {@link Span} and {@link Scope} of the holder, so {@link #getSpan()} must be
+ * called before them, and the per-thread array is removed when no holder in
+ * the thread remains active.
  */
 public class LocalSpanContext {
-  private static final ThreadLocal<Map<String,LocalSpanContext>> instance = new ThreadLocal<>();
+  private static final ConcurrentHashMap<String,Integer> nameToId = new ConcurrentHashMap<>();
+  private static final AtomicInteger nextId = new AtomicInteger();
+  private static final ThreadLocal<LocalSpanContext[]> instance = new ThreadLocal<>();
 
-  private final String name;
-  private final Span span;
-  private final Scope scope;
-  private int counter = 1;
+  private Span span;
+  private Scope scope;
+  private int counter;
+  private boolean active;
 
-  private LocalSpanContext(final String name, final Span span, final Scope scope) {
-    this.name = name;
-    this.span = span;
-    this.scope = scope;
+  private LocalSpanContext() {
+  }
+
+  /**
+   * Returns the id of the component by the specified name, which is assigned
+   * when the name is first registered.
+   *
+   * @param name The name of the component.
+   * @return The id of the component by the specified name.
+   */
+  public static int register(final String name) {
+    final Integer id = nameToId.get(name);
+    if (id != null)
+      return id;
+
+    final Integer newId = nextId.getAndIncrement();
+    final Integer existing = nameToId.putIfAbsent(name, newId);
+    return existing != null ? existing : newId;
   }
 
   public static LocalSpanContext get(final String name) {
-    final Map<String,LocalSpanContext> map = instance.get();
-    return map == null ? null : map.get(name);
+    return get(register(name));
+  }
+
+  public static LocalSpanContext get(final int id) {
+    final LocalSpanContext[] contexts = instance.get();
+    if (contexts == null || id >= contexts.length)
+      return null;
+
+    final LocalSpanContext context = contexts[id];
+    return context != null && context.active ? context : null;
   }
 
   public static void set(final String name, final Span span, final Scope scope) {
-    if (instance.get() == null)
-      instance.set(new HashMap<String,LocalSpanContext>());
+    set(register(name), span, scope);
+  }
+
+  public static void set(final int id, final Span span, final Scope scope) {
+    LocalSpanContext[] contexts = instance.get();
+    if (contexts == null || id >= contexts.length) {
+      final LocalSpanContext[] grown = new LocalSpanContext[Math.max(id + 1, nextId.get())];
+      if (contexts != null)
+        System.arraycopy(contexts, 0, grown, 0, contexts.length);
 
-    instance.get().put(name, new LocalSpanContext(name, span, scope));
+      instance.set(contexts = grown);
+    }
+
+    LocalSpanContext context = contexts[id];
+    if (context == null)
+      contexts[id] = context = new LocalSpanContext();
+
+    context.span = span;
+    context.scope = scope;
+    context.counter = 1;
+    context.active = true;
   }
 
   public Span getSpan() {
@@ -65,20 +115,30 @@ public class LocalSpanContext {
   }
 
   public void closeAndFinish() {
+    final Span span = this.span;
     closeScope();
     if (span != null)
       span.finish();
   }
 
   public void closeScope() {
-    final Map<String,LocalSpanContext> map = instance.get();
-    if (map != null) {
-      map.remove(name);
-      if (map.isEmpty())
-        instance.remove();
-    }
+    active = false;
+    span = null;
+    final Scope scope = this.scope;
+    this.scope = null;
+    final LocalSpanContext[] contexts = instance.get();
+    if (contexts != null && !isActive(contexts))
+      instance.remove();
 
     if (scope != null)
       scope.close();
   }
-}
\ No newline at end of file
+
+  private static boolean isActive(final LocalSpanContext[] contexts) {
+    for (final LocalSpanContext context : contexts)
+      if (context != null && context.active)
+        return true;
+
+    return false;
+  }
+}
@@ -214,7 +214,10 @@ public class OpenTracingAdapter extends Adapter {
         return null;
       }
 
+      tracer = AsyncFinishTracer.create(tracer, System.getProperties());
       tracer = initRewritableTracer(tracer, isoClassLoader);
+      tracer = TailSamplingTracer.create(tracer, System.getProperties());
+      tracer = SamplingTracer.create(tracer, System.getProperties());
       if (!isAgentRunner() && !GlobalTracer.registerIfAbsent(tracer))
         throw new IllegalStateException("There is already a registered global Tracer.");
 
@@ -238,16 +241,23 @@ public class OpenTracingAdapter extends Adapter {
     if (logger.isLoggable(Level.FINE))
       logger.fine("\n<<<<<<<<<<<<<<<<<<< Loading Rewritable Tracer >>>>>>>>>>>>>>>>>>\n");
 
+    final String watchProperty = System.getProperty(REWRITE_WATCH);
+    final boolean watch = watchProperty != null && !"false".equals(watchProperty);
     try (final InputStream in = new FileInputStream(rewriteProperty)) {
       final Class<?> rewriteRulesClass = Class.forName("io.opentracing.contrib.specialagent.RewriteRules", true, isoClassLoader);
       final Method parseRulesMethod = rewriteRulesClass.getMethod("parseRules", InputStream.class);
       final List<?> rules = (List<?>)parseRulesMethod.invoke(null, in);
-      if (rules.isEmpty())
+      // If the file is watched, the rules may be added later
+      if (rules.isEmpty() && !watch)
         return tracer;
 
       final Class<Tracer> rewritableTracerClass = (Class<Tracer>)Class.forName("io.opentracing.contrib.specialagent.RewritableTracer", true, isoClassLoader);
       final Constructor<?> constructor = rewritableTracerClass.getConstructor(Tracer.class, List.class);
-      return (Tracer)constructor.newInstance(tracer, rules);
+      final Tracer rewritableTracer = (Tracer)constructor.newInstance(tracer, rules);
+      if (watch)
+        rewritableTracerClass.getMethod("watch", File.class).invoke(rewritableTracer, new File(rewriteProperty));
+
+      return rewritableTracer;
     }
     catch (final ClassNotFoundException | IllegalAccessException | InstantiationException | InvocationTargetException | NoSuchMethodException e) {
       throw new RuntimeException(e);
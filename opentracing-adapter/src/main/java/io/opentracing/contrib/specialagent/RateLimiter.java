@@ -0,0 +1,67 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket that admits up to a number of permits per second,
+ * with a burst of up to one second's worth of permits. The bucket is
+ * represented by the theoretical arrival time of the next permit (the
+ * "generic cell rate algorithm"), so that a permit is acquired with a single
+ * compare-and-set.
+ *
+ * @author Seva Safris
+ */
+class RateLimiter {
+  private final long interval;
+  private final long burst;
+  private final AtomicLong next = new AtomicLong(Long.MIN_VALUE);
+
+  /**
+   * Creates a new {@link RateLimiter} with the specified rate.
+   *
+   * @param permitsPerSecond The number of permits per second.
+   * @throws IllegalArgumentException If {@code permitsPerSecond} is not
+   *           positive.
+   */
+  RateLimiter(final double permitsPerSecond) {
+    if (!(permitsPerSecond > 0))
+      throw new IllegalArgumentException("Rate must be positive: " + permitsPerSecond);
+
+    this.interval = Math.max(1, (long)(1000000000d / permitsPerSecond));
+    this.burst = Math.max(1, (long)permitsPerSecond) * interval;
+  }
+
+  /**
+   * Acquires a permit, if one is available.
+   *
+   * @return {@code true} if a permit was acquired, otherwise {@code false}.
+   */
+  boolean tryAcquire() {
+    final long now = System.nanoTime();
+    long next;
+    long update;
+    do {
+      next = this.next.get();
+      update = (next == Long.MIN_VALUE || next - now < 0 ? now : next) + interval;
+      if (update - now > burst)
+        return false;
+    }
+    while (!this.next.compareAndSet(next, update));
+    return true;
+  }
+}
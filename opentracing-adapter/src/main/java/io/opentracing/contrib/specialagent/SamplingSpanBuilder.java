@@ -0,0 +1,192 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.util.ArrayList;
+
+import io.opentracing.References;
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.tag.Tag;
+import io.opentracing.tag.Tags;
+
+/**
+ * A {@link Tracer.SpanBuilder} that records the properties of a span, and
+ * defers to the {@link SamplingTracer} to decide whether the span is sampled
+ * when it is started. Only a sampled span is built by the target tracer, to
+ * which the recorded properties are replayed.
+ *
+ * @author Seva Safris
+ */
+class SamplingSpanBuilder implements Tracer.SpanBuilder {
+  private final SamplingTracer tracer;
+  private final String operationName;
+  private ArrayList<Object> references;
+  private ArrayList<Object> tags;
+  private String component;
+  private long startTimestamp;
+  private boolean ignoreActiveSpan;
+
+  SamplingSpanBuilder(final SamplingTracer tracer, final String operationName) {
+    this.tracer = tracer;
+    this.operationName = operationName;
+  }
+
+  @Override
+  public Tracer.SpanBuilder asChildOf(final SpanContext parent) {
+    return addReference(References.CHILD_OF, parent);
+  }
+
+  @Override
+  public Tracer.SpanBuilder asChildOf(final Span parent) {
+    return parent == null ? this : addReference(References.CHILD_OF, parent.context());
+  }
+
+  @Override
+  public Tracer.SpanBuilder addReference(final String referenceType, final SpanContext referencedContext) {
+    if (referencedContext == null)
+      return this;
+
+    if (references == null)
+      references = new ArrayList<>(2);
+
+    references.add(referenceType);
+    references.add(referencedContext);
+    return this;
+  }
+
+  @Override
+  public Tracer.SpanBuilder ignoreActiveSpan() {
+    ignoreActiveSpan = true;
+    return this;
+  }
+
+  private Tracer.SpanBuilder addTag(final Object key, final Object value) {
+    if (tags == null)
+      tags = new ArrayList<>(8);
+
+    tags.add(key);
+    tags.add(value);
+    return this;
+  }
+
+  @Override
+  public Tracer.SpanBuilder withTag(final String key, final String value) {
+    if (Tags.COMPONENT.getKey().equals(key))
+      component = value;
+
+    return addTag(key, value);
+  }
+
+  @Override
+  public Tracer.SpanBuilder withTag(final String key, final boolean value) {
+    return addTag(key, value);
+  }
+
+  @Override
+  public Tracer.SpanBuilder withTag(final String key, final Number value) {
+    return addTag(key, value);
+  }
+
+  @Override
+  public <T>Tracer.SpanBuilder withTag(final Tag<T> tag, final T value) {
+    if (Tags.COMPONENT.getKey().equals(tag.getKey()) && value != null)
+      component = value.toString();
+
+    return addTag(tag, value);
+  }
+
+  @Override
+  public Tracer.SpanBuilder withStartTimestamp(final long microseconds) {
+    startTimestamp = microseconds;
+    return this;
+  }
+
+  /**
+   * Returns the {@link SpanContext} of the parent of the span, or {@code null}
+   * if the span is the root of a trace.
+   *
+   * @return The {@link SpanContext} of the parent of the span, or {@code null}
+   *         if the span is the root of a trace.
+   */
+  private SpanContext getParent() {
+    if (references != null)
+      return (SpanContext)references.get(1);
+
+    if (ignoreActiveSpan)
+      return null;
+
+    final Span activeSpan = tracer.target.activeSpan();
+    return activeSpan == null ? null : activeSpan.context();
+  }
+
+  @Override
+  public Span start() {
+    final SpanContext parent = getParent();
+    if (parent == SamplingTracer.unsampledContext)
+      return SamplingTracer.unsampledRoot;
+
+    if (!tracer.isSampled(operationName, component, parent == null))
+      return parent == null ? SamplingTracer.unsampledRoot : new UnreportedSpan(parent);
+
+    return replay(tracer.target.buildSpan(operationName)).start();
+  }
+
+  @SuppressWarnings("unchecked")
+  private Tracer.SpanBuilder replay(final Tracer.SpanBuilder builder) {
+    if (references != null)
+      for (int i = 0; i < references.size(); i += 2)
+        if (references.get(i + 1) != SamplingTracer.unsampledContext)
+          builder.addReference((String)references.get(i), (SpanContext)references.get(i + 1));
+
+    if (ignoreActiveSpan)
+      builder.ignoreActiveSpan();
+
+    if (startTimestamp != 0)
+      builder.withStartTimestamp(startTimestamp);
+
+    if (tags != null) {
+      for (int i = 0; i < tags.size(); i += 2) {
+        final Object key = tags.get(i);
+        final Object value = tags.get(i + 1);
+        if (key instanceof Tag)
+          builder.withTag((Tag<Object>)key, value);
+        else if (value instanceof Number)
+          builder.withTag((String)key, (Number)value);
+        else if (value instanceof Boolean)
+          builder.withTag((String)key, (Boolean)value);
+        else
+          builder.withTag((String)key, (String)value);
+      }
+    }
+
+    return builder;
+  }
+
+  @Override
+  @Deprecated
+  public Span startManual() {
+    return start();
+  }
+
+  @Override
+  @Deprecated
+  public Scope startActive(final boolean finishSpanOnClose) {
+    return tracer.target.scopeManager().activate(start(), finishSpanOnClose);
+  }
+}
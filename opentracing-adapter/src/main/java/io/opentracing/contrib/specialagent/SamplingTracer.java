@@ -0,0 +1,207 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import static io.opentracing.contrib.specialagent.Constants.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.propagation.Format;
+import io.opentracing.tag.Tags;
+
+/**
+ * A {@link DelegateTracer} that samples the spans built by the target tracer.
+ * The decision to sample a trace is made when its root span is started, and
+ * is inherited by all spans in the trace. A trace is sampled with the
+ * probability specified by {@code -Dsa.sampler.probability}, and up to the
+ * number of traces per second per operation specified by
+ * {@code -Dsa.sampler.rate}. Independently of the trace, the spans of an
+ * Integration are sampled up to the number of spans per second specified by
+ * {@code -Dsa.sampler.budget.${COMPONENT}}, where the Integration is
+ * identified by the {@code component} tag of its spans.
+ * <p>
+ * Spans that are not sampled are {@link UnreportedSpan}s, which are never
+ * started in the target tracer, but which still propagate the context of the
+ * trace to their children.
+ *
+ * @author Seva Safris
+ */
+public class SamplingTracer extends DelegateTracer {
+  private static final Logger logger = Logger.getLogger(SamplingTracer.class);
+  private static final int maxOperations = 1000;
+
+  /**
+   * The {@link SpanContext} of an unsampled trace, which makes all of the spans
+   * in the trace unsampled. It is never passed to the target tracer, and is
+   * injected into carriers as described in {@link #inject}.
+   */
+  static final SpanContext unsampledContext = UnreportedSpan.newContext("unsampled");
+
+  /** The root {@link UnreportedSpan} of an unsampled trace. */
+  static final UnreportedSpan unsampledRoot = new UnreportedSpan(unsampledContext);
+
+  /**
+   * Returns a new {@link SamplingTracer} for the specified target
+   * {@link Tracer}, configured by the specified properties, or the target
+   * {@link Tracer} if the properties do not specify sampling.
+   *
+   * @param target The target {@link Tracer}.
+   * @param properties The properties, such as {@link System#getProperties()}.
+   * @return A new {@link SamplingTracer} for the specified target
+   *         {@link Tracer}, or the target {@link Tracer} if the properties do
+   *         not specify sampling.
+   * @throws IllegalArgumentException If a property has an invalid value.
+   */
+  public static Tracer create(final Tracer target, final Properties properties) {
+    final double probability = parse(properties, SAMPLER_PROBABILITY, 1);
+    if (probability < 0 || probability > 1)
+      throw new IllegalArgumentException(SAMPLER_PROBABILITY + " must be a number between 0 and 1");
+
+    final double rate = parse(properties, SAMPLER_RATE, 0);
+    if (rate < 0)
+      throw new IllegalArgumentException(SAMPLER_RATE + " must be a positive number");
+
+    HashMap<String,RateLimiter> budgets = null;
+    for (final String key : properties.stringPropertyNames()) {
+      if (key.length() > SAMPLER_BUDGET.length() && key.startsWith(SAMPLER_BUDGET)) {
+        final double budget = parse(properties, key, 0);
+        if (!(budget > 0))
+          throw new IllegalArgumentException(key + " must be a positive number");
+
+        if (budgets == null)
+          budgets = new HashMap<>();
+
+        budgets.put(key.substring(SAMPLER_BUDGET.length()), new RateLimiter(budget));
+      }
+    }
+
+    if (probability == 1 && rate == 0 && budgets == null)
+      return target;
+
+    if (logger.isLoggable(Level.FINE))
+      logger.fine("Sampling spans with probability " + probability + (rate == 0 ? "" : ", up to " + rate + " traces/s per operation") + (budgets == null ? "" : ", with budgets for " + budgets.keySet()));
+
+    return new SamplingTracer(target, probability, rate, budgets);
+  }
+
+  static double parse(final Properties properties, final String key, final double defaultValue) {
+    final String value = properties.getProperty(key);
+    if (value == null)
+      return defaultValue;
+
+    try {
+      return Double.parseDouble(value);
+    }
+    catch (final NumberFormatException e) {
+      throw new IllegalArgumentException(key + " must be a number: " + value, e);
+    }
+  }
+
+  private final double probability;
+  private final double rate;
+  private final Map<String,RateLimiter> budgets;
+  private final ConcurrentHashMap<String,RateLimiter> operationToLimiter;
+  private final RateLimiter overflowLimiter;
+
+  SamplingTracer(final Tracer target, final double probability, final double rate, final Map<String,RateLimiter> budgets) {
+    super(target);
+    this.probability = probability;
+    this.rate = rate;
+    this.budgets = budgets;
+    this.operationToLimiter = rate == 0 ? null : new ConcurrentHashMap<String,RateLimiter>();
+    this.overflowLimiter = rate == 0 ? null : new RateLimiter(rate);
+  }
+
+  /**
+   * Returns whether the span with the specified operation name and component
+   * is sampled.
+   *
+   * @param operationName The operation name of the span.
+   * @param component The value of the {@code component} tag of the span, or
+   *          {@code null} if the span does not have the tag.
+   * @param root Whether the span is the root of a trace, for which the
+   *          decision to sample the trace is made.
+   * @return Whether the span is sampled.
+   */
+  boolean isSampled(final String operationName, final String component, final boolean root) {
+    if (root) {
+      if (probability < 1 && ThreadLocalRandom.current().nextDouble() >= probability)
+        return false;
+
+      if (rate > 0 && !getLimiter(operationName).tryAcquire())
+        return false;
+    }
+
+    if (budgets != null && component != null) {
+      final RateLimiter budget = budgets.get(component);
+      if (budget != null && !budget.tryAcquire())
+        return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Returns the {@link RateLimiter} for the specified operation name. The
+   * number of operations with their own {@link RateLimiter} is bounded, and
+   * any further operations share one {@link RateLimiter}.
+   */
+  private RateLimiter getLimiter(final String operationName) {
+    if (operationName == null)
+      return overflowLimiter;
+
+    RateLimiter limiter = operationToLimiter.get(operationName);
+    if (limiter != null)
+      return limiter;
+
+    if (operationToLimiter.size() >= maxOperations)
+      return overflowLimiter;
+
+    limiter = operationToLimiter.putIfAbsent(operationName, new RateLimiter(rate));
+    return limiter != null ? limiter : operationToLimiter.get(operationName);
+  }
+
+  @Override
+  public SpanBuilder buildSpan(final String operationName) {
+    return new SamplingSpanBuilder(this, operationName);
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * The context of an unsampled span with a parent is the context of its
+   * parent, such as an extracted upstream context, which is injected as is.
+   * The context of an unsampled trace has no ids of the target tracer, so a
+   * span is started in the target tracer with a {@code sampling.priority} of
+   * {@code 0}, and its context is injected instead. The span is never
+   * finished, and is therefore never reported, but the injected context
+   * carries the unsampled flag of the target tracer, so that the receiver does
+   * not start a new sampled trace.
+   */
+  @Override
+  public <C>void inject(final SpanContext spanContext, final Format<C> format, final C carrier) {
+    if (spanContext != unsampledContext)
+      target.inject(spanContext, format, carrier);
+    else
+      target.inject(target.buildSpan("unsampled").ignoreActiveSpan().withTag(Tags.SAMPLING_PRIORITY, 0).start().context(), format, carrier);
+  }
+}
@@ -0,0 +1,74 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A clock of microseconds since the epoch, with the precision of
+ * {@link System#nanoTime()}. Spans whose finish is deferred are started and
+ * finished with timestamps of this clock, so that their durations are not
+ * skewed by the clock of the target tracer.
+ * <p>
+ * The clock is anchored to {@link System#currentTimeMillis()}, and is
+ * re-anchored at most once per second if it has drifted from the wall-clock
+ * time by more than {@value #maxDriftMicros} microseconds, which is twice the
+ * precision of the wall clock.
+ *
+ * @author Seva Safris
+ */
+final class SpanClock {
+  static final long maxDriftMicros = 2000;
+  private static final long anchorInterval = TimeUnit.SECONDS.toNanos(1);
+
+  private static final class Anchor {
+    private final long micros;
+    private final long nanos;
+
+    private Anchor(final long micros, final long nanos) {
+      this.micros = micros;
+      this.nanos = nanos;
+    }
+  }
+
+  private static volatile Anchor anchor = new Anchor(TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis()), System.nanoTime());
+
+  /**
+   * Returns the current time in microseconds since the epoch.
+   *
+   * @return The current time in microseconds since the epoch.
+   */
+  static long currentTimeMicros() {
+    final long nanoTime = System.nanoTime();
+    final Anchor anchor = SpanClock.anchor;
+    final long elapsed = nanoTime - anchor.nanos;
+    final long micros = anchor.micros + TimeUnit.NANOSECONDS.toMicros(elapsed);
+    if (elapsed < anchorInterval)
+      return micros;
+
+    final long wallMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    if (Math.abs(micros - wallMicros) <= maxDriftMicros) {
+      SpanClock.anchor = new Anchor(micros, nanoTime);
+      return micros;
+    }
+
+    SpanClock.anchor = new Anchor(wallMicros, nanoTime);
+    return wallMicros;
+  }
+
+  private SpanClock() {
+  }
+}
@@ -0,0 +1,81 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.tag.Tag;
+
+/**
+ * A {@link Tracer.SpanBuilder} of the {@link TailSamplingTracer}, which
+ * starts spans as {@link TailSpan}s.
+ *
+ * @author Seva Safris
+ */
+class TailSamplingSpanBuilder extends DelegateSpanBuilder {
+  private final TailSamplingTracer tracer;
+  private boolean startTimestamp;
+  private boolean error;
+
+  TailSamplingSpanBuilder(final TailSamplingTracer tracer, final Tracer.SpanBuilder target) {
+    super(target);
+    this.tracer = tracer;
+  }
+
+  @Override
+  public Tracer.SpanBuilder withTag(final String key, final String value) {
+    error |= TailSpan.isError(key, value);
+    return super.withTag(key, value);
+  }
+
+  @Override
+  public Tracer.SpanBuilder withTag(final String key, final boolean value) {
+    error |= TailSpan.isError(key, value);
+    return super.withTag(key, value);
+  }
+
+  @Override
+  public <T>Tracer.SpanBuilder withTag(final Tag<T> tag, final T value) {
+    error |= TailSpan.isError(tag.getKey(), value);
+    return super.withTag(tag, value);
+  }
+
+  @Override
+  public Tracer.SpanBuilder withStartTimestamp(final long microseconds) {
+    startTimestamp = true;
+    return super.withStartTimestamp(microseconds);
+  }
+
+  /**
+   * Starts the target span. Unless a start timestamp was specified, the start
+   * timestamp is taken from the {@link SpanClock}, which is the clock of the
+   * deferred finish timestamp.
+   */
+  @Override
+  public Span start() {
+    if (!startTimestamp)
+      target.withStartTimestamp(SpanClock.currentTimeMicros());
+
+    return tracer.onStart(target.start(), error);
+  }
+
+  @Override
+  @Deprecated
+  public Scope startActive(final boolean finishSpanOnClose) {
+    return tracer.scopeManager().activate(start(), finishSpanOnClose);
+  }
+}
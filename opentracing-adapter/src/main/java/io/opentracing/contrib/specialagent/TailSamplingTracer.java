@@ -0,0 +1,277 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import static io.opentracing.contrib.specialagent.Constants.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+
+/**
+ * A {@link DelegateTracer} that decides whether to sample a trace after its
+ * spans are finished. The finished spans of a trace are buffered until all
+ * spans of the trace that were started in this process are finished, and are
+ * then finished in the target tracer only if the trace is sampled. A trace is
+ * sampled if one of its spans has the {@code error} tag with the value
+ * {@code true} (either boolean or string), if its duration is
+ * at least the latency at the percentile specified by
+ * {@code -Dsa.sampler.tail.percentile} of recent traces, or otherwise with the
+ * probability specified by {@code -Dsa.sampler.tail.probability}.
+ * <p>
+ * The number of buffered spans is limited by {@code -Dsa.sampler.tail.spans}.
+ * When the limit is reached, and when a trace is older than the timeout
+ * specified by {@code -Dsa.sampler.tail.timeout}, the decision to sample the
+ * trace is made early, with the spans that were finished so far. If the trace
+ * is not sampled by the early decision, and one of its spans has the
+ * {@code error} tag thereafter, the spans of the trace that are finished
+ * after the error are sampled, but the spans that were dropped by the early
+ * decision are lost.
+ *
+ * @author Seva Safris
+ */
+public class TailSamplingTracer extends DelegateTracer {
+  private static final Logger logger = Logger.getLogger(TailSamplingTracer.class);
+
+  /**
+   * Returns a new {@link TailSamplingTracer} for the specified target
+   * {@link Tracer}, configured by the specified properties, or the target
+   * {@link Tracer} if {@code -Dsa.sampler.tail} is not specified.
+   *
+   * @param target The target {@link Tracer}.
+   * @param properties The properties, such as {@link System#getProperties()}.
+   * @return A new {@link TailSamplingTracer} for the specified target
+   *         {@link Tracer}, or the target {@link Tracer} if
+   *         {@code -Dsa.sampler.tail} is not specified.
+   * @throws IllegalArgumentException If a property has an invalid value.
+   */
+  public static Tracer create(final Tracer target, final Properties properties) {
+    final String tail = properties.getProperty(SAMPLER_TAIL);
+    if (tail == null || "false".equals(tail))
+      return target;
+
+    final double percentile = SamplingTracer.parse(properties, SAMPLER_TAIL_PERCENTILE, 99);
+    if (!(percentile > 0) || percentile > 100)
+      throw new IllegalArgumentException(SAMPLER_TAIL_PERCENTILE + " must be a number between 0 and 100");
+
+    final double probability = SamplingTracer.parse(properties, SAMPLER_TAIL_PROBABILITY, 0.05);
+    if (probability < 0 || probability > 1)
+      throw new IllegalArgumentException(SAMPLER_TAIL_PROBABILITY + " must be a number between 0 and 1");
+
+    final double spans = SamplingTracer.parse(properties, SAMPLER_TAIL_SPANS, 10000);
+    if (spans < 0 || spans > Integer.MAX_VALUE)
+      throw new IllegalArgumentException(SAMPLER_TAIL_SPANS + " must be a positive integer");
+
+    final double timeout = SamplingTracer.parse(properties, SAMPLER_TAIL_TIMEOUT, 10000);
+    if (!(timeout > 0))
+      throw new IllegalArgumentException(SAMPLER_TAIL_TIMEOUT + " must be a positive number");
+
+    if (logger.isLoggable(Level.FINE))
+      logger.fine("Sampling traces at the " + percentile + " percentile of latency, with errors, or with probability " + probability + ", buffering up to " + (int)spans + " spans for " + timeout + "ms");
+
+    return new TailSamplingTracer(target, percentile / 100, probability, (int)spans, TimeUnit.MILLISECONDS.toNanos((long)timeout));
+  }
+
+  private final double probability;
+  private final int maxSpans;
+  private final long timeout;
+  private final long sweepInterval;
+
+  private final ConcurrentHashMap<String,TailTrace> traceIdToTrace = new ConcurrentHashMap<>();
+  private final AtomicInteger buffered = new AtomicInteger();
+  private final AtomicLong nextSweep;
+  final LatencyHistogram histogram;
+
+  TailSamplingTracer(final Tracer target, final double percentile, final double probability, final int maxSpans, final long timeout) {
+    super(target);
+    this.histogram = new LatencyHistogram(percentile, 100, 10000);
+    this.probability = probability;
+    this.maxSpans = maxSpans;
+    this.timeout = timeout;
+    this.sweepInterval = Math.min(timeout, TimeUnit.SECONDS.toNanos(1));
+    this.nextSweep = new AtomicLong(System.nanoTime() + sweepInterval);
+  }
+
+  @Override
+  public SpanBuilder buildSpan(final String operationName) {
+    return new TailSamplingSpanBuilder(this, target.buildSpan(operationName));
+  }
+
+  /**
+   * Returns the {@link TailSpan} for the specified started target span, which
+   * is registered with the {@link TailTrace} of its trace.
+   *
+   * @param span The started target span.
+   * @param error Whether the span was started with the {@code error} tag.
+   * @return The {@link TailSpan} for the specified started target span.
+   */
+  Span onStart(final Span span, final boolean error) {
+    final long now = System.nanoTime();
+    sweep(now);
+    final String traceId = span.context().toTraceId();
+    while (true) {
+      TailTrace trace = traceIdToTrace.get(traceId);
+      if (trace == null) {
+        final TailTrace created = new TailTrace(traceId, now);
+        trace = traceIdToTrace.putIfAbsent(traceId, created);
+        if (trace == null)
+          trace = created;
+      }
+
+      synchronized (trace) {
+        if (trace.open(now)) {
+          trace.error |= error;
+          return new TailSpan(span, trace, this);
+        }
+      }
+
+      traceIdToTrace.remove(traceId, trace);
+    }
+  }
+
+  /**
+   * Buffers the specified finished span, or finishes or drops it if the
+   * decision to sample its trace was made. If the span is the last open span
+   * of its trace, or if the buffer is full, the decision is made, and the
+   * buffered spans of the trace are finished or dropped.
+   *
+   * @param span The finished span.
+   * @param finishMicros The finish timestamp, or {@code 0} for the current
+   *          time.
+   */
+  void onFinish(final TailSpan span, final long finishMicros) {
+    final long now = System.nanoTime();
+    sweep(now);
+    span.finishMicros = finishMicros != 0 ? finishMicros : SpanClock.currentTimeMicros();
+    final TailTrace trace = span.trace;
+    final ArrayList<TailSpan> spans;
+    final boolean sampled;
+    final boolean complete;
+    synchronized (trace) {
+      if (now > trace.end)
+        trace.end = now;
+
+      complete = --trace.open == 0;
+      if (trace.sampled != null) {
+        // An error after an early decision samples the spans that are finished thereafter
+        if (!trace.sampled && trace.error)
+          trace.sampled = true;
+
+        sampled = trace.sampled;
+        spans = null;
+        if (complete)
+          trace.closed = true;
+      }
+      else {
+        trace.add(span);
+        if (!complete && buffered.incrementAndGet() <= maxSpans)
+          return;
+
+        if (!complete)
+          buffered.decrementAndGet();
+
+        sampled = decide(trace, complete);
+        spans = trace.spans;
+        trace.spans = null;
+      }
+    }
+
+    if (complete)
+      traceIdToTrace.remove(trace.traceId, trace);
+
+    if (spans == null) {
+      if (sampled)
+        span.target.finish(span.finishMicros);
+
+      return;
+    }
+
+    if (spans.size() > 1)
+      buffered.addAndGet(1 - spans.size());
+
+    if (sampled)
+      for (final TailSpan finished : spans)
+        finished.target.finish(finished.finishMicros);
+  }
+
+  /**
+   * Decides whether to sample the specified trace. Must be called while
+   * holding the monitor of the trace.
+   *
+   * @param trace The trace.
+   * @param complete Whether all spans of the trace are finished, in which case
+   *          the duration of the trace is added to the latency histogram, and
+   *          the trace is closed.
+   * @return Whether the trace is sampled.
+   */
+  private boolean decide(final TailTrace trace, final boolean complete) {
+    final long duration = TimeUnit.NANOSECONDS.toMicros(trace.end - trace.start);
+    final boolean sampled = trace.error || duration >= histogram.threshold() || probability > 0 && ThreadLocalRandom.current().nextDouble() < probability;
+    if (complete) {
+      histogram.add(duration);
+      trace.closed = true;
+    }
+
+    if (logger.isLoggable(Level.FINEST))
+      logger.finest("Trace " + trace.traceId + (sampled ? " sampled" : " not sampled") + " (duration: " + duration + "us, error: " + trace.error + ", complete: " + complete + ")");
+
+    return trace.sampled = sampled;
+  }
+
+  /**
+   * Decides whether to sample the traces that are older than the timeout,
+   * and removes them. The sweep is performed at most once per sweep interval,
+   * by the thread that first observes that the interval has elapsed when a
+   * span is started or finished, so that traces are swept even when no new
+   * spans are started.
+   */
+  private void sweep(final long now) {
+    final long nextSweep = this.nextSweep.get();
+    if (now - nextSweep < 0 || !this.nextSweep.compareAndSet(nextSweep, now + sweepInterval))
+      return;
+
+    for (final Iterator<TailTrace> iterator = traceIdToTrace.values().iterator(); iterator.hasNext();) {
+      final TailTrace trace = iterator.next();
+      if (now - trace.created < timeout)
+        continue;
+
+      final ArrayList<TailSpan> spans;
+      final boolean sampled;
+      synchronized (trace) {
+        trace.closed = true;
+        sampled = trace.sampled == null && decide(trace, false);
+        spans = trace.spans;
+        trace.spans = null;
+      }
+
+      iterator.remove();
+      if (spans != null) {
+        buffered.addAndGet(-spans.size());
+        if (sampled)
+          for (final TailSpan finished : spans)
+            finished.target.finish(finished.finishMicros);
+      }
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import io.opentracing.Span;
+import io.opentracing.tag.Tag;
+import io.opentracing.tag.Tags;
+
+/**
+ * A {@link Span} of the {@link TailSamplingTracer}, which defers the finish
+ * of the target span until the decision to sample its trace is made.
+ *
+ * @author Seva Safris
+ */
+class TailSpan extends DelegateSpan {
+  final TailTrace trace;
+  private final TailSamplingTracer tracer;
+  long finishMicros;
+
+  TailSpan(final Span target, final TailTrace trace, final TailSamplingTracer tracer) {
+    super(target);
+    this.trace = trace;
+    this.tracer = tracer;
+  }
+
+  /**
+   * Returns whether the specified tag marks a span as erroneous, which is the
+   * case for the {@code error} tag with the value {@code true}, or with the
+   * string value {@code "true"} (case-insensitive).
+   *
+   * @param key The key of the tag.
+   * @param value The value of the tag.
+   * @return Whether the specified tag marks a span as erroneous.
+   */
+  static boolean isError(final String key, final Object value) {
+    if (!Tags.ERROR.getKey().equals(key))
+      return false;
+
+    return Boolean.TRUE.equals(value) || value instanceof String && Boolean.parseBoolean((String)value);
+  }
+
+  private void onError(final String key, final Object value) {
+    if (isError(key, value))
+      synchronized (trace) {
+        trace.error = true;
+      }
+  }
+
+  @Override
+  public Span setTag(final String key, final String value) {
+    onError(key, value);
+    return super.setTag(key, value);
+  }
+
+  @Override
+  public Span setTag(final String key, final boolean value) {
+    onError(key, value);
+    return super.setTag(key, value);
+  }
+
+  @Override
+  public <T>Span setTag(final Tag<T> tag, final T value) {
+    onError(tag.getKey(), value);
+    return super.setTag(tag, value);
+  }
+
+  @Override
+  public void finish() {
+    tracer.onFinish(this, 0);
+  }
+
+  @Override
+  public void finish(final long finishMicros) {
+    tracer.onFinish(this, finishMicros);
+  }
+}
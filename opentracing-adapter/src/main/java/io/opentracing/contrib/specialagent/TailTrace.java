@@ -0,0 +1,67 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.util.ArrayList;
+
+/**
+ * The state of a trace in the {@link TailSamplingTracer}, which buffers the
+ * finished spans of the trace until the decision to sample the trace is made.
+ * All fields are guarded by the monitor of this instance.
+ *
+ * @author Seva Safris
+ */
+class TailTrace {
+  final String traceId;
+  final long created;
+  ArrayList<TailSpan> spans;
+  long start = Long.MAX_VALUE;
+  long end = Long.MIN_VALUE;
+  int open;
+  boolean error;
+  boolean closed;
+  Boolean sampled;
+
+  TailTrace(final String traceId, final long created) {
+    this.traceId = traceId;
+    this.created = created;
+  }
+
+  /**
+   * Registers a span that was started at the specified time.
+   *
+   * @param nanoTime The time at which the span was started.
+   * @return {@code false} if this trace is closed, and the span must be
+   *         registered with a new trace, otherwise {@code true}.
+   */
+  boolean open(final long nanoTime) {
+    if (closed)
+      return false;
+
+    ++open;
+    if (nanoTime < start)
+      start = nanoTime;
+
+    return true;
+  }
+
+  void add(final TailSpan span) {
+    if (spans == null)
+      spans = new ArrayList<>();
+
+    spans.add(span);
+  }
+}
@@ -0,0 +1,158 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.util.Collections;
+import java.util.Map;
+
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.tag.Tag;
+
+/**
+ * A {@link Span} that is never started in the target tracer, and is therefore
+ * never reported, such as a span that is not sampled by the
+ * {@link SamplingTracer}, or a span that is dropped by a rewrite rule. The
+ * context of the span is the context of its parent, so that spans that are
+ * created as its children are attached to its parent. A span without a parent
+ * has a context created by {@link #newContext(String)}, which identifies the
+ * reason for which the span is not reported, and which the tracer that created
+ * the span must not pass to its target tracer.
+ *
+ * @author Seva Safris
+ */
+public final class UnreportedSpan implements Span {
+  /**
+   * Returns a new {@link SpanContext} without ids or baggage, for an
+   * {@code UnreportedSpan} without a parent.
+   *
+   * @param name The name of the context, as returned by
+   *          {@link Object#toString()}.
+   * @return A new {@link SpanContext} without ids or baggage.
+   */
+  public static SpanContext newContext(final String name) {
+    return new SpanContext() {
+      @Override
+      public String toTraceId() {
+        return "";
+      }
+
+      @Override
+      public String toSpanId() {
+        return "";
+      }
+
+      @Override
+      public Iterable<Map.Entry<String,String>> baggageItems() {
+        return Collections.emptySet();
+      }
+
+      @Override
+      public String toString() {
+        return name;
+      }
+    };
+  }
+
+  private final SpanContext parent;
+
+  /**
+   * Creates a new {@code UnreportedSpan} with the specified context of its
+   * parent.
+   *
+   * @param parent The {@link SpanContext} of the parent.
+   */
+  public UnreportedSpan(final SpanContext parent) {
+    this.parent = parent;
+  }
+
+  @Override
+  public SpanContext context() {
+    return parent;
+  }
+
+  @Override
+  public Span setTag(final String key, final String value) {
+    return this;
+  }
+
+  @Override
+  public Span setTag(final String key, final boolean value) {
+    return this;
+  }
+
+  @Override
+  public Span setTag(final String key, final Number value) {
+    return this;
+  }
+
+  @Override
+  public <T>Span setTag(final Tag<T> tag, final T value) {
+    return this;
+  }
+
+  @Override
+  public Span log(final Map<String,?> fields) {
+    return this;
+  }
+
+  @Override
+  public Span log(final long timestampMicroseconds, final Map<String,?> fields) {
+    return this;
+  }
+
+  @Override
+  public Span log(final String event) {
+    return this;
+  }
+
+  @Override
+  public Span log(final long timestampMicroseconds, final String event) {
+    return this;
+  }
+
+  @Override
+  public Span setBaggageItem(final String key, final String value) {
+    return this;
+  }
+
+  @Override
+  public String getBaggageItem(final String key) {
+    for (final Map.Entry<String,String> entry : parent.baggageItems())
+      if (key.equals(entry.getKey()))
+        return entry.getValue();
+
+    return null;
+  }
+
+  @Override
+  public Span setOperationName(final String operationName) {
+    return this;
+  }
+
+  @Override
+  public void finish() {
+  }
+
+  @Override
+  public void finish(final long finishMicros) {
+  }
+
+  @Override
+  public String toString() {
+    return "UnreportedSpan[" + parent + "]";
+  }
+}
@@ -0,0 +1,104 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+
+public class AsyncFinishTracerTest {
+  private static void awaitFinishedSpans(final MockTracer target, final int count) throws InterruptedException {
+    for (int i = 0; i < 100 && target.finishedSpans().size() < count; ++i)
+      Thread.sleep(10);
+
+    assertEquals(count, target.finishedSpans().size());
+  }
+
+  @Test
+  public void testFinish() throws InterruptedException {
+    final MockTracer target = new MockTracer();
+    final AsyncFinishTracer tracer = new AsyncFinishTracer(target, 100, 10, TimeUnit.MILLISECONDS.toNanos(10));
+    final Span parent = tracer.buildSpan("parent").start();
+    try (final Scope scope = tracer.activateSpan(parent)) {
+      tracer.buildSpan("child").start().finish();
+    }
+
+    parent.finish(((MockSpan)((DelegateSpan)parent).target).startMicros() + 1000);
+    awaitFinishedSpans(target, 2);
+    final MockSpan child = target.finishedSpans().get(0);
+    assertEquals(target.finishedSpans().get(1).context().spanId(), child.parentId());
+    assertTrue(child.finishMicros() >= child.startMicros());
+    assertEquals(1000, target.finishedSpans().get(1).finishMicros() - target.finishedSpans().get(1).startMicros());
+    tracer.close();
+  }
+
+  @Test
+  public void testDropWhenFull() throws InterruptedException {
+    final CountDownLatch finishing = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final MockTracer target = new MockTracer() {
+      @Override
+      protected void onSpanFinished(final MockSpan mockSpan) {
+        finishing.countDown();
+        try {
+          release.await();
+        }
+        catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+
+        super.onSpanFinished(mockSpan);
+      }
+    };
+
+    final AsyncFinishTracer tracer = new AsyncFinishTracer(target, 5, 5, TimeUnit.SECONDS.toNanos(10));
+    for (int i = 0; i < 5; ++i)
+      tracer.buildSpan("span").start().finish();
+
+    // The export thread is blocked finishing the first span, so the queue has room for one more span
+    finishing.await();
+    for (int i = 0; i < 10; ++i)
+      tracer.buildSpan("span").start().finish();
+
+    assertEquals(9, tracer.getDroppedSpans());
+    release.countDown();
+    tracer.stop();
+    assertEquals(6, target.finishedSpans().size());
+
+    assertEquals(0, tracer.getDroppedSpansAfterStop());
+    tracer.buildSpan("span").start().finish();
+    assertEquals(9, tracer.getDroppedSpans());
+    assertEquals(1, tracer.getDroppedSpansAfterStop());
+  }
+
+  @Test
+  public void testBatchSizeGreaterThanCapacity() {
+    try {
+      new AsyncFinishTracer(new MockTracer(), 5, 10, TimeUnit.SECONDS.toNanos(10));
+      fail("Expected IllegalArgumentException");
+    }
+    catch (final IllegalArgumentException e) {
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import io.opentracing.Span;
+import io.opentracing.mock.MockTracer;
+
+public class LocalSpanContextTest {
+  private final MockTracer tracer = new MockTracer();
+
+  @Test
+  public void testNested() {
+    final int id = LocalSpanContext.register("test-nested");
+    assertEquals(id, LocalSpanContext.register("test-nested"));
+    assertNull(LocalSpanContext.get(id));
+
+    final Span span = tracer.buildSpan("outer").start();
+    LocalSpanContext.set(id, span, tracer.activateSpan(span));
+    final LocalSpanContext context = LocalSpanContext.get(id);
+    assertSame(context, LocalSpanContext.get("test-nested"));
+    assertSame(span, context.getSpan());
+    assertSame(span, tracer.activeSpan());
+
+    context.increment();
+    assertEquals(1, context.decrementAndGet());
+    assertEquals(0, context.decrementAndGet());
+
+    // The holder is reused by a nested span of the component in the thread
+    final int other = LocalSpanContext.register("test-nested-other");
+    LocalSpanContext.set(other, span, null);
+    final LocalSpanContext otherContext = LocalSpanContext.get(other);
+    otherContext.closeScope();
+    final Span nested = tracer.buildSpan("nested").start();
+    LocalSpanContext.set(other, nested, null);
+    assertSame(otherContext, LocalSpanContext.get(other));
+    assertSame(nested, otherContext.getSpan());
+    otherContext.closeAndFinish();
+    assertNull(otherContext.getSpan());
+
+    context.closeAndFinish();
+    assertNull(LocalSpanContext.get(id));
+    assertNull(context.getSpan());
+    assertNull(tracer.activeSpan());
+    assertEquals(2, tracer.finishedSpans().size());
+
+    // The holders are released once none is active in the thread
+    LocalSpanContext.set(id, tracer.buildSpan("next").start(), null);
+    assertNotSame(context, LocalSpanContext.get(id));
+    LocalSpanContext.get(id).closeAndFinish();
+  }
+
+  @Test
+  public void testComponents() {
+    final int first = LocalSpanContext.register("test-first");
+    final int second = LocalSpanContext.register("test-second");
+    assertNotEquals(first, second);
+
+    final Span span = tracer.buildSpan("first").start();
+    LocalSpanContext.set(first, span, null);
+    assertNull(LocalSpanContext.get(second));
+
+    LocalSpanContext.set("test-second", span, null);
+    assertNotSame(LocalSpanContext.get(first), LocalSpanContext.get(second));
+
+    LocalSpanContext.get(first).closeScope();
+    assertNull(LocalSpanContext.get(first));
+    assertNotNull(LocalSpanContext.get(second));
+    LocalSpanContext.get(second).closeScope();
+  }
+}
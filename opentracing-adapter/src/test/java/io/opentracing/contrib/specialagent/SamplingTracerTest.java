@@ -0,0 +1,143 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMapAdapter;
+import io.opentracing.tag.Tags;
+
+public class SamplingTracerTest {
+  private static Tracer create(final MockTracer target, final String ... properties) {
+    final Properties config = new Properties();
+    for (int i = 0; i < properties.length; i += 2)
+      config.setProperty(properties[i], properties[i + 1]);
+
+    return SamplingTracer.create(target, config);
+  }
+
+  @Test
+  public void testNotConfigured() {
+    final MockTracer target = new MockTracer();
+    assertSame(target, create(target));
+  }
+
+  @Test
+  public void testInvalidProbability() {
+    try {
+      create(new MockTracer(), Constants.SAMPLER_PROBABILITY, "2");
+      fail("Expected IllegalArgumentException");
+    }
+    catch (final IllegalArgumentException e) {
+      assertEquals(Constants.SAMPLER_PROBABILITY + " must be a number between 0 and 1", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testUnsampledTrace() {
+    final MockTracer target = new MockTracer();
+    final Tracer tracer = create(target, Constants.SAMPLER_PROBABILITY, "0");
+    final Span root = tracer.buildSpan("root").start();
+    try (final Scope scope = tracer.activateSpan(root)) {
+      final Span child = tracer.buildSpan("child").start();
+      assertSame(root.context(), child.context());
+      child.finish();
+
+      final HashMap<String,String> carrier = new HashMap<>();
+      tracer.inject(tracer.activeSpan().context(), Format.Builtin.TEXT_MAP, new TextMapAdapter(carrier));
+      // The context of the unsampled trace is propagated, but never reported
+      assertFalse(carrier.isEmpty());
+      assertEquals(0, target.finishedSpans().size());
+    }
+
+    root.finish();
+    assertEquals(0, target.finishedSpans().size());
+  }
+
+  @Test
+  public void testUnsampledSpanWithUpstreamContext() {
+    final MockTracer target = new MockTracer();
+    final Tracer tracer = create(target, Constants.SAMPLER_BUDGET + "java-jdbc", "0.001");
+    final HashMap<String,String> upstream = new HashMap<>();
+    final Span remote = target.buildSpan("remote").start();
+    target.inject(remote.context(), Format.Builtin.TEXT_MAP, new TextMapAdapter(upstream));
+
+    final SpanContext extracted = tracer.extract(Format.Builtin.TEXT_MAP, new TextMapAdapter(upstream));
+    tracer.buildSpan("query").asChildOf(extracted).withTag(Tags.COMPONENT, "java-jdbc").start().finish();
+    final Span span = tracer.buildSpan("query").asChildOf(extracted).withTag(Tags.COMPONENT, "java-jdbc").start();
+    assertSame(extracted, span.context());
+
+    final HashMap<String,String> carrier = new HashMap<>();
+    tracer.inject(span.context(), Format.Builtin.TEXT_MAP, new TextMapAdapter(carrier));
+    assertEquals(upstream, carrier);
+  }
+
+  @Test
+  public void testRate() {
+    final MockTracer target = new MockTracer();
+    final Tracer tracer = create(target, Constants.SAMPLER_RATE, "0.001");
+    for (int i = 0; i < 10; ++i) {
+      tracer.buildSpan("a").start().finish();
+      tracer.buildSpan("b").start().finish();
+    }
+
+    assertEquals(2, target.finishedSpans().size());
+  }
+
+  @Test
+  public void testBudget() {
+    final MockTracer target = new MockTracer();
+    final Tracer tracer = create(target, Constants.SAMPLER_BUDGET + "java-jdbc", "0.001");
+    final Span root = tracer.buildSpan("root").start();
+    try (final Scope scope = tracer.activateSpan(root)) {
+      for (int i = 0; i < 10; ++i) {
+        final Span span = tracer.buildSpan("query").withTag(Tags.COMPONENT, "java-jdbc").start();
+        try (final Scope inner = tracer.activateSpan(span)) {
+          tracer.buildSpan("nested").start().finish();
+        }
+
+        span.finish();
+      }
+    }
+
+    root.finish();
+    int queries = 0;
+    int nestedInRoot = 0;
+    for (final MockSpan span : target.finishedSpans()) {
+      if ("query".equals(span.operationName()))
+        ++queries;
+      else if ("nested".equals(span.operationName()) && span.parentId() == ((MockSpan)root).context().spanId())
+        ++nestedInRoot;
+    }
+
+    assertEquals(1, queries);
+    // Spans nested in an unsampled span are attached to its parent
+    assertEquals(9, nestedInRoot);
+    assertEquals(12, target.finishedSpans().size());
+  }
+}
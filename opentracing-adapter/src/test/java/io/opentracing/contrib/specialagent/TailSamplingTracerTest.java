@@ -0,0 +1,163 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.tag.Tags;
+
+public class TailSamplingTracerTest {
+  private static void trace(final Tracer tracer, final boolean error, final long sleep) throws InterruptedException {
+    final Span root = tracer.buildSpan("root").start();
+    try (final Scope scope = tracer.activateSpan(root)) {
+      final Span child = tracer.buildSpan("child").start();
+      if (error)
+        OpenTracingApiUtil.setErrorTag(child, null);
+
+      if (sleep > 0)
+        Thread.sleep(sleep);
+
+      child.finish();
+    }
+
+    root.finish();
+  }
+
+  @Test
+  public void testLatencyHistogram() {
+    for (long value = 0; value < 100000; value += 7) {
+      final int index = LatencyHistogram.index(value);
+      assertTrue(LatencyHistogram.lowerBound(index) <= value);
+      assertTrue(LatencyHistogram.lowerBound(index + 1) > value);
+    }
+
+    final LatencyHistogram histogram = new LatencyHistogram(0.99, 10, 1000);
+    assertEquals(Long.MAX_VALUE, histogram.threshold());
+    for (int i = 1; i <= 128; ++i)
+      histogram.add(i);
+
+    assertEquals(LatencyHistogram.lowerBound(LatencyHistogram.index(127)), histogram.threshold());
+  }
+
+  @Test
+  public void testErrorAndBaseline() throws InterruptedException {
+    final MockTracer target = new MockTracer();
+    final Tracer tracer = new TailSamplingTracer(target, 0.99, 0, 100, TimeUnit.SECONDS.toNanos(10));
+    trace(tracer, false, 0);
+    assertEquals(0, target.finishedSpans().size());
+
+    trace(tracer, true, 0);
+    assertEquals(2, target.finishedSpans().size());
+
+    final Tracer all = new TailSamplingTracer(target, 0.99, 1, 100, TimeUnit.SECONDS.toNanos(10));
+    trace(all, false, 0);
+    assertEquals(4, target.finishedSpans().size());
+  }
+
+  @Test
+  public void testStringErrorTag() {
+    final MockTracer target = new MockTracer();
+    final Tracer tracer = new TailSamplingTracer(target, 0.99, 0, 100, TimeUnit.SECONDS.toNanos(10));
+    final Span root = tracer.buildSpan("root").start();
+    try (final Scope scope = tracer.activateSpan(root)) {
+      tracer.buildSpan("child").start().setTag(Tags.ERROR.getKey(), "true").finish();
+    }
+
+    root.finish();
+    assertEquals(2, target.finishedSpans().size());
+
+    tracer.buildSpan("root").withTag(Tags.ERROR.getKey(), "TRUE").start().finish();
+    assertEquals(3, target.finishedSpans().size());
+
+    tracer.buildSpan("root").withTag(Tags.ERROR.getKey(), "false").start().finish();
+    assertEquals(3, target.finishedSpans().size());
+  }
+
+  @Test
+  public void testSweepOnFinish() throws InterruptedException {
+    final MockTracer target = new MockTracer();
+    final Tracer tracer = new TailSamplingTracer(target, 0.99, 1, 100, TimeUnit.MILLISECONDS.toNanos(10));
+    final Span root = tracer.buildSpan("root").start();
+    try (final Scope scope = tracer.activateSpan(root)) {
+      tracer.buildSpan("child").start().finish();
+    }
+
+    final Span other = tracer.buildSpan("other").ignoreActiveSpan().start();
+    Thread.sleep(50);
+
+    // The finish of a span of another trace sweeps the timed out trace
+    other.finish();
+    assertEquals(2, target.finishedSpans().size());
+    assertEquals("child", target.finishedSpans().get(0).operationName());
+    assertEquals("other", target.finishedSpans().get(1).operationName());
+  }
+
+  @Test
+  public void testBufferedUntilTraceIsComplete() {
+    final MockTracer target = new MockTracer();
+    final Tracer tracer = new TailSamplingTracer(target, 0.99, 1, 100, TimeUnit.SECONDS.toNanos(10));
+    final Span root = tracer.buildSpan("root").start();
+    try (final Scope scope = tracer.activateSpan(root)) {
+      tracer.buildSpan("child").start().finish();
+    }
+
+    assertEquals(0, target.finishedSpans().size());
+    root.finish();
+    assertEquals(2, target.finishedSpans().size());
+    assertEquals(target.finishedSpans().get(1).context().spanId(), target.finishedSpans().get(0).parentId());
+  }
+
+  @Test
+  public void testSpanLimit() {
+    final MockTracer target = new MockTracer();
+    final Tracer tracer = new TailSamplingTracer(target, 0.99, 0, 1, TimeUnit.SECONDS.toNanos(10));
+    final Span root = tracer.buildSpan("root").start();
+    try (final Scope scope = tracer.activateSpan(root)) {
+      tracer.buildSpan("child").start().finish();
+      // The buffer is full, so the trace is decided early, and is not sampled
+      tracer.buildSpan("child").start().finish();
+      // An error thereafter samples the spans that are finished after it,
+      // but the spans that were dropped by the early decision are lost
+      OpenTracingApiUtil.setErrorTag(root, null);
+    }
+
+    root.finish();
+    assertEquals(1, target.finishedSpans().size());
+    assertEquals("root", target.finishedSpans().get(0).operationName());
+  }
+
+  @Test
+  public void testSlowTrace() throws InterruptedException {
+    final MockTracer target = new MockTracer();
+    final TailSamplingTracer tracer = new TailSamplingTracer(target, 0.99, 0, 100, TimeUnit.SECONDS.toNanos(10));
+    for (int i = 0; i < 200; ++i)
+      trace(tracer, false, 0);
+
+    // Only the traces at the top of the latency histogram are sampled
+    final int sampled = target.finishedSpans().size();
+    assertTrue(String.valueOf(sampled), sampled < 100);
+    trace(tracer, false, 50);
+    assertEquals(sampled + 2, target.finishedSpans().size());
+  }
+}
@@ -16,6 +16,7 @@
 package io.opentracing.contrib.specialagent;
 
 import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.regex.Pattern;
 
 import com.grack.nanojson.JsonObject;
@@ -46,6 +47,18 @@ abstract class Action {
     if ("operationName".equals(type))
       return new OperationName(key, value);
 
+    if ("drop".equals(type))
+      return new Drop(key, value);
+
+    if ("sample".equals(type))
+      return new Sample(key, value);
+
+    if ("truncate".equals(type))
+      return new Truncate(key, value);
+
+    if ("hash".equals(type))
+      return new Hash(key, value);
+
     throw new IllegalStateException(subject + ": Invalid type");
   }
 
@@ -65,9 +78,31 @@ abstract class Action {
     return this.value;
   }
 
-  abstract void rewrite(Rewriter rewriter, long timestampMicroseconds, String key, Object value);
+  /**
+   * Rewrites the matched input of the specified rule to this output action.
+   *
+   * @param rewriter The {@link Rewriter}.
+   * @param rule The {@link RewriteRule} of which this action is an output.
+   * @param timestampMicroseconds The timestamp of the input, or {@code 0}.
+   * @param key The output key.
+   * @param match The match of the input value.
+   * @param input The input value.
+   */
+  abstract void rewrite(Rewriter rewriter, RewriteRule rule, long timestampMicroseconds, String key, Object match, Object input);
   abstract void validateOutput(Action input, String subject);
-  abstract void validateInput(RewriteRule rule, String subject);
+
+  /**
+   * Validates this action as the input of the specified rule. Only
+   * {@link Writable} actions are allowed as input.
+   *
+   * @param rule The {@link RewriteRule} of which this action is the input.
+   * @param subject The subject of the rule, for error messages.
+   * @throws IllegalStateException If this action is not allowed as input of
+   *           the specified rule.
+   */
+  void validateInput(final RewriteRule rule, final String subject) {
+    throw new IllegalStateException(subject + ": " + getClass().getSimpleName() + " is not allowed as input");
+  }
 
   void validate(final RewriteRule rule, final String subject) {
     validateInput(rule, subject);
@@ -79,13 +114,41 @@ abstract class Action {
     }
   }
 
-  static class OperationName extends Action {
+  /**
+   * Base class of the actions that write to the data of a span, which can be
+   * both inputs and outputs.
+   */
+  abstract static class Writable extends Action {
+    private Writable(final String key, final Object value) {
+      super(key, value);
+    }
+
+    @Override
+    final void rewrite(final Rewriter rewriter, final RewriteRule rule, final long timestampMicroseconds, final String key, final Object match, final Object input) {
+      write(rewriter, timestampMicroseconds, key, rule.rewriteValue(match, input, getValue()));
+    }
+
+    /**
+     * Writes the specified key and value to the data of this action's type.
+     *
+     * @param rewriter The {@link Rewriter}.
+     * @param timestampMicroseconds The timestamp, or {@code 0}.
+     * @param key The key.
+     * @param value The value.
+     */
+    abstract void write(Rewriter rewriter, long timestampMicroseconds, String key, Object value);
+
+    @Override
+    abstract void validateInput(RewriteRule rule, String subject);
+  }
+
+  static class OperationName extends Writable {
     private OperationName(final String key, final Object value) {
       super(key, value);
     }
 
     @Override
-    void rewrite(final Rewriter rewriter, final long timestampMicroseconds, final String key, final Object value) {
+    void write(final Rewriter rewriter, final long timestampMicroseconds, final String key, final Object value) {
       rewriter.rewriteOperationName(value.toString());
     }
 
@@ -102,13 +165,13 @@ abstract class Action {
     }
   }
 
-  static class Log extends Action {
+  static class Log extends Writable {
     private Log(final String key, final Object value) {
       super(key, value);
     }
 
     @Override
-    void rewrite(final Rewriter rewriter, final long timestampMicroseconds, final String key, final Object value) {
+    void write(final Rewriter rewriter, final long timestampMicroseconds, final String key, final Object value) {
       rewriter.rewriteLog(timestampMicroseconds, key, value);
     }
 
@@ -123,13 +186,13 @@ abstract class Action {
     }
   }
 
-  static class Tag extends Action {
+  static class Tag extends Writable {
     private Tag(final String key, final Object value) {
       super(key, value);
     }
 
     @Override
-    void rewrite(final Rewriter rewriter, final long timestampMicroseconds, final String key, final Object value) {
+    void write(final Rewriter rewriter, final long timestampMicroseconds, final String key, final Object value) {
       rewriter.rewriteTag(key, value);
     }
 
@@ -145,4 +208,147 @@ abstract class Action {
         throw new IllegalStateException(subject + ": Missing output key for tag");
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Base class of the actions that can only be outputs, because they act on
+   * the span, or transform the value of the input and write it with the
+   * {@link Writable} input of the rule.
+   */
+  abstract static class OutputOnly extends Action {
+    private OutputOnly(final String key, final Object value) {
+      super(key, value);
+    }
+
+    static boolean isPositiveInteger(final Object value) {
+      return value instanceof Number && ((Number)value).doubleValue() >= 1 && ((Number)value).doubleValue() == Math.floor(((Number)value).doubleValue());
+    }
+  }
+
+  /**
+   * Drops the span, so that it is not reported to the tracer. A span that is
+   * dropped before it is started is never started in the target tracer, and
+   * its children are attached to its parent. A span that is dropped after it
+   * is started (by a tag or log that is set on the span) is never finished,
+   * so children that were started before the drop reference a span that is
+   * not reported.
+   */
+  static class Drop extends OutputOnly {
+    private Drop(final String key, final Object value) {
+      super(key, value);
+    }
+
+    @Override
+    void rewrite(final Rewriter rewriter, final RewriteRule rule, final long timestampMicroseconds, final String key, final Object match, final Object input) {
+      rewriter.drop();
+    }
+
+    @Override
+    void validateOutput(final Action input, final String subject) {
+      if (getKey() != null || getValue() != null)
+        throw new IllegalStateException(subject + ": drop cannot have output key or value");
+    }
+  }
+
+  /**
+   * Drops the span with the probability of {@code 1 - value}.
+   */
+  static class Sample extends OutputOnly {
+    private Sample(final String key, final Object value) {
+      super(key, value);
+    }
+
+    @Override
+    void rewrite(final Rewriter rewriter, final RewriteRule rule, final long timestampMicroseconds, final String key, final Object match, final Object input) {
+      if (ThreadLocalRandom.current().nextDouble() >= ((Number)getValue()).doubleValue())
+        rewriter.drop();
+    }
+
+    @Override
+    void validateOutput(final Action input, final String subject) {
+      if (getKey() != null)
+        throw new IllegalStateException(subject + ": sample cannot have output key");
+
+      if (!(getValue() instanceof Number) || ((Number)getValue()).doubleValue() < 0 || ((Number)getValue()).doubleValue() > 1)
+        throw new IllegalStateException(subject + ": sample value must be a number between 0 and 1");
+    }
+  }
+
+  /**
+   * Truncates a string input value to the maximum length specified by
+   * {@code value}, and writes it to the data of the input's type.
+   */
+  static class Truncate extends OutputOnly {
+    private Truncate(final String key, final Object value) {
+      super(key, value);
+    }
+
+    @Override
+    void rewrite(final Rewriter rewriter, final RewriteRule rule, final long timestampMicroseconds, final String key, final Object match, final Object input) {
+      ((Writable)rule.input).write(rewriter, timestampMicroseconds, key, input instanceof String ? truncate((String)input, ((Number)getValue()).intValue()) : input);
+    }
+
+    private static String truncate(final String value, final int length) {
+      if (value.length() <= length)
+        return value;
+
+      // Do not split a surrogate pair
+      return value.substring(0, Character.isHighSurrogate(value.charAt(length - 1)) ? length - 1 : length);
+    }
+
+    @Override
+    void validateOutput(final Action input, final String subject) {
+      if (!isPositiveInteger(getValue()))
+        throw new IllegalStateException(subject + ": truncate value must be a positive integer");
+    }
+  }
+
+  /**
+   * Replaces the input value with its 64-bit hash in hexadecimal, or, if
+   * {@code value} is specified, with the index of its hash bucket among
+   * {@code value} buckets, and writes it to the data of the input's type.
+   */
+  static class Hash extends OutputOnly {
+    private Hash(final String key, final Object value) {
+      super(key, value);
+    }
+
+    @Override
+    void rewrite(final Rewriter rewriter, final RewriteRule rule, final long timestampMicroseconds, final String key, final Object match, final Object input) {
+      if (input == null) {
+        ((Writable)rule.input).write(rewriter, timestampMicroseconds, key, null);
+        return;
+      }
+
+      final long hash = hash(input.toString());
+      final String value;
+      if (getValue() == null) {
+        value = Long.toHexString(hash);
+      }
+      else {
+        final long buckets = ((Number)getValue()).longValue();
+        value = String.valueOf(((hash % buckets) + buckets) % buckets);
+      }
+
+      ((Writable)rule.input).write(rewriter, timestampMicroseconds, key, value);
+    }
+
+    /**
+     * Returns the 64-bit FNV-1a hash of the specified string.
+     */
+    private static long hash(final String value) {
+      long hash = 0xcbf29ce484222325L;
+      for (int i = 0; i < value.length(); ++i) {
+        hash ^= value.charAt(i);
+        hash *= 0x100000001b3L;
+      }
+
+      return hash;
+    }
+
+    @Override
+    void validateOutput(final Action input, final String subject) {
+      if (getValue() != null && !isPositiveInteger(getValue()))
+        throw new IllegalStateException(subject + ": hash value must be a positive integer");
+    }
+  }
+}
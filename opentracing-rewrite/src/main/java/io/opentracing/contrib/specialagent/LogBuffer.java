@@ -0,0 +1,132 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread-local scratch buffer of log fields, which is used to stream the
+ * fields of a log through the rewrite rules without allocating a map unless a
+ * rule matches. Each log record is delimited by {@link #begin()} and
+ * {@link #end(int)}, which allows nested use of the buffer by the same thread.
+ * A field with a key that already exists in the log record replaces the value
+ * of the existing field, as per {@link LinkedHashMap#put(Object,Object)}.
+ *
+ * @author Seva Safris
+ */
+final class LogBuffer {
+  private static final ThreadLocal<LogBuffer> instance = new ThreadLocal<LogBuffer>() {
+    @Override
+    protected LogBuffer initialValue() {
+      return new LogBuffer();
+    }
+  };
+
+  /**
+   * @return The {@link LogBuffer} of the current thread.
+   */
+  static LogBuffer get() {
+    return instance.get();
+  }
+
+  private String[] keys = new String[8];
+  private Object[] values = new Object[8];
+  private int size;
+  private int mark;
+
+  private LogBuffer() {
+  }
+
+  /**
+   * Begins a new log record, which consists of the fields that are put after
+   * this call.
+   *
+   * @return The mark of the enclosing log record, to be specified to
+   *         {@link #end(int)}.
+   */
+  int begin() {
+    final int mark = this.mark;
+    this.mark = size;
+    return mark;
+  }
+
+  /**
+   * Puts the specified field into the current log record.
+   *
+   * @param key The key of the field.
+   * @param value The value of the field.
+   */
+  void put(final String key, final Object value) {
+    for (int i = mark; i < size; ++i) {
+      if (key == null ? keys[i] == null : key.equals(keys[i])) {
+        values[i] = value;
+        return;
+      }
+    }
+
+    if (size == keys.length) {
+      final String[] keys = new String[size * 2];
+      System.arraycopy(this.keys, 0, keys, 0, size);
+      this.keys = keys;
+      final Object[] values = new Object[size * 2];
+      System.arraycopy(this.values, 0, values, 0, size);
+      this.values = values;
+    }
+
+    keys[size] = key;
+    values[size++] = value;
+  }
+
+  /**
+   * Returns a new map of the fields of the current log record, or
+   * {@code null} if there are no fields.
+   *
+   * @return A new map of the fields of the current log record, or
+   *         {@code null} if there are no fields.
+   */
+  Map<String,Object> toMap() {
+    final int count = size - mark;
+    if (count == 0)
+      return null;
+
+    if (count == 1)
+      return Collections.singletonMap(keys[mark], values[mark]);
+
+    final LinkedHashMap<String,Object> map = new LinkedHashMap<>(count * 4 / 3 + 1);
+    for (int i = mark; i < size; ++i)
+      map.put(keys[i], values[i]);
+
+    return map;
+  }
+
+  /**
+   * Ends the current log record, and removes its fields.
+   *
+   * @param mark The mark of the enclosing log record, as returned by
+   *          {@link #begin()}.
+   */
+  void end(final int mark) {
+    for (int i = this.mark; i < size; ++i) {
+      keys[i] = null;
+      values[i] = null;
+    }
+
+    size = this.mark;
+    this.mark = mark;
+  }
+}
@@ -15,6 +15,8 @@
 
 package io.opentracing.contrib.specialagent;
 
+import java.util.Map;
+
 import io.opentracing.Span;
 
 final class LogEventRewriter extends Rewriter {
@@ -35,6 +37,12 @@ final class LogEventRewriter extends Rewriter {
       target.log(value.toString());
   }
 
+  @Override
+  void rewriteLog(final long timestampMicroseconds, final Map<String,Object> fields) {
+    for (final Object value : fields.values())
+      rewriteLog(timestampMicroseconds, null, value);
+  }
+
   @Override
   void rewriteTag(final String key, final Object value) {
     source.rewriteTag(key, value);
@@ -44,4 +52,9 @@ final class LogEventRewriter extends Rewriter {
   void rewriteOperationName(final String name) {
     source.rewriteOperationName(name);
   }
+
+  @Override
+  void drop() {
+    source.drop();
+  }
 }
\ No newline at end of file
@@ -15,7 +15,6 @@
 
 package io.opentracing.contrib.specialagent;
 
-import java.util.LinkedHashMap;
 import java.util.Map;
 
 import io.opentracing.Span;
@@ -24,49 +23,58 @@ class LogFieldRewriter extends Rewriter {
   private final Rewriter source;
   private final Span target;
 
-  private Map<String,Object> fields;
-
   LogFieldRewriter(final RewriteRules rules, final Rewriter source, final Span target) {
     super(rules);
     this.source = source;
     this.target = target;
   }
 
+  /**
+   * Rewrites the specified fields in a single pass, and logs the result as a
+   * single log record. If no rule matches, the specified fields are logged as
+   * they are. Otherwise, the fields that do not match, and the outputs of the
+   * rules that do, are collected into the thread-local {@link LogBuffer}, and
+   * a new map is allocated only for the resulting log record.
+   *
+   * @param timestampMicroseconds The timestamp of the log, or {@code 0}.
+   * @param fields The fields of the log.
+   */
   void processLog(final long timestampMicroseconds, final Map<String,?> fields) {
-    if (rules == null)
+    if (rules == null) {
+      log(timestampMicroseconds, fields);
       return;
+    }
 
-    for (final Map.Entry<String,?> entry : fields.entrySet()) {
-      final String key = entry.getKey();
-      final Object value = entry.getValue();
-      for (final RewriteRule rule : rules.getRules(key)) {
-        if (rule.input.getClass() != Action.Log.class)
-          continue;
-
-        final Object match = rule.matchValue(value);
-        if (match != null) {
-          rewriteLog(timestampMicroseconds, fields, rule, match, value);
-          return;
+    final LogBuffer buffer = LogBuffer.get();
+    final int mark = buffer.begin();
+    try {
+      boolean matched = false;
+      for (final Map.Entry<String,?> entry : fields.entrySet()) {
+        final String key = entry.getKey();
+        final Object value = entry.getValue();
+        final RewriteDispatcher dispatcher = rules.getDispatcher(Action.Log.class, key);
+        final RewriteDispatcher.Match match = dispatcher == null ? null : dispatcher.match(value);
+        if (match == null) {
+          buffer.put(key, value);
+        }
+        else {
+          matched = true;
+          match.rule.rewrite(this, timestampMicroseconds, match.match, value);
         }
       }
-    }
 
-    // nothing matched
-    log(timestampMicroseconds, fields);
-  }
-
-  private void rewriteLog(final long timestampMicroseconds, final Map<String,?> fields, final RewriteRule rule, final Object match, final Object input) {
-    for (final Map.Entry<String,?> entry : fields.entrySet()) {
-      final String key = entry.getKey();
-      final Object value = entry.getValue();
-      if (key.equals(rule.input.getKey()))
-        rule.rewrite(this, timestampMicroseconds, match, input);
-      else
-        onLog(timestampMicroseconds, key, value);
+      if (!matched) {
+        log(timestampMicroseconds, fields);
+      }
+      else {
+        final Map<String,Object> rewritten = buffer.toMap();
+        if (rewritten != null)
+          rewriteLog(timestampMicroseconds, rewritten);
+      }
+    }
+    finally {
+      buffer.end(mark);
     }
-
-    if (this.fields != null)
-      log(timestampMicroseconds, this.fields);
   }
 
   private void log(final long timestampMicroseconds, final Map<String,?> fields) {
@@ -78,10 +86,12 @@ class LogFieldRewriter extends Rewriter {
 
   @Override
   void rewriteLog(final long timestampMicroseconds, final String key, final Object value) {
-    if (fields == null)
-      fields = new LinkedHashMap<>();
+    LogBuffer.get().put(key, value);
+  }
 
-    fields.put(key, value);
+  @Override
+  void rewriteLog(final long timestampMicroseconds, final Map<String,Object> fields) {
+    log(timestampMicroseconds, fields);
   }
 
   @Override
@@ -93,4 +103,9 @@ class LogFieldRewriter extends Rewriter {
   void rewriteOperationName(final String name) {
     source.rewriteOperationName(name);
   }
-}
\ No newline at end of file
+
+  @Override
+  void drop() {
+    source.drop();
+  }
+}
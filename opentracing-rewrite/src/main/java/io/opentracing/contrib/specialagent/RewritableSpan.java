@@ -15,7 +15,6 @@
 
 package io.opentracing.contrib.specialagent;
 
-import java.util.Collections;
 import java.util.Map;
 
 import io.opentracing.Span;
@@ -25,6 +24,7 @@ import io.opentracing.tag.Tag;
 public class RewritableSpan extends Rewriter implements Span {
   final Span target;
   private final RewriteRules rules;
+  private volatile boolean dropped;
 
   RewritableSpan(final Span target, final RewriteRules rules) {
     super(rules);
@@ -66,9 +66,14 @@ public class RewritableSpan extends Rewriter implements Span {
     return log(0, fields);
   }
 
+  private LogFieldRewriter logFieldRewriter;
+
   @Override
   public Span log(final long timestampMicroseconds, final Map<String,?> fields) {
-    newLogFieldRewriter().processLog(timestampMicroseconds, fields);
+    if (logFieldRewriter == null)
+      logFieldRewriter = newLogFieldRewriter();
+
+    logFieldRewriter.processLog(timestampMicroseconds, fields);
     return this;
   }
 
@@ -111,20 +116,27 @@ public class RewritableSpan extends Rewriter implements Span {
 
   @Override
   public void finish() {
-    target.finish();
+    if (!dropped)
+      target.finish();
   }
 
   @Override
   public void finish(final long finishMicros) {
-    target.finish(finishMicros);
+    if (!dropped)
+      target.finish(finishMicros);
   }
 
   @Override
   void rewriteLog(final long timestampMicroseconds, final String key, final Object value) {
+    LogBuffer.get().put(key, value);
+  }
+
+  @Override
+  void rewriteLog(final long timestampMicroseconds, final Map<String,Object> fields) {
     if (timestampMicroseconds > 0)
-      target.log(timestampMicroseconds, Collections.singletonMap(key, value));
+      target.log(timestampMicroseconds, fields);
     else
-      target.log(Collections.singletonMap(key, value));
+      target.log(fields);
   }
 
   @Override
@@ -143,4 +155,13 @@ public class RewritableSpan extends Rewriter implements Span {
   void rewriteOperationName(final String name) {
     target.setOperationName(name);
   }
+
+  /**
+   * Drops the span, so that it is never finished, and is therefore not
+   * reported by the target tracer.
+   */
+  @Override
+  void drop() {
+    dropped = true;
+  }
 }
\ No newline at end of file
@@ -16,10 +16,11 @@
 package io.opentracing.contrib.specialagent;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Map;
 
+import io.opentracing.References;
 import io.opentracing.Scope;
+import io.opentracing.ScopeManager;
 import io.opentracing.Span;
 import io.opentracing.SpanContext;
 import io.opentracing.Tracer;
@@ -27,33 +28,81 @@ import io.opentracing.tag.Tag;
 
 public class RewritableSpanBuilder extends Rewriter implements Tracer.SpanBuilder {
   final Tracer.SpanBuilder target;
+  private final ScopeManager scopeManager;
+  private SpanContext parent;
+  private boolean ignoreActiveSpan;
+  private boolean dropped;
 
-  RewritableSpanBuilder(final String operationName, final Tracer.SpanBuilder target, final RewriteRules rules) {
+  RewritableSpanBuilder(final String operationName, final Tracer.SpanBuilder target, final RewriteRules rules, final ScopeManager scopeManager) {
     super(rules);
     this.target = target;
+    this.scopeManager = scopeManager;
     onOperationName(operationName);
   }
 
+  RewritableSpanBuilder(final String operationName, final Tracer.SpanBuilder target, final RewriteRules rules) {
+    this(operationName, target, rules, null);
+  }
+
+  /**
+   * The {@link SpanContext} of a dropped span without a parent, which is not
+   * passed to the target tracer. Spans that are created as its children are
+   * the roots of their traces.
+   */
+  static final SpanContext droppedContext = UnreportedSpan.newContext("dropped");
+
+  /**
+   * Makes the span a root span, instead of a child of a span that was dropped
+   * without a parent of its own, unless the span already has a parent.
+   *
+   * @return This builder.
+   */
+  private Tracer.SpanBuilder asChildOfDropped() {
+    if (this.parent == null)
+      ignoreActiveSpan();
+
+    return this;
+  }
+
   @Override
   public Tracer.SpanBuilder asChildOf(final SpanContext parent) {
+    if (parent == droppedContext)
+      return asChildOfDropped();
+
+    if (this.parent == null)
+      this.parent = parent;
+
     target.asChildOf(parent);
     return this;
   }
 
   @Override
   public Tracer.SpanBuilder asChildOf(final Span parent) {
+    if (parent != null && parent.context() == droppedContext)
+      return asChildOfDropped();
+
+    if (this.parent == null && parent != null)
+      this.parent = parent.context();
+
     target.asChildOf(parent);
     return this;
   }
 
   @Override
   public Tracer.SpanBuilder addReference(final String referenceType, final SpanContext referencedContext) {
+    if (referencedContext == droppedContext)
+      return asChildOfDropped();
+
+    if (this.parent == null && (References.CHILD_OF.equals(referenceType) || References.FOLLOWS_FROM.equals(referenceType)))
+      this.parent = referencedContext;
+
     target.addReference(referenceType, referencedContext);
     return this;
   }
 
   @Override
   public Tracer.SpanBuilder ignoreActiveSpan() {
+    ignoreActiveSpan = true;
     target.ignoreActiveSpan();
     return this;
   }
@@ -96,20 +145,43 @@ public class RewritableSpanBuilder extends Rewriter implements Tracer.SpanBuilde
 
   private RewritableSpan span;
 
+  /**
+   * Starts the span, unless it was dropped by a rewrite rule. A dropped span is
+   * never started in the target tracer, and is an {@link UnreportedSpan} with
+   * the context of its parent, or with {@link #droppedContext} if it does not
+   * have a parent, so that the spans that are created as its children are
+   * attached to its parent.
+   */
   @Override
   public Span start() {
+    SpanContext parent = this.parent;
+    if (parent == null && !ignoreActiveSpan && scopeManager != null) {
+      final Span activeSpan = scopeManager.activeSpan();
+      if (activeSpan != null) {
+        parent = activeSpan.context();
+        if (parent == droppedContext) {
+          target.ignoreActiveSpan();
+          parent = null;
+        }
+      }
+    }
+
+    if (dropped)
+      return new UnreportedSpan(parent != null ? parent : droppedContext);
+
     final Span span = target.start();
     if (this.span != null && this.span.target == span)
       return this.span;
 
     if (log != null)
-      for (final Map<String,Object> fields : log)
+      for (final Map<String,?> fields : log)
         span.log(fields);
 
     if (operationName != null)
       span.setOperationName(operationName);
 
-    return this.span = newRewritableSpan(span);
+    this.span = newRewritableSpan(span);
+    return this.span;
   }
 
   RewritableSpan newRewritableSpan(final Span span) {
@@ -123,7 +195,7 @@ public class RewritableSpanBuilder extends Rewriter implements Tracer.SpanBuilde
   }
 
   private String operationName;
-  private ArrayList<Map<String,Object>> log;
+  private ArrayList<Map<String,?>> log;
 
   @Override
   void rewriteTag(final String key, final Object value) {
@@ -139,14 +211,24 @@ public class RewritableSpanBuilder extends Rewriter implements Tracer.SpanBuilde
 
   @Override
   void rewriteLog(final long timestampMicroseconds, final String key, final Object value) {
+    LogBuffer.get().put(key, value);
+  }
+
+  @Override
+  void rewriteLog(final long timestampMicroseconds, final Map<String,Object> fields) {
     if (log == null)
       log = new ArrayList<>();
 
-    log.add(Collections.singletonMap(key, value));
+    log.add(fields);
   }
 
   @Override
   void rewriteOperationName(final String name) {
     operationName = name;
   }
+
+  @Override
+  void drop() {
+    dropped = true;
+  }
 }
\ No newline at end of file
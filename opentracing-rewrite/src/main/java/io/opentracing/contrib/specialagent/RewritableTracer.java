@@ -15,7 +15,7 @@
 
 package io.opentracing.contrib.specialagent;
 
-import java.util.HashMap;
+import java.io.File;
 import java.util.List;
 
 import io.opentracing.Scope;
@@ -26,28 +26,45 @@ import io.opentracing.Tracer;
 import io.opentracing.propagation.Format;
 
 public class RewritableTracer implements Tracer {
-  final Tracer target;
-  final List<RewriteRules> rulesManifest;
-
-  public RewritableTracer(final Tracer target, final List<RewriteRules> rulesManifest) {
-    this.target = target;
-    this.rulesManifest = rulesManifest;
-  }
+  /**
+   * The {@link RewriteRules} of each Integration, resolved from a list of
+   * rewrite rules for the plugin names of {@link AgentRule}. Instances are
+   * immutable, are built eagerly when the rules or the plugin names change,
+   * and are published with a single write.
+   */
+  private static final class PluginRules {
+    private final String[] pluginNames;
+    private final List<RewriteRules> rulesManifest;
+    private final RewriteRules[] pluginIdToRules;
+    private final RewriteRules unknownRules;
+
+    private PluginRules(final String[] pluginNames, final List<RewriteRules> rulesManifest) {
+      this.pluginNames = pluginNames;
+      this.rulesManifest = rulesManifest;
+      this.pluginIdToRules = new RewriteRules[pluginNames.length];
+      for (int i = 0; i < pluginNames.length; ++i)
+        pluginIdToRules[i] = compile(mergeRules(pluginNames[i] != null ? pluginNames[i] : "", rulesManifest));
+
+      this.unknownRules = compile(mergeRules("", rulesManifest));
+    }
 
-  private static final HashMap<String,RewriteRules> nameToRules = new HashMap<>();
+    private RewriteRules get(final int pluginId) {
+      return pluginId < 0 || pluginId >= pluginIdToRules.length ? unknownRules : pluginIdToRules[pluginId];
+    }
 
-  private RewriteRules getRulesForCurrentPlugin() {
-    String currentPluginName = AgentRule.getCurrentPluginName();
-    if (currentPluginName == null)
-      currentPluginName = "";
+    private static RewriteRules compile(final RewriteRules rules) {
+      if (rules != null)
+        rules.compile();
 
-    if (nameToRules.containsKey(currentPluginName))
-      return nameToRules.get(currentPluginName);
+      return rules;
+    }
+  }
 
+  private static RewriteRules mergeRules(final String pluginName, final List<RewriteRules> rulesManifest) {
     boolean cloned = false;
     RewriteRules matchingRules = null;
     for (final RewriteRules rules : rulesManifest) {
-      if (rules.namePattern.matcher(currentPluginName).matches()) {
+      if (rules.namePattern.matcher(pluginName).matches()) {
         if (matchingRules == null) {
           matchingRules = rules;
         }
@@ -62,25 +79,77 @@ public class RewritableTracer implements Tracer {
       }
     }
 
-    nameToRules.put(currentPluginName, matchingRules);
     return matchingRules;
   }
 
+  final Tracer target;
+  private volatile PluginRules pluginRules;
+  RewriteRulesWatcher watcher;
+
+  private final AgentRule.PluginNamesListener pluginNamesListener = new AgentRule.PluginNamesListener() {
+    @Override
+    public void onPluginNames(final String[] pluginNames) {
+      synchronized (RewritableTracer.this) {
+        if (pluginRules.pluginNames != pluginNames)
+          pluginRules = new PluginRules(pluginNames, pluginRules.rulesManifest);
+      }
+    }
+  };
+
+  public RewritableTracer(final Tracer target, final List<RewriteRules> rulesManifest) {
+    this.target = target;
+    setRules(rulesManifest);
+    AgentRule.addPluginNamesListener(pluginNamesListener);
+    // Apply a change of the plugin names that preceded the registration of the listener
+    pluginNamesListener.onPluginNames(AgentRule.getPluginNames());
+  }
+
+  /**
+   * Replaces the rewrite rules of this tracer. The rules are merged and
+   * compiled for each Integration in the calling thread, and are then
+   * published atomically, so that the threads that create spans never block
+   * on, or perform, the compilation. The rules are compiled again, in the
+   * thread that refreshes the configuration of {@link AgentRule}, when
+   * Integrations are added.
+   *
+   * @param rulesManifest The new rewrite rules.
+   */
+  public synchronized void setRules(final List<RewriteRules> rulesManifest) {
+    this.pluginRules = new PluginRules(AgentRule.getPluginNames(), rulesManifest);
+  }
+
+  /**
+   * Starts a daemon thread that watches the specified file for changes, and
+   * replaces the rewrite rules of this tracer with the rules parsed from the
+   * file when it changes. If the changed file cannot be parsed, the current
+   * rules remain in effect. The watcher of a previous call is stopped, and
+   * the watcher is stopped when this tracer is closed.
+   *
+   * @param file The rewrite rules JSON file.
+   * @throws IllegalStateException If an I/O error has occurred registering
+   *           the watch.
+   */
+  public synchronized void watch(final File file) {
+    if (watcher != null)
+      watcher.close();
+
+    watcher = new RewriteRulesWatcher(this, file);
+    watcher.start();
+  }
+
+  private RewriteRules getRulesForCurrentPlugin() {
+    return pluginRules.get(AgentRule.getCurrentPluginId());
+  }
+
   @Override
   public ScopeManager scopeManager() {
     return target.scopeManager();
   }
 
-  private RewritableSpan activeSpan;
-
   @Override
   public Span activeSpan() {
     final Span activeSpan = target.activeSpan();
-    if (this.activeSpan != null && this.activeSpan.target == activeSpan)
-      return this.activeSpan;
-
-    final RewriteRules rules = getRulesForCurrentPlugin();
-    return this.activeSpan = new RewritableSpan(activeSpan, rules);
+    return activeSpan == null ? null : new RewritableSpan(activeSpan, getRulesForCurrentPlugin());
   }
 
   @Override
@@ -88,21 +157,15 @@ public class RewritableTracer implements Tracer {
     return target.activateSpan(span);
   }
 
-  private RewritableSpanBuilder spanBuilder;
-
   @Override
   public SpanBuilder buildSpan(final String operationName) {
-    final SpanBuilder spanBuilder = target.buildSpan(operationName);
-    if (this.spanBuilder != null && this.spanBuilder.target == spanBuilder)
-      return this.spanBuilder;
-
-    final RewriteRules rules = getRulesForCurrentPlugin();
-    return this.spanBuilder = new RewritableSpanBuilder(operationName, spanBuilder, rules);
+    return new RewritableSpanBuilder(operationName, target.buildSpan(operationName), getRulesForCurrentPlugin(), target.scopeManager());
   }
 
   @Override
   public <C>void inject(final SpanContext spanContext, final Format<C> format, final C carrier) {
-    target.inject(spanContext, format, carrier);
+    if (spanContext != RewritableSpanBuilder.droppedContext)
+      target.inject(spanContext, format, carrier);
   }
 
   @Override
@@ -112,6 +175,14 @@ public class RewritableTracer implements Tracer {
 
   @Override
   public void close() {
+    synchronized (this) {
+      if (watcher != null) {
+        watcher.close();
+        watcher = null;
+      }
+    }
+
+    AgentRule.removePluginNamesListener(pluginNamesListener);
     target.close();
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,185 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The compiled form of the {@link RewriteRule}s of one action type and key,
+ * which finds the first rule (in declaration order) that matches a value.
+ * Rules without an input value match any value. Rules with a literal input
+ * value are matched with a single hash lookup. Rules with a regex input value
+ * are matched with a single pattern that is the alternation of all regexes,
+ * and only the regex of the matched rule is re-run to capture its groups.
+ *
+ * @author Seva Safris
+ */
+final class RewriteDispatcher {
+  private static final Pattern backReference = Pattern.compile("\\\\([1-9]|k<)");
+
+  /**
+   * The {@link RewriteRule} that matched a value, and the match object to be
+   * passed to {@link RewriteRule#rewrite(Rewriter,long,Object,Object)}.
+   */
+  static final class Match {
+    final RewriteRule rule;
+    final Object match;
+
+    private Match(final RewriteRule rule, final Object match) {
+      this.rule = rule;
+      this.match = match;
+    }
+  }
+
+  /**
+   * Returns the key by which the specified literal value is hashed. Numbers
+   * are compared by their {@code double} value, as per
+   * {@link Number#doubleValue()}.
+   */
+  private static Object toLiteralKey(final Object value) {
+    if (!(value instanceof Number))
+      return value;
+
+    final double number = ((Number)value).doubleValue();
+    return number == 0 ? 0d : number;
+  }
+
+  private static Pattern fuse(final Pattern[] patterns, final int[] alternativeGroups) {
+    final StringBuilder builder = new StringBuilder();
+    int group = 1;
+    for (int i = 0; i < patterns.length; ++i) {
+      if (patterns[i].flags() != 0 || backReference.matcher(patterns[i].pattern()).find())
+        return null;
+
+      if (i > 0)
+        builder.append('|');
+
+      builder.append('(').append(patterns[i].pattern()).append(')');
+      alternativeGroups[i] = group;
+      group += patterns[i].matcher("").groupCount() + 1;
+    }
+
+    try {
+      return Pattern.compile(builder.toString());
+    }
+    catch (final PatternSyntaxException e) {
+      return null;
+    }
+  }
+
+  private final RewriteRule[] rules;
+  private final int wildcardIndex;
+  private final HashMap<Object,Integer> literalToIndex;
+  private final int[] regexIndices;
+  private final Pattern[] patterns;
+  private final Pattern fused;
+  private final int[] alternativeGroups;
+
+  RewriteDispatcher(final List<RewriteRule> rules) {
+    this.rules = rules.toArray(new RewriteRule[rules.size()]);
+    int wildcardIndex = Integer.MAX_VALUE;
+    HashMap<Object,Integer> literalToIndex = null;
+    final ArrayList<Integer> regexIndices = new ArrayList<>();
+    for (int i = 0; i < this.rules.length; ++i) {
+      final Object value = this.rules[i].input.getValue();
+      if (value == null) {
+        if (wildcardIndex == Integer.MAX_VALUE)
+          wildcardIndex = i;
+      }
+      else if (value instanceof Pattern) {
+        regexIndices.add(i);
+      }
+      else if (!(value instanceof Number && Double.isNaN(((Number)value).doubleValue()))) {
+        if (literalToIndex == null)
+          literalToIndex = new HashMap<>();
+
+        final Object key = toLiteralKey(value);
+        if (!literalToIndex.containsKey(key))
+          literalToIndex.put(key, i);
+      }
+    }
+
+    this.wildcardIndex = wildcardIndex;
+    this.literalToIndex = literalToIndex;
+    this.regexIndices = new int[regexIndices.size()];
+    this.patterns = new Pattern[regexIndices.size()];
+    for (int i = 0; i < this.regexIndices.length; ++i) {
+      this.regexIndices[i] = regexIndices.get(i);
+      this.patterns[i] = (Pattern)this.rules[this.regexIndices[i]].input.getValue();
+    }
+
+    this.alternativeGroups = new int[patterns.length];
+    this.fused = patterns.length > 1 ? fuse(patterns, alternativeGroups) : null;
+  }
+
+  /**
+   * Returns the {@link Match} of the first rule that matches the specified
+   * value, or {@code null} if no rule matches.
+   *
+   * @param value The value.
+   * @return The {@link Match} of the first rule that matches the specified
+   *         value, or {@code null} if no rule matches.
+   */
+  Match match(final Object value) {
+    int index = wildcardIndex;
+    if (literalToIndex != null && value != null) {
+      final Integer literalIndex = literalToIndex.get(toLiteralKey(value));
+      if (literalIndex != null && literalIndex < index)
+        index = literalIndex;
+    }
+
+    Matcher matcher = null;
+    if (value != null && regexIndices.length > 0 && regexIndices[0] < index) {
+      final String string = value.toString();
+      if (fused != null) {
+        final Matcher fusedMatcher = fused.matcher(string);
+        if (fusedMatcher.matches()) {
+          for (int i = 0; i < alternativeGroups.length && regexIndices[i] < index; ++i) {
+            if (fusedMatcher.start(alternativeGroups[i]) != -1) {
+              matcher = patterns[i].matcher(string);
+              if (matcher.matches())
+                index = regexIndices[i];
+              else
+                matcher = null;
+
+              break;
+            }
+          }
+        }
+      }
+      else {
+        for (int i = 0; i < patterns.length && regexIndices[i] < index; ++i) {
+          final Matcher candidate = patterns[i].matcher(string);
+          if (candidate.matches()) {
+            matcher = candidate;
+            index = regexIndices[i];
+            break;
+          }
+        }
+      }
+    }
+
+    if (index == Integer.MAX_VALUE)
+      return null;
+
+    return new Match(rules[index], matcher != null ? matcher : RewriteRule.SIMPLE);
+  }
+}
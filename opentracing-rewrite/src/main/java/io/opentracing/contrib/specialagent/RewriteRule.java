@@ -17,7 +17,6 @@ package io.opentracing.contrib.specialagent;
 
 import java.util.Objects;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import com.grack.nanojson.JsonArray;
 import com.grack.nanojson.JsonObject;
@@ -62,42 +61,29 @@ class RewriteRule {
     return rule;
   }
 
-  private static boolean matchesSimpleValue(final Object predicate, final Object value) {
-    if (predicate instanceof Number && value instanceof Number)
-      return ((Number)predicate).doubleValue() == ((Number)value).doubleValue();
-
-    return predicate.equals(value);
-  }
-
   static final Boolean SIMPLE = Boolean.TRUE;
 
   final Action input;
   final Action[] outputs;
+  private final String[] outputKeys;
 
   RewriteRule(final Action input, final Action[] outputs) {
     this.input = input;
     this.outputs = outputs;
-  }
-
-  final void rewrite(final Rewriter rewriter, final long timestampMicroseconds, final Object match, final Object input) {
-    if (outputs != null) {
-      for (final Action output : outputs) {
-        final String outputKey = output.getKey() != null ? output.getKey() : this.input.getKey();
-        final Object outputValue = rewriteValue(match, input, output.getValue());
-        output.rewrite(rewriter, timestampMicroseconds, outputKey, outputValue);
-      }
+    if (outputs == null) {
+      this.outputKeys = null;
+    }
+    else {
+      this.outputKeys = new String[outputs.length];
+      for (int i = 0; i < outputs.length; ++i)
+        outputKeys[i] = outputs[i].getKey() != null ? outputs[i].getKey() : input.getKey();
     }
   }
 
-  final Object matchValue(final Object input) {
-    if (this.input.getValue() == null)
-      return SIMPLE;
-
-    if (!(this.input.getValue() instanceof Pattern))
-      return matchesSimpleValue(this.input.getValue(), input) ? SIMPLE : null;
-
-    final Matcher matcher = ((Pattern)this.input.getValue()).matcher(input.toString());
-    return matcher.matches() ? matcher : null;
+  final void rewrite(final Rewriter rewriter, final long timestampMicroseconds, final Object match, final Object input) {
+    if (outputs != null)
+      for (int i = 0; i < outputs.length; ++i)
+        outputs[i].rewrite(rewriter, this, timestampMicroseconds, outputKeys[i], match, input);
   }
 
   Object rewriteValue(final Object matcher, final Object input, final Object output) {
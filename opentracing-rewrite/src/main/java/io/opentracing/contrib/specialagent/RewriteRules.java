@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -71,7 +72,9 @@ public final class RewriteRules implements Cloneable {
   }
 
   private RewriteRules(final HashMap<String,List<RewriteRule>> keyToRules) {
-    this.keyToRules.putAll(keyToRules);
+    for (final Map.Entry<String,List<RewriteRule>> entry : keyToRules.entrySet())
+      this.keyToRules.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+
     this.namePattern = null;
   }
 
@@ -81,6 +84,7 @@ public final class RewriteRules implements Cloneable {
       keyToRules.put(rule.input.getKey(), list = new ArrayList<>());
 
     list.add(rule);
+    dispatchers = null;
   }
 
   void addAll(final RewriteRules rules) {
@@ -89,13 +93,71 @@ public final class RewriteRules implements Cloneable {
         add(rule);
   }
 
-  List<RewriteRule> getRules(final String key) {
-    final List<RewriteRule> inputs = keyToRules.get(key);
-    return inputs != null ? inputs : Collections.<RewriteRule>emptyList();
+  private volatile HashMap<String,RewriteDispatcher>[] dispatchers;
+
+  private static int getTypeIndex(final Class<? extends Action> type) {
+    return type == Action.Tag.class ? 0 : type == Action.Log.class ? 1 : 2;
+  }
+
+  /**
+   * Compiles the rules into a {@link RewriteDispatcher} for each action type
+   * and key. The dispatch tables only contain the keys for which rules of the
+   * action type exist.
+   */
+  @SuppressWarnings("unchecked")
+  private HashMap<String,RewriteDispatcher>[] compileDispatchers() {
+    final HashMap<String,RewriteDispatcher>[] dispatchers = new HashMap[3];
+    for (int i = 0; i < dispatchers.length; ++i)
+      dispatchers[i] = new HashMap<>();
+
+    final ArrayList<RewriteRule>[] typeToRules = new ArrayList[dispatchers.length];
+    for (final Map.Entry<String,List<RewriteRule>> entry : keyToRules.entrySet()) {
+      for (int i = 0; i < typeToRules.length; ++i)
+        typeToRules[i] = null;
+
+      for (final RewriteRule rule : entry.getValue()) {
+        final int typeIndex = getTypeIndex(rule.input.getClass());
+        if (typeToRules[typeIndex] == null)
+          typeToRules[typeIndex] = new ArrayList<>();
+
+        typeToRules[typeIndex].add(rule);
+      }
+
+      for (int i = 0; i < typeToRules.length; ++i)
+        if (typeToRules[i] != null)
+          dispatchers[i].put(entry.getKey(), new RewriteDispatcher(typeToRules[i]));
+    }
+
+    return this.dispatchers = dispatchers;
+  }
+
+  /**
+   * Compiles the rules, unless they are already compiled.
+   */
+  void compile() {
+    if (dispatchers == null)
+      compileDispatchers();
+  }
+
+  /**
+   * Returns the {@link RewriteDispatcher} for the rules of the specified action
+   * type and key, or {@code null} if there are no such rules.
+   *
+   * @param type The action type.
+   * @param key The key.
+   * @return The {@link RewriteDispatcher} for the rules of the specified action
+   *         type and key, or {@code null} if there are no such rules.
+   */
+  RewriteDispatcher getDispatcher(final Class<? extends Action> type, final String key) {
+    HashMap<String,RewriteDispatcher>[] dispatchers = this.dispatchers;
+    if (dispatchers == null)
+      dispatchers = compileDispatchers();
+
+    return dispatchers[getTypeIndex(type)].get(key);
   }
 
   @Override
   public RewriteRules clone() {
-    return new RewriteRules(new HashMap<>(keyToRules));
+    return new RewriteRules(keyToRules);
   }
 }
\ No newline at end of file
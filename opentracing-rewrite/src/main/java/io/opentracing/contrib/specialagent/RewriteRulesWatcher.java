@@ -0,0 +1,132 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A daemon thread that watches a rewrite rules JSON file with a
+ * {@link WatchService}, and replaces the rules of a {@link RewritableTracer}
+ * when the file changes. The file is parsed and compiled in this thread, and
+ * the new rules are published with {@link RewritableTracer#setRules(List)}.
+ * The watcher is stopped with {@link #close()}.
+ *
+ * @author Seva Safris
+ */
+class RewriteRulesWatcher extends Thread implements Closeable {
+  private static final Logger logger = Logger.getLogger(RewriteRulesWatcher.class);
+  private static final long settleMillis = 200;
+
+  private final RewritableTracer tracer;
+  private final Path path;
+  private final WatchService watchService;
+  private byte[] contents;
+
+  RewriteRulesWatcher(final RewritableTracer tracer, final File file) {
+    super("SpecialAgent-RewriteRulesWatcher");
+    setDaemon(true);
+    this.tracer = tracer;
+    this.path = file.getAbsoluteFile().toPath();
+    try {
+      this.contents = Files.readAllBytes(path);
+      this.watchService = FileSystems.getDefault().newWatchService();
+      // Editors often replace a file instead of modifying it, so the directory is watched
+      path.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+    catch (final IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (true) {
+        final WatchKey key = watchService.take();
+        boolean changed = isChanged(key);
+        // Wait for the writes to the file to settle, to avoid parsing a partially written file
+        for (WatchKey next; (next = watchService.poll(settleMillis, TimeUnit.MILLISECONDS)) != null;)
+          changed |= isChanged(next);
+
+        if (changed)
+          reload();
+      }
+    }
+    catch (final ClosedWatchServiceException | InterruptedException e) {
+    }
+  }
+
+  private boolean isChanged(final WatchKey key) {
+    boolean changed = false;
+    for (final WatchEvent<?> event : key.pollEvents())
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW || path.getFileName().equals(event.context()))
+        changed = true;
+
+    key.reset();
+    return changed;
+  }
+
+  /**
+   * Reads the file, and replaces the rules of the tracer if the contents of
+   * the file have changed and can be parsed.
+   */
+  void reload() {
+    try {
+      final byte[] contents = Files.readAllBytes(path);
+      if (Arrays.equals(contents, this.contents))
+        return;
+
+      final List<RewriteRules> rules = RewriteRules.parseRules(new ByteArrayInputStream(contents));
+      tracer.setRules(rules);
+      this.contents = contents;
+      if (logger.isLoggable(Level.INFO))
+        logger.info("Reloaded rewrite rules from " + path);
+    }
+    catch (final IOException | RuntimeException e) {
+      logger.log(Level.WARNING, "Failed to reload rewrite rules from " + path + ", keeping current rules: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Stops this watcher by closing its {@link WatchService}, which causes the
+   * thread to exit.
+   */
+  @Override
+  public void close() {
+    try {
+      watchService.close();
+    }
+    catch (final IOException e) {
+      logger.log(Level.WARNING, "Failed to close watch service for " + path + ": " + e.getMessage(), e);
+    }
+
+    interrupt();
+  }
+}
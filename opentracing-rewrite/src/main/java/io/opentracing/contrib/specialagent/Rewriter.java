@@ -15,6 +15,8 @@
 
 package io.opentracing.contrib.specialagent;
 
+import java.util.Map;
+
 abstract class Rewriter {
   final RewriteRules rules;
 
@@ -24,7 +26,9 @@ abstract class Rewriter {
 
   abstract void rewriteTag(String key, Object value);
   abstract void rewriteLog(long timestampMicroseconds, String key, Object value);
+  abstract void rewriteLog(long timestampMicroseconds, Map<String,Object> fields);
   abstract void rewriteOperationName(String name);
+  abstract void drop();
 
   final void onOperationName(final String operationName) {
     if (!onEvent(Action.OperationName.class, 0, null, operationName))
@@ -45,17 +49,27 @@ abstract class Rewriter {
     if (rules == null)
       return false;
 
-    for (final RewriteRule rule : rules.getRules(key)) {
-      if (rule.input.getClass() != type)
-        continue;
+    final RewriteDispatcher dispatcher = rules.getDispatcher(type, key);
+    if (dispatcher == null)
+      return false;
 
-      final Object match = rule.matchValue(value);
-      if (match != null) {
-        rule.rewrite(this, timestampMicroseconds, match, value);
-        return true;
-      }
+    final RewriteDispatcher.Match match = dispatcher.match(value);
+    if (match == null)
+      return false;
+
+    // The log outputs of the rule are consolidated into a single log record
+    final LogBuffer buffer = LogBuffer.get();
+    final int mark = buffer.begin();
+    try {
+      match.rule.rewrite(this, timestampMicroseconds, match.match, value);
+      final Map<String,Object> fields = buffer.toMap();
+      if (fields != null)
+        rewriteLog(timestampMicroseconds, fields);
+    }
+    finally {
+      buffer.end(mark);
     }
 
-    return false;
+    return true;
   }
 }
\ No newline at end of file
@@ -160,9 +160,9 @@ public class RewritableTracerTest {
               LogFieldRewriter newLogFieldRewriter() {
                 final LogFieldRewriter logFieldRewriter = new LogFieldRewriter(rules, this, target) {
                   @Override
-                  void rewriteLog(final long timestampMicroseconds, final String key, final Object value) {
+                  void rewriteLog(final long timestampMicroseconds, final Map<String,Object> fields) {
                     mapAllocations.add(this);
-                    super.rewriteLog(timestampMicroseconds, key, value);
+                    super.rewriteLog(timestampMicroseconds, fields);
                   }
                 };
                 logFieldRewriters.add(logFieldRewriter);
@@ -0,0 +1,85 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import static org.junit.Assert.*;
+
+import java.util.regex.Matcher;
+
+import org.junit.Test;
+
+import com.grack.nanojson.JsonParser;
+import com.grack.nanojson.JsonParserException;
+
+public class RewriteDispatcherTest {
+  private static RewriteDispatcher newDispatcher(final String json) throws JsonParserException {
+    final RewriteRules rules = RewriteRules.parseRules(JsonParser.array().from(json), "test");
+    return rules.getDispatcher(Action.Tag.class, "k");
+  }
+
+  /**
+   * Returns the index of the matched rule, which each rule in the tests
+   * declares as its output value.
+   */
+  private static int indexOf(final RewriteDispatcher dispatcher, final Object value) {
+    final RewriteDispatcher.Match match = dispatcher.match(value);
+    return match == null ? -1 : Integer.parseInt(String.valueOf(match.rule.outputs[0].getValue()));
+  }
+
+  @Test
+  public void testFirstMatchWins() throws JsonParserException {
+    final String json = "[" +
+      "{\"input\": {\"type\": \"tag\", \"key\": \"k\", \"value\": \"a(b+)c\"}, \"output\": {\"type\": \"tag\", \"value\": \"0\"}}," +
+      "{\"input\": {\"type\": \"tag\", \"key\": \"k\", \"value\": 5}, \"output\": {\"type\": \"tag\", \"value\": \"1\"}}," +
+      "{\"input\": {\"type\": \"tag\", \"key\": \"k\", \"value\": \"(x)(y)|5\"}, \"output\": {\"type\": \"tag\", \"value\": \"2\"}}," +
+      "{\"input\": {\"type\": \"tag\", \"key\": \"k\", \"value\": \"x(.*)\"}, \"output\": {\"type\": \"tag\", \"value\": \"3\"}}," +
+      "{\"input\": {\"type\": \"tag\", \"key\": \"k\"}, \"output\": {\"type\": \"tag\", \"value\": \"4\"}}," +
+      "{\"input\": {\"type\": \"tag\", \"key\": \"k\", \"value\": \"z\"}, \"output\": {\"type\": \"tag\", \"value\": \"5\"}}" +
+    "]";
+
+    final RewriteDispatcher dispatcher = newDispatcher(json);
+    assertEquals(0, indexOf(dispatcher, "abbc"));
+    assertEquals(1, indexOf(dispatcher, 5));
+    assertEquals(1, indexOf(dispatcher, 5.0f));
+    assertEquals(2, indexOf(dispatcher, "xy"));
+    assertEquals(3, indexOf(dispatcher, "xyz"));
+    assertEquals(4, indexOf(dispatcher, "z"));
+    assertEquals(4, indexOf(dispatcher, null));
+
+    final Matcher matcher = (Matcher)dispatcher.match("xyz").match;
+    assertEquals("yz", matcher.group(1));
+  }
+
+  @Test
+  public void testNoMatch() throws JsonParserException {
+    final String json = "[" +
+      "{\"input\": {\"type\": \"tag\", \"key\": \"k\", \"value\": \"a\"}, \"output\": {\"type\": \"tag\", \"value\": \"0\"}}," +
+      "{\"input\": {\"type\": \"tag\", \"key\": \"k\", \"value\": true}, \"output\": {\"type\": \"tag\", \"value\": \"1\"}}," +
+      "{\"input\": {\"type\": \"log\", \"key\": \"k\"}, \"output\": {\"type\": \"tag\", \"value\": \"2\"}}" +
+    "]";
+
+    final RewriteDispatcher dispatcher = newDispatcher(json);
+    assertNull(dispatcher.match("b"));
+    assertNull(dispatcher.match("true"));
+    assertNull(dispatcher.match(null));
+    assertNotNull(dispatcher.match(true));
+
+    final RewriteRules rules = RewriteRules.parseRules(JsonParser.array().from(json), "test");
+    assertNull(rules.getDispatcher(Action.Tag.class, "other"));
+    assertNull(rules.getDispatcher(Action.OperationName.class, "k"));
+    assertNotNull(rules.getDispatcher(Action.Log.class, "k"));
+  }
+}
@@ -18,8 +18,10 @@ package io.opentracing.contrib.specialagent;
 import static org.junit.Assert.*;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -27,6 +29,7 @@ import java.util.Map;
 
 import org.junit.Test;
 
+import io.opentracing.Scope;
 import io.opentracing.Span;
 import io.opentracing.mock.MockSpan;
 import io.opentracing.mock.MockTracer;
@@ -62,6 +65,104 @@ public class RewriteRuleTest {
     }
   }
 
+  @Test
+  public void droppedSpanIsReplacedByParent() {
+    final String json = "{\"*\": [{\"input\": {\"type\": \"operationName\", \"value\": \"child\"}, \"output\": {\"type\": \"drop\"}}]}";
+    final MockTracer mockTracer = new MockTracer();
+    AgentRule.$Access.configure(null, Collections.<String,String>emptyMap());
+    try (final RewritableTracer tracer = new RewritableTracer(mockTracer, RewriteRules.parseRules(new ByteArrayInputStream(json.getBytes())))) {
+      final Span parent = tracer.buildSpan("parent").start();
+      final Span child = tracer.buildSpan("child").asChildOf(parent).start();
+      tracer.buildSpan("grandchild").asChildOf(child).start().finish();
+      try (final Scope scope = tracer.activateSpan(parent)) {
+        final Span activeChild = tracer.buildSpan("child").start();
+        assertEquals(parent.context().toSpanId(), activeChild.context().toSpanId());
+        activeChild.finish();
+      }
+
+      child.finish();
+      parent.finish();
+
+      final List<MockSpan> spans = mockTracer.finishedSpans();
+      assertEquals(2, spans.size());
+      assertEquals("grandchild", spans.get(0).operationName());
+      assertEquals("parent", spans.get(1).operationName());
+      assertEquals(spans.get(1).context().spanId(), spans.get(0).parentId());
+    }
+  }
+
+  @Test
+  public void droppedRootSpanIsNotStarted() {
+    final String json = "{\"*\": [{\"input\": {\"type\": \"operationName\", \"value\": \"root\"}, \"output\": {\"type\": \"drop\"}}]}";
+    final MockTracer mockTracer = new MockTracer();
+    AgentRule.$Access.configure(null, Collections.<String,String>emptyMap());
+    try (final RewritableTracer tracer = new RewritableTracer(mockTracer, RewriteRules.parseRules(new ByteArrayInputStream(json.getBytes())))) {
+      final Span root = tracer.buildSpan("root").start();
+      tracer.buildSpan("child").asChildOf(root).start().finish();
+      try (final Scope scope = tracer.activateSpan(root)) {
+        tracer.buildSpan("activeChild").start().finish();
+      }
+
+      root.finish();
+
+      // The children of the dropped root are the roots of their traces
+      final List<MockSpan> spans = mockTracer.finishedSpans();
+      assertEquals(2, spans.size());
+      assertEquals("child", spans.get(0).operationName());
+      assertEquals(0, spans.get(0).parentId());
+      assertEquals("activeChild", spans.get(1).operationName());
+      assertEquals(0, spans.get(1).parentId());
+    }
+  }
+
+  private static String getTag(final RewritableTracer tracer, final MockTracer mockTracer) {
+    mockTracer.reset();
+    tracer.buildSpan("op").withTag("key", "value").start().finish();
+    return (String)mockTracer.finishedSpans().get(0).tags().get("key");
+  }
+
+  @Test
+  public void reloadsRulesWhenFileChanges() throws IOException {
+    final File file = File.createTempFile("rewrite", ".json");
+    file.deleteOnExit();
+    Files.write(file.toPath(), "{}".getBytes());
+    AgentRule.$Access.configure(null, Collections.<String,String>emptyMap());
+    final MockTracer mockTracer = new MockTracer();
+    final RewritableTracer tracer = new RewritableTracer(mockTracer, Collections.<RewriteRules>emptyList());
+    final RewriteRulesWatcher watcher = new RewriteRulesWatcher(tracer, file);
+    try {
+      assertEquals("value", getTag(tracer, mockTracer));
+
+      Files.write(file.toPath(), "{\"*\": [{\"input\": {\"type\": \"tag\", \"key\": \"key\"}, \"output\": {\"type\": \"tag\", \"value\": \"new\"}}]}".getBytes());
+      watcher.reload();
+      assertEquals("new", getTag(tracer, mockTracer));
+
+      // Invalid rules are not applied
+      Files.write(file.toPath(), "invalid".getBytes());
+      watcher.reload();
+      assertEquals("new", getTag(tracer, mockTracer));
+    }
+    finally {
+      watcher.close();
+    }
+  }
+
+  @Test
+  public void closeStopsWatcher() throws InterruptedException, IOException {
+    final File file = File.createTempFile("rewrite", ".json");
+    file.deleteOnExit();
+    Files.write(file.toPath(), "{}".getBytes());
+    final RewritableTracer tracer = new RewritableTracer(new MockTracer(), Collections.<RewriteRules>emptyList());
+    tracer.watch(file);
+    final RewriteRulesWatcher watcher = tracer.watcher;
+    assertTrue(watcher.isAlive());
+
+    tracer.close();
+    assertNull(tracer.watcher);
+    watcher.join();
+    assertFalse(watcher.isAlive());
+  }
+
   @Test
   public void completeInvalidJson() {
     try {
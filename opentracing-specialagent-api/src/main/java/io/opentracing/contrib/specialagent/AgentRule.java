@@ -20,6 +20,8 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.instrument.Instrumentation;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import net.bytebuddy.agent.builder.AgentBuilder;
 import net.bytebuddy.asm.Advice;
@@ -36,14 +38,14 @@ public abstract class AgentRule {
 
     /**
      * Load the {@link AgentRule} class and initialize
-     * {@link AgentRule#isThreadInstrumentable}.
+     * {@link AgentRule#threadState}.
      * <p>
      * <b>Note:</b> This method must be called before tracer classes are loaded,
      * in order to capture lineage of threads started by the tracer.
      */
     static void load() {
       // "main" thread is instrumentable
-      isThreadInstrumentable.set(Boolean.TRUE);
+      threadState.set(new ThreadState(true));
     }
 
     /**
@@ -57,6 +59,8 @@ public abstract class AgentRule {
     static void configure(final Runnable initializer, final Map<String,String> classNameToName) {
       $Access.initializer = initializer;
       AgentRule.classNameToName = classNameToName;
+      AgentRule.config = null;
+      refreshConfig();
     }
 
     /**
@@ -82,10 +86,10 @@ public abstract class AgentRule {
     }
 
     /**
-     * @return The {@link ThreadLocalCounter} instance from {@link AgentRule}.
+     * @return The {@link ThreadState} thread-local from {@link AgentRule}.
      */
-    static ThreadLocalCounter entryCounter() {
-      return entryCounter;
+    static ThreadLocal<ThreadState> threadState() {
+      return threadState;
     }
 
     /**
@@ -104,51 +108,212 @@ public abstract class AgentRule {
 
   private static boolean initialized;
 
-  private static final InheritableThreadLocal<Boolean> isThreadInstrumentable = new InheritableThreadLocal<Boolean>() {
+  private static final InheritableThreadLocal<ThreadState> threadState = new InheritableThreadLocal<ThreadState>() {
     @Override
-    protected Boolean childValue(Boolean parentValue) {
-      if (parentValue == null) {
-        logger.warning("Unknown instrumentable state for parent of thread: " + Thread.currentThread().getName());
-        parentValue = Boolean.TRUE;
-      }
+    protected ThreadState childValue(final ThreadState parentValue) {
+      if (!parentValue.instrumentable || Adapter.tracerClassLoader == null)
+        return new ThreadState(parentValue.instrumentable);
 
-      if (!parentValue || Adapter.tracerClassLoader == null)
-        return parentValue;
+      // The thread is constructed by the tracer, as marked by
+      // `TracerExclusionAgent`, so the execution stack need not be inspected
+      if (parentValue.depth > 0)
+        return new ThreadState(false);
 
-      return !AgentRuleUtil.isFromClassLoader(AgentRuleUtil.getExecutionStack(), Adapter.tracerClassLoader);
+      return new ThreadState(!ExecutionStack.isFromClassLoader(Adapter.tracerClassLoader));
     }
 
     @Override
-    public Boolean get() {
-      Boolean state = super.get();
-      if (state == null) {
-        logger.warning("Unknown instrumentable state for thread: " + Thread.currentThread().getName());
-        set(state = Boolean.TRUE);
-      }
-
-      return state;
+    protected ThreadState initialValue() {
+      logger.warning("Unknown instrumentable state for thread: " + Thread.currentThread().getName());
+      return new ThreadState(true);
     }
   };
 
   private static final Logger logger = Logger.getLogger(AgentRule.class);
-  private static final ThreadLocalCounter entryCounter = new ThreadLocalCounter();
-  private static final ThreadLocal<String> currentAgentRuleClass = new ThreadLocal<>();
   private static Map<String,String> classNameToName;
 
   public static String getCurrentPluginName() {
-    return classNameToName.get(currentAgentRuleClass.get());
+    return classNameToName.get(threadState.get().agentRuleClassName);
   }
 
-  public static boolean isVerbose(final String className) {
-    final boolean integrationsVerbose = AssembleUtil.isSystemProperty("sa.integration.*.verbose", "sa.instrumentation.plugin.*.verbose");
-    if (integrationsVerbose)
-      return integrationsVerbose;
+  /**
+   * An immutable snapshot of the configuration of the Integrations, which is
+   * published with a single write of {@link AgentRule#config}.
+   */
+  private static final class Config {
+    private final String[] pluginNames;
+    private final Map<String,IntegrationConfig> classNameToConfig;
+    private final Map<String,Integer> classNameToPluginId;
+
+    private Config(final String[] pluginNames, final Map<String,IntegrationConfig> classNameToConfig, final Map<String,Integer> classNameToPluginId) {
+      this.pluginNames = pluginNames;
+      this.classNameToConfig = classNameToConfig;
+      this.classNameToPluginId = classNameToPluginId;
+    }
+  }
+
+  private static volatile Config config;
+
+  /**
+   * Listener that is notified when the plugin names returned by
+   * {@link AgentRule#getPluginNames()} change.
+   */
+  public interface PluginNamesListener {
+    /**
+     * Called in the thread that refreshes the configuration, after the
+     * specified plugin names are published.
+     *
+     * @param pluginNames The new plugin names, indexed by plugin id.
+     */
+    void onPluginNames(String[] pluginNames);
+  }
+
+  private static final CopyOnWriteArrayList<PluginNamesListener> pluginNamesListeners = new CopyOnWriteArrayList<>();
+
+  /**
+   * Adds the specified listener to be notified when the plugin names change.
+   *
+   * @param listener The {@link PluginNamesListener}.
+   */
+  public static void addPluginNamesListener(final PluginNamesListener listener) {
+    pluginNamesListeners.add(listener);
+  }
+
+  /**
+   * Removes the specified listener.
+   *
+   * @param listener The {@link PluginNamesListener}.
+   */
+  public static void removePluginNamesListener(final PluginNamesListener listener) {
+    pluginNamesListeners.remove(listener);
+  }
+
+  private static Config getConfig() {
+    final Config config = AgentRule.config;
+    if (config != null)
+      return config;
+
+    refreshConfig();
+    return AgentRule.config;
+  }
 
-    final String integrationName = classNameToName.get(className);
-    if (integrationName == null)
+  /**
+   * Returns the names of the Integrations, indexed by the plugin id returned
+   * by {@link #getCurrentPluginId()}. The returned array is never modified,
+   * and must not be modified by the caller. The plugin id of an Integration
+   * does not change when the configuration is refreshed, so the same array is
+   * returned unless Integrations are added.
+   *
+   * @return The names of the Integrations, indexed by plugin id.
+   */
+  public static String[] getPluginNames() {
+    return getConfig().pluginNames;
+  }
+
+  /**
+   * Returns the plugin id of the Integration of the {@link AgentRule} that is
+   * executing in the current thread, or {@code -1} if the current thread is
+   * not executing an {@link AgentRule}. The plugin id is an index into the
+   * array returned by {@link #getPluginNames()}. The plugin id is cached in
+   * the {@link ThreadState} of the current thread, and is looked up only when
+   * the {@link AgentRule} or the configuration has changed since the last
+   * call in the thread.
+   *
+   * @return The plugin id of the Integration of the {@link AgentRule} that is
+   *         executing in the current thread, or {@code -1} if the current
+   *         thread is not executing an {@link AgentRule}.
+   */
+  public static int getCurrentPluginId() {
+    final Config config = getConfig();
+    final ThreadState state = threadState.get();
+    final String className = state.agentRuleClassName;
+    if (state.pluginIdConfig != config || state.pluginIdClassName != className) {
+      final Integer pluginId = config.classNameToPluginId.get(className);
+      state.pluginId = pluginId != null ? pluginId : -1;
+      state.pluginIdClassName = className;
+      state.pluginIdConfig = config;
+    }
+
+    return state.pluginId;
+  }
+
+  /**
+   * Resolves the {@link IntegrationConfig} of each Integration from the
+   * current system properties, and atomically replaces the configuration
+   * returned by {@link #getConfig(String)}, as well as the plugin ids returned
+   * by {@link #getCurrentPluginId()}. This method is called when the
+   * Integration Rules are loaded, and can be called again to apply changes to
+   * the system properties. Integrations retain the plugin ids assigned by
+   * prior calls, and the {@link PluginNamesListener}s are notified only if
+   * Integrations are added.
+   */
+  public static void refreshConfig() {
+    final Properties properties = System.getProperties();
+    final Config current = AgentRule.config;
+    final HashMap<String,IntegrationConfig> nameToConfig = new HashMap<>();
+    final HashMap<String,IntegrationConfig> classNameToConfig = new HashMap<>();
+    final HashMap<String,Integer> nameToPluginId = new HashMap<>();
+    if (current != null)
+      for (int i = 0; i < current.pluginNames.length; ++i)
+        nameToPluginId.put(current.pluginNames[i], i);
+
+    final int knownPlugins = nameToPluginId.size();
+    final HashMap<String,Integer> classNameToPluginId = new HashMap<>();
+    if (classNameToName != null) {
+      for (final Map.Entry<String,String> entry : classNameToName.entrySet()) {
+        IntegrationConfig config = nameToConfig.get(entry.getValue());
+        if (config == null)
+          nameToConfig.put(entry.getValue(), config = IntegrationConfig.resolve(entry.getValue(), properties));
+
+        classNameToConfig.put(entry.getKey(), config);
+
+        Integer pluginId = nameToPluginId.get(entry.getValue());
+        if (pluginId == null)
+          nameToPluginId.put(entry.getValue(), pluginId = nameToPluginId.size());
+
+        classNameToPluginId.put(entry.getKey(), pluginId);
+      }
+    }
+
+    final String[] pluginNames;
+    if (current != null && nameToPluginId.size() == knownPlugins) {
+      pluginNames = current.pluginNames;
+    }
+    else {
+      pluginNames = new String[nameToPluginId.size()];
+      for (final Map.Entry<String,Integer> entry : nameToPluginId.entrySet())
+        pluginNames[entry.getValue()] = entry.getKey();
+    }
+
+    AgentRule.config = new Config(pluginNames, classNameToConfig, classNameToPluginId);
+    if (logger.isLoggable(Level.FINE))
+      logger.fine("AgentRule.refreshConfig(): " + nameToConfig.values());
+
+    if (current == null || pluginNames != current.pluginNames)
+      for (final PluginNamesListener listener : pluginNamesListeners)
+        listener.onPluginNames(pluginNames);
+  }
+
+  /**
+   * Returns the {@link IntegrationConfig} of the Integration to which the
+   * {@link AgentRule} by the specified class name belongs.
+   *
+   * @param className The class name of the {@link AgentRule}.
+   * @return The {@link IntegrationConfig} of the Integration to which the
+   *         {@link AgentRule} by the specified class name belongs.
+   * @throws IllegalStateException If the {@link AgentRule} by the specified
+   *           class name does not belong to an Integration.
+   */
+  public static IntegrationConfig getConfig(final String className) {
+    final IntegrationConfig config = getConfig().classNameToConfig.get(className);
+    if (config == null)
       throw new IllegalStateException("Plugin name must not be null");
 
-    return AssembleUtil.isSystemProperty("sa.integration." + integrationName + ".verbose", "sa.instrumentation.plugin." + integrationName + ".verbose");
+    return config;
+  }
+
+  public static boolean isVerbose(final String className) {
+    return getConfig(className).verbose;
   }
 
   private final String className = getClass().getName();
@@ -169,12 +334,13 @@ public abstract class AgentRule {
   }
 
   public static boolean isAllowed(final String className, final String origin) {
-    final boolean allowed = initialized && entryCounter.get() == 0 && isThreadInstrumentable.get();
+    final ThreadState state = initialized ? threadState.get() : null;
+    final boolean allowed = state != null && state.depth == 0 && state.instrumentable;
     if (allowed) {
       if (logger.isLoggable(Level.FINER))
         logger.finer("-------> Intercept [" + className.substring(className.lastIndexOf('.') + 1) + "@" + Thread.currentThread().getName() + "]: " + origin);
 
-      currentAgentRuleClass.set(className);
+      state.agentRuleClassName = className;
     }
     else if (logger.isLoggable(Level.FINEST)) {
       logger.finest("-------> Intercept [" + className.substring(className.lastIndexOf('.') + 1) + "@" + Thread.currentThread().getName() + "] DROP: " + origin);
@@ -0,0 +1,101 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+/**
+ * Inspects the execution stack of the current thread for classes that belong
+ * to a {@link ClassLoader}, without capturing the full stack.
+ * <p>
+ * On JDK 9+, the stack is walked lazily with {@code java.lang.StackWalker} by
+ * {@link ExecutionStackWalker}, which stops at the first matching frame, and
+ * does not depend on {@link SecurityManager}, which is deprecated for removal.
+ * {@link ExecutionStackWalker} is only loaded if {@code java.lang.StackWalker}
+ * is available, because it references {@code java.util.function} and
+ * {@code java.util.stream}, which are not available on JDK 7. On earlier JDKs,
+ * the stack is captured with {@link AgentRuleUtil#getExecutionStack()}. In
+ * both cases, the class loader hierarchy is only walked for frames whose class
+ * loader differs from that of the previous frame, and only the top
+ * {@link #MAX_DEPTH} frames are inspected.
+ *
+ * @author Seva Safris
+ */
+final class ExecutionStack {
+  /**
+   * The maximum number of frames from the top of the stack that are inspected.
+   * A thread is constructed by the tracer from within its own classes, such as
+   * a thread factory of its exporter, so a class of the tracer is found among
+   * the frames of the thread construction (about 10 frames from the
+   * {@code Thread} constructor to the {@code childValue} of an
+   * {@code InheritableThreadLocal}) and of the factories and executors of the
+   * tracer that call it. The deep stacks of application threads, such as
+   * those of application servers, are thereby not walked to the bottom on
+   * every thread construction. A thread that is constructed by the tracer
+   * deeper than this is regarded as not constructed by the tracer.
+   */
+  static final int MAX_DEPTH = 64;
+
+  private static final boolean hasStackWalker;
+
+  static {
+    boolean found;
+    try {
+      Class.forName("java.lang.StackWalker");
+      found = true;
+    }
+    catch (final ClassNotFoundException e) {
+      // StackWalker is not available before JDK 9
+      found = false;
+    }
+
+    hasStackWalker = found;
+  }
+
+  static boolean isDescendant(ClassLoader loader, final ClassLoader classLoader) {
+    for (; loader != null; loader = loader.getParent())
+      if (loader == classLoader)
+        return true;
+
+    return false;
+  }
+
+  /**
+   * Tests whether the top {@link #MAX_DEPTH} frames of the execution stack of
+   * the current thread contain a class belonging to the provided
+   * {@link ClassLoader classLoader}, or to a descendant thereof.
+   *
+   * @param classLoader The {@link ClassLoader}.
+   * @return {@code true} if the execution stack of the current thread
+   *         contains a class belonging to the provided {@link ClassLoader
+   *         classLoader}, or to a descendant thereof, otherwise {@code false}.
+   */
+  static boolean isFromClassLoader(final ClassLoader classLoader) {
+    if (hasStackWalker)
+      return ExecutionStackWalker.isFromClassLoader(classLoader);
+
+    ClassLoader previous = null;
+    final Class<?>[] stack = AgentRuleUtil.getExecutionStack();
+    for (int i = 0, len = Math.min(stack.length, MAX_DEPTH); i < len; ++i) {
+      final ClassLoader loader = stack[i].getClassLoader();
+      if (loader != previous && isDescendant(previous = loader, classLoader))
+        return true;
+    }
+
+    return false;
+  }
+
+  private ExecutionStack() {
+  }
+}
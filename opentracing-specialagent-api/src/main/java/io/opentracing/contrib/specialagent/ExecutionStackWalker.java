@@ -0,0 +1,108 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Walks the execution stack of the current thread lazily with
+ * {@code java.lang.StackWalker}. This class references
+ * {@code java.util.function} and {@code java.util.stream}, so it must only be
+ * loaded by {@link ExecutionStack} if {@code java.lang.StackWalker} is
+ * available (JDK 9+).
+ *
+ * @author Seva Safris
+ */
+final class ExecutionStackWalker {
+  private static final Object stackWalker;
+  private static final Method walk;
+  private static final MethodHandle getDeclaringClass;
+
+  static {
+    try {
+      final Class<?> walkerClass = Class.forName("java.lang.StackWalker");
+      final Class<?> optionClass = Class.forName("java.lang.StackWalker$Option");
+      final Class<?> frameClass = Class.forName("java.lang.StackWalker$StackFrame");
+      stackWalker = walkerClass.getMethod("getInstance", optionClass).invoke(null, optionClass.getField("RETAIN_CLASS_REFERENCE").get(null));
+      walk = walkerClass.getMethod("walk", Function.class);
+      getDeclaringClass = MethodHandles.publicLookup().findVirtual(frameClass, "getDeclaringClass", MethodType.methodType(Class.class)).asType(MethodType.methodType(Class.class, Object.class));
+    }
+    catch (final Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static final class Walker implements Function<Stream<Object>,Boolean>, Predicate<Object> {
+    private final ClassLoader classLoader;
+    private ClassLoader previous;
+
+    private Walker(final ClassLoader classLoader) {
+      this.classLoader = classLoader;
+    }
+
+    @Override
+    public Boolean apply(final Stream<Object> frames) {
+      return frames.limit(ExecutionStack.MAX_DEPTH).anyMatch(this);
+    }
+
+    @Override
+    public boolean test(final Object frame) {
+      final Class<?> cls;
+      try {
+        cls = (Class<?>)getDeclaringClass.invokeExact(frame);
+      }
+      catch (final Throwable t) {
+        throw new IllegalStateException(t);
+      }
+
+      final ClassLoader loader = cls.getClassLoader();
+      if (loader == previous)
+        return false;
+
+      previous = loader;
+      return ExecutionStack.isDescendant(loader, classLoader);
+    }
+  }
+
+  /**
+   * Tests whether the top {@link ExecutionStack#MAX_DEPTH} frames of the
+   * execution stack of the current thread contain a class belonging to the
+   * provided {@link ClassLoader classLoader}, or to a descendant thereof. The
+   * stack is walked until the first matching frame.
+   *
+   * @param classLoader The {@link ClassLoader}.
+   * @return {@code true} if the execution stack of the current thread
+   *         contains a class belonging to the provided {@link ClassLoader
+   *         classLoader}, or to a descendant thereof, otherwise {@code false}.
+   */
+  static boolean isFromClassLoader(final ClassLoader classLoader) {
+    try {
+      return (Boolean)walk.invoke(stackWalker, new Walker(classLoader));
+    }
+    catch (final Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private ExecutionStackWalker() {
+  }
+}
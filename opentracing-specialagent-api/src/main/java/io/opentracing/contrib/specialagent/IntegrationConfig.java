@@ -0,0 +1,125 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * An immutable snapshot of the configuration of an Integration, resolved from
+ * the {@code sa.integration.${NAME}} system properties (and the deprecated
+ * {@code sa.instrumentation.plugin.${NAME}} system properties). Integration
+ * Rules read the configuration via {@link AgentRule#getConfig(String)}, which
+ * does not access the system properties, as these are synchronized. Changes to
+ * the system properties are applied with {@link AgentRule#refreshConfig()}.
+ *
+ * @author Seva Safris
+ */
+public final class IntegrationConfig {
+  private static final Logger logger = Logger.getLogger(IntegrationConfig.class);
+  private static final String PREFIX = "sa.integration.";
+  private static final String DEPRECATED_PREFIX = "sa.instrumentation.plugin.";
+
+  /**
+   * Returns a new {@code IntegrationConfig} for the Integration by the
+   * specified name, resolved from the specified properties.
+   *
+   * @param name The name of the Integration.
+   * @param properties The properties, such as {@link System#getProperties()}.
+   * @return A new {@code IntegrationConfig} for the Integration by the
+   *         specified name.
+   */
+  public static IntegrationConfig resolve(final String name, final Properties properties) {
+    final HashMap<String,String> keyToValue = new HashMap<>();
+    // Properties with the deprecated prefix are overridden by those with the current prefix
+    for (final String prefix : new String[] {DEPRECATED_PREFIX, PREFIX}) {
+      final String namePrefix = prefix + name;
+      for (final String key : properties.stringPropertyNames()) {
+        if (key.length() > namePrefix.length() && key.startsWith(namePrefix) && (key.charAt(namePrefix.length()) == '.' || key.charAt(namePrefix.length()) == '#')) {
+          final String suffix = key.substring(namePrefix.length());
+          if (prefix == DEPRECATED_PREFIX)
+            warnDeprecated(key, PREFIX + name + suffix, properties);
+
+          keyToValue.put(suffix, properties.getProperty(key));
+        }
+      }
+    }
+
+    warnDeprecated(DEPRECATED_PREFIX + "*.verbose", PREFIX + "*.verbose", properties);
+    final boolean verbose = isTrue(properties.getProperty(PREFIX + "*.verbose", properties.getProperty(DEPRECATED_PREFIX + "*.verbose"))) || isTrue(keyToValue.get(".verbose"));
+    return new IntegrationConfig(name, verbose, keyToValue.size() == 0 ? Collections.<String,String>emptyMap() : keyToValue);
+  }
+
+  private static void warnDeprecated(final String deprecatedKey, final String key, final Properties properties) {
+    if (properties.getProperty(deprecatedKey) != null && properties.getProperty(key) == null)
+      logger.warning("Deprecated key (as of v1.7.0): \"" + deprecatedKey + "\" should be changed to \"" + key + "\"");
+  }
+
+  private static boolean isTrue(final String value) {
+    return value != null && !"false".equals(value);
+  }
+
+  /** The name of the Integration. */
+  public final String name;
+
+  /**
+   * Whether the Integration is verbose, as specified by
+   * {@code -Dsa.integration.${NAME}.verbose}, or
+   * {@code -Dsa.integration.*.verbose}.
+   */
+  public final boolean verbose;
+
+  private final Map<String,String> keyToValue;
+
+  private IntegrationConfig(final String name, final boolean verbose, final Map<String,String> keyToValue) {
+    this.name = name;
+    this.verbose = verbose;
+    this.keyToValue = keyToValue;
+  }
+
+  /**
+   * Returns the value of the option by the specified key, as specified by
+   * {@code -Dsa.integration.${NAME}.${KEY}}, or {@code null} if the option is
+   * not specified.
+   *
+   * @param key The key of the option.
+   * @return The value of the option by the specified key, or {@code null} if
+   *         the option is not specified.
+   */
+  public String getProperty(final String key) {
+    return keyToValue.get("." + key);
+  }
+
+  /**
+   * Returns whether the Integration Rule by the specified simple class name is
+   * disabled, as specified by
+   * {@code -Dsa.integration.${NAME}#${RULE}.disable}.
+   *
+   * @param simpleClassName The simple class name of the Integration Rule.
+   * @return Whether the Integration Rule by the specified simple class name is
+   *         disabled.
+   */
+  public boolean isDisabled(final String simpleClassName) {
+    return isTrue(keyToValue.get("#" + simpleClassName + ".disable"));
+  }
+
+  @Override
+  public String toString() {
+    return name + (verbose ? " (verbose)" : "") + keyToValue;
+  }
+}
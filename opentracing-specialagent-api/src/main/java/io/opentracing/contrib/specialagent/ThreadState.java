@@ -0,0 +1,85 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+/**
+ * The mutable state of a thread that is consulted by
+ * {@link AgentRule#isAllowed(String,String)} on each intercepted method, held
+ * in a single thread-local so that the check requires one lookup, and does not
+ * allocate.
+ *
+ * @author Seva Safris
+ */
+public final class ThreadState {
+  /**
+   * The depth of calls into the tracer, during which interception is
+   * disallowed.
+   */
+  int depth;
+
+  /**
+   * Whether the thread is instrumentable, which is {@code false} for threads
+   * that are started by the tracer.
+   */
+  final boolean instrumentable;
+
+  /**
+   * The class name of the {@link AgentRule} that last intercepted a method in
+   * the thread.
+   */
+  String agentRuleClassName;
+
+  /**
+   * The plugin id of {@link #pluginIdClassName} in {@link #pluginIdConfig},
+   * cached by {@link AgentRule#getCurrentPluginId()}.
+   */
+  int pluginId;
+
+  /**
+   * The class name of the {@link AgentRule} for which {@link #pluginId} was
+   * looked up.
+   */
+  String pluginIdClassName;
+
+  /**
+   * The configuration of {@link AgentRule} in which {@link #pluginId} was
+   * looked up.
+   */
+  Object pluginIdConfig;
+
+  /**
+   * Creates a new {@code ThreadState} with the specified instrumentable state.
+   *
+   * @param instrumentable Whether the thread is instrumentable.
+   */
+  ThreadState(final boolean instrumentable) {
+    this.instrumentable = instrumentable;
+  }
+
+  /**
+   * Marks the entry of the thread into the tracer.
+   */
+  public void enter() {
+    ++depth;
+  }
+
+  /**
+   * Marks the exit of the thread from the tracer.
+   */
+  public void exit() {
+    --depth;
+  }
+}
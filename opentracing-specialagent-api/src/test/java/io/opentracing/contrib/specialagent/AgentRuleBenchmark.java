@@ -0,0 +1,125 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Benchmark of the per-thread state that is consulted on each intercepted
+ * method by {@link AgentRule#isAllowed(String,String)}, and on each call into
+ * the tracer by {@code TracerExclusionAgent}, compared to the prior
+ * implementation with a separate {@code ThreadLocal} for each field. Run with
+ * the GC profiler to observe the allocation rate:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=io.opentracing.contrib.specialagent.AgentRuleBenchmark
+ * </pre>
+ *
+ * @author Seva Safris
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AgentRuleBenchmark {
+  private static final Logger logger = Logger.getLogger(AgentRuleBenchmark.class);
+  private static final String className = AgentRuleBenchmark.class.getName();
+
+  private static final ThreadLocal<Integer> entryCounter = new ThreadLocal<Integer>() {
+    @Override
+    protected Integer initialValue() {
+      return 0;
+    }
+  };
+
+  private static final InheritableThreadLocal<Boolean> isThreadInstrumentable = new InheritableThreadLocal<Boolean>() {
+    @Override
+    protected Boolean initialValue() {
+      return Boolean.TRUE;
+    }
+  };
+
+  private static final ThreadLocal<String> currentAgentRuleClass = new ThreadLocal<>();
+
+  private static boolean isAllowedThreadLocals(final String className) {
+    final boolean allowed = entryCounter.get() == 0 && isThreadInstrumentable.get();
+    if (allowed) {
+      if (logger.isLoggable(Level.FINER))
+        logger.finer(className);
+
+      currentAgentRuleClass.set(className);
+    }
+    else if (logger.isLoggable(Level.FINEST)) {
+      logger.finest(className);
+    }
+
+    return allowed;
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(AgentRuleBenchmark.class.getSimpleName()).addProfiler("gc").build()).run();
+  }
+
+  private final ThreadLocal<ThreadState> threadState = AgentRule.$Access.threadState();
+
+  @Setup
+  public void setup() {
+    AgentRule.$Access.load();
+    AgentRule.$Access.init();
+  }
+
+  @Benchmark
+  public boolean isAllowed() {
+    return AgentRule.isAllowed(className, null);
+  }
+
+  @Benchmark
+  public boolean isAllowedThreadLocals() {
+    return isAllowedThreadLocals(className);
+  }
+
+  @Benchmark
+  public boolean tracerEnterExit() {
+    threadState.get().enter();
+    final boolean allowed = AgentRule.isAllowed(className, null);
+    threadState.get().exit();
+    return allowed;
+  }
+
+  @Benchmark
+  public boolean tracerEnterExitThreadLocals() {
+    entryCounter.set(entryCounter.get() + 1);
+    final boolean allowed = isAllowedThreadLocals(className);
+    entryCounter.set(entryCounter.get() - 1);
+    return allowed;
+  }
+}
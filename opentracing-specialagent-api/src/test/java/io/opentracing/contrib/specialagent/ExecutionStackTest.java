@@ -15,9 +15,23 @@
 
 package io.opentracing.contrib.specialagent;
 
-public class ThreadLocalCounter extends ThreadLocal<Integer> {
-  @Override
-  protected Integer initialValue() {
-    return 0;
+import static org.junit.Assert.*;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.junit.Test;
+
+public class ExecutionStackTest {
+  @Test
+  public void testFromClassLoader() {
+    assertTrue(ExecutionStack.isFromClassLoader(ExecutionStackTest.class.getClassLoader()));
+  }
+
+  @Test
+  public void testNotFromClassLoader() throws Exception {
+    try (final URLClassLoader classLoader = new URLClassLoader(new URL[0], null)) {
+      assertFalse(ExecutionStack.isFromClassLoader(classLoader));
+    }
   }
-}
\ No newline at end of file
+}
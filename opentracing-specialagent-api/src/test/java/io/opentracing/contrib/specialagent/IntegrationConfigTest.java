@@ -0,0 +1,49 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import static org.junit.Assert.*;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+public class IntegrationConfigTest {
+  @Test
+  public void test() {
+    final Properties properties = new Properties();
+    properties.setProperty("sa.instrumentation.plugin.concurrent.verbose", "true");
+    properties.setProperty("sa.integration.concurrent.verbose", "false");
+    properties.setProperty("sa.integration.concurrent#ExecutorAgentRule.disable", "");
+    properties.setProperty("sa.instrumentation.plugin.jdbc.withActiveSpanOnly", "true");
+    properties.setProperty("sa.integration.jdbc.ignoreForTracing", "SELECT 1");
+    properties.setProperty("sa.integration.jdbc2.verbose", "true");
+
+    final IntegrationConfig concurrent = IntegrationConfig.resolve("concurrent", properties);
+    assertFalse(concurrent.verbose);
+    assertTrue(concurrent.isDisabled("ExecutorAgentRule"));
+    assertFalse(concurrent.isDisabled("FixedRateAgentRule"));
+
+    final IntegrationConfig jdbc = IntegrationConfig.resolve("jdbc", properties);
+    assertFalse(jdbc.verbose);
+    assertEquals("true", jdbc.getProperty("withActiveSpanOnly"));
+    assertEquals("SELECT 1", jdbc.getProperty("ignoreForTracing"));
+    assertNull(jdbc.getProperty("verbose"));
+
+    properties.setProperty("sa.integration.*.verbose", "true");
+    assertTrue(IntegrationConfig.resolve("jdbc", properties).verbose);
+  }
+}
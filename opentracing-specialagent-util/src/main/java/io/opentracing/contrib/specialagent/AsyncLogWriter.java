@@ -0,0 +1,134 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded asynchronous writer of log messages, which enqueues messages into
+ * a ring buffer that is drained to a {@link PrintStream} by a background
+ * thread. Threads that log messages never block on I/O: if the ring buffer is
+ * full, the message is dropped, and the number of dropped messages is written
+ * when space becomes available.
+ *
+ * @author Seva Safris
+ */
+class AsyncLogWriter {
+  private static final int BATCH_SIZE = 256;
+
+  private final ArrayBlockingQueue<String> queue;
+  private final AtomicLong dropped = new AtomicLong();
+  private final PrintStream out;
+  private final Thread thread;
+  private volatile boolean closed;
+
+  /**
+   * Creates a new {@code AsyncLogWriter} that writes messages to the
+   * specified {@link PrintStream}, and starts its background thread.
+   *
+   * @param out The {@link PrintStream} to which messages are written.
+   * @param capacity The maximum number of messages that can be enqueued.
+   * @throws IllegalArgumentException If {@code capacity} is less than 1.
+   */
+  AsyncLogWriter(final PrintStream out, final int capacity) {
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.out = out;
+    this.thread = new Thread("SpecialAgent-Logger") {
+      @Override
+      public void run() {
+        drain();
+      }
+    };
+
+    thread.setDaemon(true);
+    thread.start();
+    Runtime.getRuntime().addShutdownHook(new Thread("SpecialAgent-Logger-Shutdown") {
+      @Override
+      public void run() {
+        close();
+      }
+    });
+  }
+
+  /**
+   * Enqueues the specified message to be written, or drops the message if the
+   * ring buffer is full.
+   *
+   * @param msg The message.
+   */
+  void write(final String msg) {
+    if (closed || !queue.offer(msg))
+      dropped.incrementAndGet();
+  }
+
+  /**
+   * Stops the background thread after all enqueued messages are written, and
+   * closes the underlying {@link PrintStream}.
+   */
+  void close() {
+    if (closed)
+      return;
+
+    closed = true;
+    thread.interrupt();
+    try {
+      thread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+    catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    out.close();
+  }
+
+  private void drain() {
+    final ArrayList<String> batch = new ArrayList<>(BATCH_SIZE);
+    while (true) {
+      try {
+        final String msg = closed ? queue.poll() : queue.take();
+        if (msg == null) {
+          writeDropped();
+          out.flush();
+          return;
+        }
+
+        batch.add(msg);
+      }
+      catch (final InterruptedException e) {
+        if (!closed)
+          continue;
+      }
+
+      queue.drainTo(batch, BATCH_SIZE - batch.size());
+      for (final String msg : batch)
+        out.println(msg);
+
+      writeDropped();
+      out.flush();
+      batch.clear();
+    }
+  }
+
+  private void writeDropped() {
+    final long count = dropped.getAndSet(0);
+    if (count > 0)
+      out.println("[SpecialAgent] " + count + " log message(s) dropped because the log buffer was full");
+  }
+}
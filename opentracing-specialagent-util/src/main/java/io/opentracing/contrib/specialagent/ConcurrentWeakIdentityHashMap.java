@@ -44,6 +44,11 @@ public class ConcurrentWeakIdentityHashMap<K,V>extends AbstractMap<K,V> implemen
     return map.size();
   }
 
+  @Override
+  public boolean isEmpty() {
+    return map.isEmpty();
+  }
+
   private void purgeKeys() {
     for (Reference<? extends K> reference; (reference = queue.poll()) != null; map.remove(reference));
   }
@@ -19,7 +19,22 @@ public final class Constants {
   public static final String CONFIG_ARG = "sa.config";
   public static final String AGENT_RUNNER_ARG = "sa.agentrunner";
   public static final String INIT_DEFER = "sa.init.defer";
+  public static final String CACHE_DIR_PROPERTY = "sa.cache.dir";
+  public static final String INJECT_LAZY = "sa.inject.lazy";
   public static final String REWRITE_ARG = "sa.rewrite";
+  public static final String REWRITE_WATCH = "sa.rewrite.watch";
+  public static final String SAMPLER_PROBABILITY = "sa.sampler.probability";
+  public static final String SAMPLER_RATE = "sa.sampler.rate";
+  public static final String SAMPLER_BUDGET = "sa.sampler.budget.";
+  public static final String SAMPLER_TAIL = "sa.sampler.tail";
+  public static final String SAMPLER_TAIL_PERCENTILE = "sa.sampler.tail.percentile";
+  public static final String SAMPLER_TAIL_PROBABILITY = "sa.sampler.tail.probability";
+  public static final String SAMPLER_TAIL_SPANS = "sa.sampler.tail.spans";
+  public static final String SAMPLER_TAIL_TIMEOUT = "sa.sampler.tail.timeout";
+  public static final String EXPORT_ASYNC = "sa.export.async";
+  public static final String EXPORT_ASYNC_QUEUE = "sa.export.async.queue";
+  public static final String EXPORT_ASYNC_BATCH = "sa.export.async.batch";
+  public static final String EXPORT_ASYNC_INTERVAL = "sa.export.async.interval";
   public static final String EXPORTER_PROPERTY = "sa.exporter";
   public static final String LOG_EVENTS_PROPERTY = "sa.log.events";
   public static final String DEPENDENCIES_TGF = "dependencies.tgf";
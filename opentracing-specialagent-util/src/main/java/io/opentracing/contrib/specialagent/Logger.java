@@ -15,9 +15,12 @@
 
 package io.opentracing.contrib.specialagent;
 
+import java.io.BufferedOutputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.Iterator;
 import java.util.Map;
 
@@ -26,12 +29,17 @@ public class Logger {
   private static final String LOG_REFRESH_PROPERTY = REFRESH_PREFIX + Logger.class.hashCode();
   static final String LOG_LEVEL_PROPERTY = "sa.log.level";
   static final String LOG_FILE_PROPERTY = "sa.log.file";
+  static final String LOG_ASYNC_PROPERTY = "sa.log.async";
+  private static final int DEFAULT_ASYNC_CAPACITY = 8192;
 
   private static final Logger logger = new Logger();
-  private static Level level = Level.INFO;
-  private static PrintStream out = System.err;
+  private static volatile Level level = Level.INFO;
+  private static volatile PrintStream out = System.err;
+  private static volatile AsyncLogWriter writer;
+  private static String logFile;
 
   static {
+    System.setProperty(LOG_REFRESH_PROPERTY, "");
     init();
   }
 
@@ -46,25 +54,45 @@ public class Logger {
     }
   }
 
+  /**
+   * Invalidates the configuration of all {@code Logger} classes, including
+   * those loaded in other class loaders, after the {@code sa.log.*} system
+   * properties have been changed. The {@code Logger} in this class loader is
+   * re-initialized immediately, and those in other class loaders are
+   * re-initialized on their next call to {@link #getLogger(Class)}.
+   */
   static void refreshLoggers() {
     recurseClearProperty(System.getProperties().entrySet().iterator());
+    refresh();
   }
 
-  static void init() {
+  static synchronized void init() {
     // Load user log level
     final String logLevelProperty = System.getProperty(LOG_LEVEL_PROPERTY);
     if (logLevelProperty != null)
       Logger.setLevel(Level.parse(logLevelProperty));
 
-    // Load user log file
+    // Load user log file, unless it is already open
     final String logFileProperty = System.getProperty(LOG_FILE_PROPERTY);
-    if (logFileProperty != null) {
+    if (logFileProperty != null && !logFileProperty.equals(logFile)) {
+      final String logAsyncProperty = System.getProperty(LOG_ASYNC_PROPERTY);
       try {
-        Logger.setOut(new PrintStream(new FileOutputStream(logFileProperty), true));
+        if (logAsyncProperty == null || "false".equals(logAsyncProperty)) {
+          Logger.setOut(new PrintStream(new FileOutputStream(logFileProperty), true));
+        }
+        else {
+          final int capacity = logAsyncProperty.length() == 0 || "true".equals(logAsyncProperty) ? DEFAULT_ASYNC_CAPACITY : Integer.parseInt(logAsyncProperty);
+          final AsyncLogWriter previous = writer;
+          writer = new AsyncLogWriter(new PrintStream(new BufferedOutputStream(new FileOutputStream(logFileProperty)), false), capacity);
+          if (previous != null)
+            previous.close();
+        }
       }
       catch (final FileNotFoundException e) {
         throw new ExceptionInInitializerError(e);
       }
+
+      logFile = logFileProperty;
     }
   }
 
@@ -76,6 +104,7 @@ public class Logger {
   }
 
   public static Logger getLogger(final Class<?> cls) {
+    refresh();
     return logger;
   }
 
@@ -83,58 +112,86 @@ public class Logger {
     Logger.level = level != null ? level : Level.INFO;
   }
 
-  public static void setOut(final PrintStream out) {
+  public static synchronized void setOut(final PrintStream out) {
+    final AsyncLogWriter writer = Logger.writer;
+    if (writer != null) {
+      Logger.writer = null;
+      writer.close();
+    }
+
+    logFile = null;
     Logger.out = out;
   }
 
+  private static void write(final String msg) {
+    final AsyncLogWriter writer = Logger.writer;
+    if (writer != null)
+      writer.write(msg);
+    else
+      out.println(msg);
+  }
+
   public boolean isLoggable(final Level level) {
-    refresh();
     return Logger.level.isLoggable(level);
   }
 
   public void severe(final String msg) {
     if (isLoggable(Level.SEVERE))
-      out.println(msg);
+      write(msg);
   }
 
   public void warning(final String msg) {
     if (isLoggable(Level.WARNING))
-      out.println(msg);
+      write(msg);
   }
 
   public void info(final String msg) {
     if (isLoggable(Level.INFO))
-      out.println(msg);
+      write(msg);
   }
 
   public void fine(final String msg) {
     if (isLoggable(Level.FINE))
-      out.println(msg);
+      write(msg);
   }
 
   public void finer(final String msg) {
     if (isLoggable(Level.FINER))
-      out.println(msg);
+      write(msg);
   }
 
   public void finest(final String msg) {
     if (isLoggable(Level.FINEST))
-      out.println(msg);
+      write(msg);
   }
 
   public void log(final Level level, final String msg, final Throwable thrown) {
-    if (isLoggable(level)) {
-      out.println(msg);
-      if (thrown != null)
+    if (!isLoggable(level))
+      return;
+
+    final AsyncLogWriter writer = Logger.writer;
+    if (thrown == null) {
+      write(msg);
+    }
+    else if (writer == null) {
+      final PrintStream out = Logger.out;
+      synchronized (out) {
+        out.println(msg);
         thrown.printStackTrace(out);
+      }
+    }
+    else {
+      final StringWriter stackTrace = new StringWriter();
+      thrown.printStackTrace(new PrintWriter(stackTrace));
+      writer.write(msg + System.lineSeparator() + stackTrace.toString().trim());
     }
   }
 
   public void log(final Level level, final String msg) {
     if (isLoggable(level))
-      out.println(msg);
+      write(msg);
   }
 
   protected Logger() {
   }
-}
\ No newline at end of file
+}
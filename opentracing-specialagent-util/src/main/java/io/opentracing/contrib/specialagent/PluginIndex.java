@@ -0,0 +1,300 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+/**
+ * An index of the plugin JARs under {@link UtilConstants#META_INF_PLUGIN_PATH}
+ * that is computed at assembly time, and read by the SpecialAgent at startup.
+ * The index contains the information that would otherwise require each plugin
+ * JAR to be opened and parsed at startup: the {@link PluginManifest} and its
+ * priority, the rule class names in {@code otarules.mf}, and the dependency
+ * file names and version from {@code dependencies.tgf}.
+ *
+ * @author Seva Safris
+ */
+public final class PluginIndex {
+  private static final int MAGIC = 0x53414958;
+  private static final int VERSION = 1;
+  private static final String OTARULES_MF = "otarules.mf";
+
+  /**
+   * An entry of a plugin JAR in the {@link PluginIndex}.
+   */
+  public static final class Entry {
+    private final String fileName;
+    private final PluginManifest.Type type;
+    private final String name;
+    private final String adapterClassName;
+    private final int priority;
+    private final String version;
+    private final String[] dependencies;
+    private final String[] ruleClassNames;
+
+    private Entry(final String fileName, final PluginManifest.Type type, final String name, final String adapterClassName, final int priority, final String version, final String[] dependencies, final String[] ruleClassNames) {
+      this.fileName = fileName;
+      this.type = type;
+      this.name = name;
+      this.adapterClassName = adapterClassName;
+      this.priority = priority;
+      this.version = version;
+      this.dependencies = dependencies;
+      this.ruleClassNames = ruleClassNames;
+    }
+
+    /**
+     * Returns a new {@link PluginManifest} for the specified file, or
+     * {@code null} if the plugin JAR of this entry does not have a manifest.
+     *
+     * @param file The plugin JAR file.
+     * @return A new {@link PluginManifest} for the specified file, or
+     *         {@code null} if the plugin JAR of this entry does not have a
+     *         manifest.
+     */
+    public PluginManifest toPluginManifest(final File file) {
+      return type == null ? null : new PluginManifest(file, type, name, adapterClassName, priority);
+    }
+
+    /**
+     * @return The version from {@code dependencies.tgf}, or {@code null} if
+     *         the plugin JAR of this entry does not have a
+     *         {@code dependencies.tgf}.
+     */
+    public String getVersion() {
+      return version;
+    }
+
+    /**
+     * @return The file names of the dependencies from {@code dependencies.tgf},
+     *         or {@code null} if the plugin JAR of this entry does not have a
+     *         {@code dependencies.tgf}.
+     */
+    public String[] getDependencies() {
+      return dependencies;
+    }
+
+    /**
+     * @return The rule class names from {@code otarules.mf}, or {@code null}
+     *         if the plugin JAR of this entry does not have an
+     *         {@code otarules.mf}.
+     */
+    public String[] getRuleClassNames() {
+      return ruleClassNames;
+    }
+  }
+
+  /**
+   * Returns the rule class names from the {@code otarules.mf} in the
+   * specified {@code InputStream}, skipping blank lines and comments.
+   *
+   * @param in The {@code InputStream}.
+   * @return The rule class names from the {@code otarules.mf} in the
+   *         specified {@code InputStream}.
+   * @throws IOException If an I/O error has occurred.
+   */
+  public static String[] readRuleClassNames(final InputStream in) throws IOException {
+    final ArrayList<String> ruleClassNames = new ArrayList<>();
+    final BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+    for (String line; (line = reader.readLine()) != null;) {
+      line = line.trim();
+      if (line.length() != 0 && line.charAt(0) != '#')
+        ruleClassNames.add(line);
+    }
+
+    return ruleClassNames.toArray(new String[ruleClassNames.size()]);
+  }
+
+  /**
+   * Returns a new {@link Entry} for the specified plugin JAR file, by reading
+   * its {@link PluginManifest}, {@code otarules.mf}, and
+   * {@code dependencies.tgf}.
+   *
+   * @param file The plugin JAR file.
+   * @return A new {@link Entry} for the specified plugin JAR file.
+   * @throws IOException If an I/O error has occurred.
+   */
+  public static Entry scan(final File file) throws IOException {
+    final PluginManifest pluginManifest = PluginManifest.getPluginManifest(file);
+    if (pluginManifest == null)
+      return new Entry(file.getName(), null, null, null, 0, null, null, null);
+
+    String version = null;
+    String[] dependencies = null;
+    String[] ruleClassNames = null;
+    try (final JarFile jarFile = new JarFile(file)) {
+      final ZipEntry dependenciesTgfEntry = jarFile.getEntry(Constants.DEPENDENCIES_TGF);
+      if (dependenciesTgfEntry != null) {
+        try (final InputStream in = jarFile.getInputStream(dependenciesTgfEntry)) {
+          final String dependenciesTgf = new String(AssembleUtil.readBytes(in));
+          final String firstLine = dependenciesTgf.substring(0, dependenciesTgf.indexOf('\n'));
+          version = firstLine.substring(firstLine.lastIndexOf(':') + 1);
+          final Set<File> files = MavenUtil.selectFromTgf(dependenciesTgf, true, "compile");
+          dependencies = new String[files.size()];
+          int i = 0;
+          for (final File dependency : files)
+            dependencies[i++] = dependency.getName();
+        }
+      }
+
+      final ZipEntry otarulesEntry = jarFile.getEntry(OTARULES_MF);
+      if (otarulesEntry != null) {
+        try (final InputStream in = jarFile.getInputStream(otarulesEntry)) {
+          ruleClassNames = readRuleClassNames(in);
+        }
+      }
+    }
+
+    return new Entry(file.getName(), pluginManifest.type, pluginManifest.name, pluginManifest.adapterClassName, pluginManifest.getPriority(), version, dependencies, ruleClassNames);
+  }
+
+  /**
+   * Returns the {@code PluginIndex} read from the specified {@code URL}.
+   *
+   * @param url The {@code URL} of the index.
+   * @return The {@code PluginIndex} read from the specified {@code URL}.
+   * @throws IOException If an I/O error has occurred, or if the index has an
+   *           unsupported format.
+   */
+  public static PluginIndex read(final URL url) throws IOException {
+    try (final DataInputStream in = new DataInputStream(new BufferedInputStream(url.openStream()))) {
+      if (in.readInt() != MAGIC)
+        throw new IOException("Unrecognized index: " + url);
+
+      final int version = in.readInt();
+      if (version != VERSION)
+        throw new IOException("Unsupported version " + version + " of index: " + url);
+
+      final PluginIndex pluginIndex = new PluginIndex();
+      for (int i = 0, len = in.readInt(); i < len; ++i) {
+        final String fileName = in.readUTF();
+        final int type = in.readByte();
+        if (type == -1) {
+          pluginIndex.add(new Entry(fileName, null, null, null, 0, null, null, null));
+          continue;
+        }
+
+        final String name = in.readUTF();
+        final String adapterClassName = readString(in);
+        final int priority = in.readInt();
+        final String tgfVersion = readString(in);
+        final String[] dependencies = readStrings(in);
+        final String[] ruleClassNames = readStrings(in);
+        pluginIndex.add(new Entry(fileName, PluginManifest.Type.values()[type], name, adapterClassName, priority, tgfVersion, dependencies, ruleClassNames));
+      }
+
+      return pluginIndex;
+    }
+  }
+
+  private static String readString(final DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static String[] readStrings(final DataInputStream in) throws IOException {
+    final int len = in.readInt();
+    if (len == -1)
+      return null;
+
+    final String[] strings = new String[len];
+    for (int i = 0; i < len; ++i)
+      strings[i] = in.readUTF();
+
+    return strings;
+  }
+
+  private static void writeString(final DataOutputStream out, final String string) throws IOException {
+    out.writeBoolean(string != null);
+    if (string != null)
+      out.writeUTF(string);
+  }
+
+  private static void writeStrings(final DataOutputStream out, final String[] strings) throws IOException {
+    if (strings == null) {
+      out.writeInt(-1);
+      return;
+    }
+
+    out.writeInt(strings.length);
+    for (final String string : strings)
+      out.writeUTF(string);
+  }
+
+  private final LinkedHashMap<String,Entry> fileNameToEntry = new LinkedHashMap<>();
+
+  /**
+   * Adds the specified {@link Entry} to this index.
+   *
+   * @param entry The {@link Entry}.
+   */
+  public void add(final Entry entry) {
+    fileNameToEntry.put(entry.fileName, entry);
+  }
+
+  /**
+   * Returns the {@link Entry} for the plugin JAR by the specified file name, or
+   * {@code null} if this index does not have such an entry.
+   *
+   * @param fileName The file name of the plugin JAR.
+   * @return The {@link Entry} for the plugin JAR by the specified file name, or
+   *         {@code null} if this index does not have such an entry.
+   */
+  public Entry get(final String fileName) {
+    return fileNameToEntry.get(fileName);
+  }
+
+  /**
+   * Writes this index to the specified file.
+   *
+   * @param file The file.
+   * @throws IOException If an I/O error has occurred.
+   */
+  public void write(final File file) throws IOException {
+    try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(fileNameToEntry.size());
+      for (final Entry entry : fileNameToEntry.values()) {
+        out.writeUTF(entry.fileName);
+        out.writeByte(entry.type == null ? -1 : entry.type.ordinal());
+        if (entry.type == null)
+          continue;
+
+        out.writeUTF(entry.name);
+        writeString(out, entry.adapterClassName);
+        out.writeInt(entry.priority);
+        writeString(out, entry.version);
+        writeStrings(out, entry.dependencies);
+        writeStrings(out, entry.ruleClassNames);
+      }
+    }
+  }
+}
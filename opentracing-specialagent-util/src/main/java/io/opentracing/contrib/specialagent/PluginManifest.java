@@ -201,6 +201,11 @@ public class PluginManifest {
     this.adapterClassName = adapterClassName;
   }
 
+  PluginManifest(final File file, final Type type, final String name, final String adapterClassName, final int priority) {
+    this(file, type, name, adapterClassName);
+    this.priority = priority;
+  }
+
   public int getPriority() {
     if (priority != -1)
       return priority;
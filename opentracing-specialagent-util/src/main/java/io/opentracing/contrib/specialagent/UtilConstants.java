@@ -20,6 +20,7 @@ public final class UtilConstants {
   public static final String META_INF_PLUGIN_PATH = "META-INF/plugins/";
   public static final String META_INF_ISO_PATH = "META-INF/iso/";
   public static final String META_INF_TEST_MANIFEST = META_INF_PLUGIN_PATH + "TEST-MANIFEST.MF";
+  public static final String META_INF_PLUGIN_INDEX = META_INF_PLUGIN_PATH + "plugins.idx";
 
   private UtilConstants() {
   }
@@ -0,0 +1,92 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AsyncLogWriterTest {
+  @Test
+  public void testWriteAndClose() {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final AsyncLogWriter writer = new AsyncLogWriter(new PrintStream(bytes), 4096);
+    for (int i = 0; i < 1000; ++i)
+      writer.write("message " + i);
+
+    writer.close();
+    final String[] lines = bytes.toString().split(System.lineSeparator());
+    assertEquals(1000, lines.length);
+    for (int i = 0; i < lines.length; ++i)
+      assertEquals("message " + i, lines[i]);
+
+    writer.write("after close");
+    assertFalse(bytes.toString().contains("after close"));
+  }
+
+  @Test
+  public void testDropped() throws InterruptedException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final CountDownLatch writing = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    // Blocks the background thread on the first write, until released
+    final OutputStream out = new OutputStream() {
+      @Override
+      public void write(final int b) {
+        bytes.write(b);
+      }
+
+      @Override
+      public void write(final byte[] b, final int off, final int len) {
+        writing.countDown();
+        boolean interrupted = false;
+        while (release.getCount() > 0) {
+          try {
+            release.await();
+          }
+          catch (final InterruptedException e) {
+            interrupted = true;
+          }
+        }
+
+        if (interrupted)
+          Thread.currentThread().interrupt();
+
+        bytes.write(b, off, len);
+      }
+    };
+
+    final AsyncLogWriter writer = new AsyncLogWriter(new PrintStream(out), 1);
+    writer.write("message");
+    assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+    // The first message is being written, the second fills the buffer, and the
+    // rest are dropped, which is reported after the batch of the first message
+    for (int i = 1; i < 10000; ++i)
+      writer.write("message");
+
+    release.countDown();
+    writer.close();
+    final String[] lines = bytes.toString().split(System.lineSeparator());
+    assertArrayEquals(new String[] {"message", "[SpecialAgent] 9998 log message(s) dropped because the log buffer was full", "message"}, lines);
+  }
+}
@@ -0,0 +1,89 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+
+public class PluginIndexTest {
+  private static File createJar(final String name, final String ... entries) throws IOException {
+    final File file = new File(Files.createTempDirectory("specialagent").toFile(), name);
+    file.getParentFile().deleteOnExit();
+    file.deleteOnExit();
+    try (final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+      for (int i = 0; i < entries.length; i += 2) {
+        out.putNextEntry(new ZipEntry(entries[i]));
+        out.write(entries[i + 1].getBytes());
+        out.closeEntry();
+      }
+    }
+
+    return file;
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    final String tgf = new String(Files.readAllBytes(new File("src/test/resources/test.tgf").toPath()));
+    final File ruleJar = createJar("specialagent-okhttp-0.0.0-SNAPSHOT.jar",
+      "sa.rule.name.okhttp", "io.opentracing.contrib.specialagent.OpenTracingAdapter",
+      "META-INF/maven/io.opentracing.contrib/specialagent-okhttp/pom.xml", "<project><properties><sa.rule.priority>5</sa.rule.priority></properties></project>",
+      "otarules.mf", "# Comment\n\nio.opentracing.contrib.specialagent.rule.okhttp.OkHttpAgentRule\n  io.opentracing.contrib.specialagent.rule.okhttp.OkHttpAgentRule2  \n",
+      Constants.DEPENDENCIES_TGF, tgf);
+    final File dependencyJar = createJar("okhttp-3.6.0.jar", "okhttp3/OkHttpClient.class", "");
+
+    final PluginIndex pluginIndex = new PluginIndex();
+    pluginIndex.add(PluginIndex.scan(ruleJar));
+    pluginIndex.add(PluginIndex.scan(dependencyJar));
+
+    final File indexFile = File.createTempFile("plugins", ".idx");
+    indexFile.deleteOnExit();
+    pluginIndex.write(indexFile);
+
+    final PluginIndex read = PluginIndex.read(indexFile.toURI().toURL());
+    assertNull(read.get("unknown.jar"));
+
+    final PluginIndex.Entry dependencyEntry = read.get(dependencyJar.getName());
+    assertNotNull(dependencyEntry);
+    assertNull(dependencyEntry.toPluginManifest(dependencyJar));
+    assertNull(dependencyEntry.getDependencies());
+    assertNull(dependencyEntry.getRuleClassNames());
+
+    final PluginIndex.Entry ruleEntry = read.get(ruleJar.getName());
+    final PluginManifest pluginManifest = ruleEntry.toPluginManifest(ruleJar);
+    assertEquals(PluginManifest.Type.INSTRUMENTATION, pluginManifest.type);
+    assertEquals("okhttp", pluginManifest.name);
+    assertEquals("io.opentracing.contrib.specialagent.OpenTracingAdapter", pluginManifest.adapterClassName);
+    assertEquals(5, pluginManifest.getPriority());
+    assertEquals("0.0.0-SNAPSHOT", ruleEntry.getVersion());
+    assertArrayEquals(new String[] {"io.opentracing.contrib.specialagent.rule.okhttp.OkHttpAgentRule", "io.opentracing.contrib.specialagent.rule.okhttp.OkHttpAgentRule2"}, ruleEntry.getRuleClassNames());
+
+    final HashSet<String> expected = new HashSet<>();
+    for (final File file : MavenUtil.selectFromTgf(tgf, true, "compile"))
+      expected.add(file.getName());
+
+    assertEquals(expected, new HashSet<>(Arrays.asList(ruleEntry.getDependencies())));
+  }
+}
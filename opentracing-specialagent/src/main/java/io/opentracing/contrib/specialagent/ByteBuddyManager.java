@@ -17,19 +17,20 @@ package io.opentracing.contrib.specialagent;
 
 import static net.bytebuddy.matcher.ElementMatchers.*;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.lang.instrument.Instrumentation;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 
 import net.bytebuddy.ByteBuddy;
@@ -107,69 +108,91 @@ public class ByteBuddyManager extends Manager {
   private final Set<String> loadedRules = new HashSet<>();
 
   @Override
-  int scanRules(final Instrumentation inst, final ClassLoader pluginsClassLoader, final PluginManifest.Directory pluginManifestDirectory, final List<IntegrationRule> integrationRules, final Map<String,String> classNameToName) throws IOException {
+  int scanRules(final Instrumentation inst, final ClassLoader pluginsClassLoader, final PluginManifest.Directory pluginManifestDirectory, final Map<File,PluginIndex.Entry> pluginFileToIndexEntry, final List<IntegrationRule> integrationRules, final Map<String,String> classNameToName) throws IOException {
     int noDeferrers = 0;
     AgentRule agentRule = null;
+    final Properties properties = System.getProperties();
     try {
+      // Only scan the pluginsClassLoader if it has rule JARs that are not in the index
+      final HashMap<File,URL> ruleJarToScriptUrl = new HashMap<>();
+      if (pluginFileToIndexEntry.size() < pluginManifestDirectory.size()) {
+        final Enumeration<URL> enumeration = pluginsClassLoader.getResources(file);
+        while (enumeration.hasMoreElements()) {
+          final URL scriptUrl = enumeration.nextElement();
+          ruleJarToScriptUrl.put(AssembleUtil.getSourceLocation(scriptUrl, file).getAbsoluteFile(), scriptUrl);
+        }
+      }
+
       // Prepare the agent rules
-      final Enumeration<URL> enumeration = pluginsClassLoader.getResources(file);
-      while (enumeration.hasMoreElements()) {
-        final URL scriptUrl = enumeration.nextElement();
-        final File ruleJar = AssembleUtil.getSourceLocation(scriptUrl, file);
-        if (logger.isLoggable(Level.FINEST))
-          logger.finest("Dereferencing index for " + ruleJar);
+      for (final File pluginFile : pluginManifestDirectory.keySet()) {
+        final File ruleJar = pluginFile.getAbsoluteFile();
+        final PluginIndex.Entry indexEntry = pluginFileToIndexEntry.get(ruleJar);
+        final String[] ruleClassNames;
+        if (indexEntry != null) {
+          ruleClassNames = indexEntry.getRuleClassNames();
+          if (ruleClassNames == null)
+            continue;
+
+          if (logger.isLoggable(Level.FINEST))
+            logger.finest("Dereferencing indexed rules for " + ruleJar);
+        }
+        else {
+          final URL scriptUrl = ruleJarToScriptUrl.get(ruleJar);
+          if (scriptUrl == null)
+            continue;
+
+          if (logger.isLoggable(Level.FINEST))
+            logger.finest("Dereferencing index for " + ruleJar);
+
+          try (final InputStream in = scriptUrl.openStream()) {
+            ruleClassNames = PluginIndex.readRuleClassNames(in);
+          }
+        }
 
         final PluginManifest pluginManifest = pluginManifestDirectory.get(ruleJar);
+        final IntegrationConfig config = IntegrationConfig.resolve(pluginManifest.name, properties);
         List<AgentRule> deferrers = null;
         List<AgentRule> agentRules = null;
-        try (final BufferedReader reader = new BufferedReader(new InputStreamReader(scriptUrl.openStream()))) {
-          for (String line; (line = reader.readLine()) != null;) {
-            line = line.trim();
-            if (line.length() == 0 || line.charAt(0) == '#')
-              continue;
+        for (final String line : ruleClassNames) {
+          if (loadedRules.contains(line)) {
+            if (logger.isLoggable(Level.FINE))
+              logger.fine("Skipping loaded rule: " + line);
 
-            if (loadedRules.contains(line)) {
-              if (logger.isLoggable(Level.FINE))
-                logger.fine("Skipping loaded rule: " + line);
-
-              continue;
-            }
+            continue;
+          }
 
-            final Class<?> agentClass = pluginsClassLoader.loadClass(line);
-            if (!AgentRule.class.isAssignableFrom(agentClass)) {
-              logger.severe("Class " + agentClass.getName() + " does not implement " + AgentRule.class);
-              continue;
-            }
+          final Class<?> agentClass = pluginsClassLoader.loadClass(line);
+          if (!AgentRule.class.isAssignableFrom(agentClass)) {
+            logger.severe("Class " + agentClass.getName() + " does not implement " + AgentRule.class);
+            continue;
+          }
 
-            final String simpleClassName = line.substring(line.lastIndexOf('.') + 1);
-            final String suffix = pluginManifest.name + "#" + simpleClassName + ".disable";
-            if (AssembleUtil.isSystemProperty("sa.integration." + suffix, "sa.instrumentation.plugin." + suffix)) {
-              if (logger.isLoggable(Level.FINE))
-                logger.fine("Skipping rule: " + line);
+          if (config.isDisabled(line.substring(line.lastIndexOf('.') + 1))) {
+            if (logger.isLoggable(Level.FINE))
+              logger.fine("Skipping rule: " + line);
 
-              continue;
-            }
+            continue;
+          }
 
-            if (AgentRule.class.isAssignableFrom(agentClass)) {
-              if (logger.isLoggable(Level.FINE))
-                logger.fine("Installing rule: " + line);
+          if (AgentRule.class.isAssignableFrom(agentClass)) {
+            if (logger.isLoggable(Level.FINE))
+              logger.fine("Installing rule: " + line);
 
-              classNameToName.put(agentClass.getName(), pluginManifest.name);
-              agentRule = (AgentRule)agentClass.getConstructor().newInstance();
-              AgentRule.$Access.setPluginManifest(agentRule, pluginManifest);
-              if (agentRule.isDeferrable(inst)) {
-                if (deferrers == null)
-                  deferrers = new ArrayList<>(1);
+            classNameToName.put(agentClass.getName(), pluginManifest.name);
+            agentRule = (AgentRule)agentClass.getConstructor().newInstance();
+            AgentRule.$Access.setPluginManifest(agentRule, pluginManifest);
+            if (agentRule.isDeferrable(inst)) {
+              if (deferrers == null)
+                deferrers = new ArrayList<>(1);
 
-                ++noDeferrers;
-                deferrers.add(agentRule);
-              }
-              else {
-                if (agentRules == null)
-                  agentRules = new ArrayList<>(1);
+              ++noDeferrers;
+              deferrers.add(agentRule);
+            }
+            else {
+              if (agentRules == null)
+                agentRules = new ArrayList<>(1);
 
-                agentRules.add(agentRule);
-              }
+              agentRules.add(agentRule);
             }
           }
         }
@@ -213,6 +236,9 @@ public class ByteBuddyManager extends Manager {
     // Ensure default rules are loaded
     loadDefaultRules(inst, tracerExcludedClasses);
 
+    // Resolve the configuration of the rules that are being loaded
+    AgentRule.refreshConfig();
+
     boolean hasGlobal1 = false;
     boolean hasGlobal2 = false;
     AgentBuilder chainedGlobalBuilder1 = newBuilder(inst, null, events);
@@ -70,9 +70,36 @@ public class ClassLoaderAgent {
   }
 
   public static class DefineClass {
-    @Advice.OnMethodExit
-    public static void exit(final @Advice.This ClassLoader thiz) {
-      if (!isExcluded(thiz))
+    /**
+     * The number of {@code defineClass} invocations on the call stack of each
+     * thread, which is maintained so that the presence of
+     * {@code ClassLoader#defineClass} on the call stack can be determined
+     * without capturing the stack trace.
+     */
+    public static final ThreadLocal<int[]> depth = new ThreadLocal<int[]>() {
+      @Override
+      protected int[] initialValue() {
+        return new int[1];
+      }
+    };
+
+    /**
+     * @return Whether the current thread is executing a {@code defineClass}
+     *         method of a {@code ClassLoader}.
+     */
+    public static boolean isDefining() {
+      return depth.get()[0] > 0;
+    }
+
+    @Advice.OnMethodEnter
+    public static void enter() {
+      ++depth.get()[0];
+    }
+
+    @Advice.OnMethodExit(onThrowable = Throwable.class)
+    public static void exit(final @Advice.This ClassLoader thiz, final @Advice.Thrown Throwable thrown) {
+      --depth.get()[0];
+      if (thrown == null && !isExcluded(thiz))
         SpecialAgent.inject(thiz);
     }
   }
@@ -0,0 +1,338 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Determines whether Integration Rules are compatible with the classes loaded
+ * in a {@code ClassLoader}, by way of "fingerprinting" with
+ * {@link LibraryFingerprint}.
+ * <p>
+ * When the compatibility of an Integration Rule is first requested for a
+ * {@code ClassLoader}, the compatibility of the other Integration Rules is
+ * computed concurrently on a bounded {@link ForkJoinPool}. The Integration
+ * Rules that have been found to be compatible with another {@code ClassLoader},
+ * and are thus likely to be linked into this one as well, are submitted to the
+ * pool first. The thread that requests the compatibility of an Integration Rule
+ * computes it itself if it has not been started in the pool, and otherwise
+ * waits for the result of that Integration Rule in the pool.
+ * <p>
+ * The result of each verification is cached by a digest of the fingerprint of
+ * the Integration Rule and of the bytes of the classes in the
+ * {@code ClassLoader} that the fingerprint refers to. A {@code ClassLoader}
+ * with the same classes (i.e. a redeployed application, or one of many
+ * identical applications) therefore reuses the result without the classes
+ * having to be scanned again. If {@code -Dsa.fingerprint.cache} is specified,
+ * the results are also stored in the cache dir, to be reused across restarts.
+ *
+ * @author Seva Safris
+ */
+final class CompatibilityChecker {
+  private static final Logger logger = Logger.getLogger(CompatibilityChecker.class);
+  private static final String SKIP_FINGERPRINT = "sa.fingerprint.skip";
+  private static final String FINGERPRINT_THREADS = "sa.fingerprint.threads";
+  private static final String FINGERPRINT_CACHE = "sa.fingerprint.cache";
+  private static final boolean skipFingerprint = AssembleUtil.isSystemProperty(SKIP_FINGERPRINT, null);
+
+  private static final ForkJoinPool.ForkJoinWorkerThreadFactory threadFactory = new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+    @Override
+    public ForkJoinWorkerThread newThread(final ForkJoinPool pool) {
+      final ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {};
+      thread.setName("SpecialAgent-Fingerprint-" + thread.getPoolIndex());
+      return thread;
+    }
+  };
+
+  private static int getThreads() {
+    final String property = System.getProperty(FINGERPRINT_THREADS);
+    if (property == null)
+      return Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    final int threads = Integer.parseInt(property);
+    if (threads < 0)
+      throw new IllegalArgumentException(FINGERPRINT_THREADS + " must be a non-negative integer: " + property);
+
+    return threads;
+  }
+
+  /**
+   * The {@link LibraryFingerprint} of an Integration Rule, and the digest of
+   * the resource from which it was read.
+   */
+  private static final class Fingerprint {
+    private final Object libraryFingerprint;
+    private final byte[] digest;
+
+    private Fingerprint(final Object libraryFingerprint, final byte[] digest) {
+      this.libraryFingerprint = libraryFingerprint;
+      this.digest = digest;
+    }
+  }
+
+  private static final Fingerprint NO_FINGERPRINT = new Fingerprint(null, null);
+
+  private final ConcurrentWeakIdentityHashMap<ClassLoader,ConcurrentHashMap<PluginManifest,FutureTask<Boolean>>> classLoaderToTasks = new ConcurrentWeakIdentityHashMap<>();
+  private final ConcurrentHashMap<PluginManifest,Boolean> compatiblePluginManifests = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<PluginManifest,Fingerprint> pluginManifestToFingerprint = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String,String> digestToErrors = new ConcurrentHashMap<>();
+  private final File cacheDir;
+  private final ClassLoader isoClassLoader;
+  private final PluginManifest[] pluginManifests;
+  private final ForkJoinPool pool;
+
+  /**
+   * Creates a new {@code CompatibilityChecker} for the specified
+   * {@link PluginManifest}s of Integration Rules.
+   *
+   * @param isoClassLoader {@code IsoClassLoader} supplying the
+   *          {@link LibraryFingerprint} class.
+   * @param pluginManifests The {@link PluginManifest}s of Integration Rules
+   *          whose compatibility may be computed concurrently for each new
+   *          {@code ClassLoader}.
+   */
+  CompatibilityChecker(final ClassLoader isoClassLoader, final Collection<PluginManifest> pluginManifests) {
+    this.isoClassLoader = isoClassLoader;
+    this.pluginManifests = pluginManifests.toArray(new PluginManifest[pluginManifests.size()]);
+    final int threads = skipFingerprint || pluginManifests.size() < 2 ? 0 : getThreads();
+    this.pool = threads == 0 ? null : new ForkJoinPool(threads, threadFactory, null, true);
+    this.cacheDir = skipFingerprint || !AssembleUtil.isSystemProperty(FINGERPRINT_CACHE, null) ? null : new File(SpecialAgentUtil.getCacheDir(), "fingerprint");
+    if (cacheDir != null)
+      cacheDir.mkdirs();
+  }
+
+  /**
+   * Returns {@code true} if the Integration Rule of the specified
+   * {@link PluginManifest} is compatible with its target classes that are
+   * loaded in the specified {@code ClassLoader}.
+   *
+   * @param pluginManifest The {@link PluginManifest} of the Integration Rule.
+   * @param classLoader The {@code ClassLoader} for which the Integration Rule
+   *          is to be checked for compatibility.
+   * @return {@code true} if the target classes in the specified
+   *         {@code ClassLoader} are compatible with the Integration Rule of the
+   *         specified {@link PluginManifest}, and {@code false} if the
+   *         specified {@code ClassLoader} is incompatible.
+   */
+  boolean isCompatible(final PluginManifest pluginManifest, ClassLoader classLoader) {
+    if (skipFingerprint) {
+      if (logger.isLoggable(Level.FINE))
+        logger.fine("Allowing integration with \"" + pluginManifest.name + "\" due to \"-D" + SKIP_FINGERPRINT + "=true\"");
+
+      return true;
+    }
+
+    if (classLoader == null)
+      classLoader = BootProxyClassLoader.INSTANCE;
+
+    ConcurrentHashMap<PluginManifest,FutureTask<Boolean>> tasks = classLoaderToTasks.get(classLoader);
+    if (tasks == null) {
+      final ConcurrentHashMap<PluginManifest,FutureTask<Boolean>> newTasks = new ConcurrentHashMap<>();
+      tasks = classLoaderToTasks.putIfAbsent(classLoader, newTasks);
+      if (tasks == null) {
+        tasks = newTasks;
+        if (pool != null)
+          prefetch(tasks, pluginManifest, classLoader);
+      }
+    }
+
+    // Run the task in this thread, unless it has already been started in the
+    // pool, in which case wait for its result
+    final FutureTask<Boolean> task = getTask(tasks, pluginManifest, classLoader);
+    task.run();
+    try {
+      final boolean compatible = task.get();
+      if (compatible)
+        compatiblePluginManifests.putIfAbsent(pluginManifest, Boolean.TRUE);
+
+      return compatible;
+    }
+    catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+    catch (final ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException)
+        throw (RuntimeException)e.getCause();
+
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * Submits the compatibility tasks of the Integration Rules other than the
+   * specified {@link PluginManifest} to the pool. The pool executes submitted
+   * tasks in FIFO order, so the Integration Rules that have been found to be
+   * compatible with another {@code ClassLoader} are submitted first.
+   *
+   * @param tasks The tasks of the specified {@code ClassLoader}.
+   * @param pluginManifest The {@link PluginManifest} whose compatibility is
+   *          computed by the requesting thread.
+   * @param classLoader The {@code ClassLoader}.
+   */
+  private void prefetch(final ConcurrentHashMap<PluginManifest,FutureTask<Boolean>> tasks, final PluginManifest pluginManifest, final ClassLoader classLoader) {
+    for (final PluginManifest candidate : compatiblePluginManifests.keySet())
+      if (!candidate.equals(pluginManifest))
+        pool.execute(getTask(tasks, candidate, classLoader));
+
+    for (final PluginManifest candidate : pluginManifests)
+      if (!candidate.equals(pluginManifest) && !tasks.containsKey(candidate))
+        pool.execute(getTask(tasks, candidate, classLoader));
+  }
+
+  private FutureTask<Boolean> getTask(final ConcurrentHashMap<PluginManifest,FutureTask<Boolean>> tasks, final PluginManifest pluginManifest, final ClassLoader classLoader) {
+    final FutureTask<Boolean> task = tasks.get(pluginManifest);
+    if (task != null)
+      return task;
+
+    final FutureTask<Boolean> newTask = new FutureTask<>(new Callable<Boolean>() {
+      @Override
+      public Boolean call() {
+        return isFingerprintCompatible(pluginManifest, classLoader);
+      }
+    });
+
+    final FutureTask<Boolean> existing = tasks.putIfAbsent(pluginManifest, newTask);
+    return existing != null ? existing : newTask;
+  }
+
+  private Fingerprint getFingerprint(final PluginManifest pluginManifest) throws ClassNotFoundException, IllegalAccessException, InvocationTargetException, NoSuchAlgorithmException, NoSuchMethodException {
+    Fingerprint fingerprint = pluginManifestToFingerprint.get(pluginManifest);
+    if (fingerprint != null)
+      return fingerprint;
+
+    final URL url = pluginManifest.getFingerprint();
+    final Class<?> libraryFingerprintClass = isoClassLoader.loadClass("io.opentracing.contrib.specialagent.LibraryFingerprint");
+    final Object libraryFingerprint = libraryFingerprintClass.getDeclaredMethod("fromFile", URL.class).invoke(null, url);
+    fingerprint = libraryFingerprint == null ? NO_FINGERPRINT : new Fingerprint(libraryFingerprint, MessageDigest.getInstance("SHA-1").digest(AssembleUtil.readBytes(url)));
+    final Fingerprint existing = pluginManifestToFingerprint.putIfAbsent(pluginManifest, fingerprint);
+    return existing != null ? existing : fingerprint;
+  }
+
+
+  private String readErrors(final String digest) {
+    if (cacheDir == null)
+      return null;
+
+    final File file = new File(cacheDir, digest);
+    try {
+      return file.exists() ? new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8) : null;
+    }
+    catch (final IOException e) {
+      if (logger.isLoggable(Level.FINE))
+        logger.fine("Unable to read cached fingerprint verification from " + file + ": " + e.getMessage());
+
+      return null;
+    }
+  }
+
+  private void writeErrors(final String digest, final String errors) {
+    if (cacheDir == null)
+      return;
+
+    final File file = new File(cacheDir, digest);
+    try {
+      final File tempFile = File.createTempFile(digest, null, cacheDir);
+      try {
+        Files.write(tempFile.toPath(), errors.getBytes(StandardCharsets.UTF_8));
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      }
+      catch (final FileSystemException e) {
+        // Another JVM may have cached the same verification concurrently
+        if (!file.exists())
+          throw e;
+      }
+      finally {
+        tempFile.delete();
+      }
+    }
+    catch (final IOException e) {
+      if (logger.isLoggable(Level.FINE))
+        logger.fine("Unable to cache fingerprint verification to " + file + ": " + e.getMessage());
+    }
+  }
+
+  private boolean isFingerprintCompatible(final PluginManifest pluginManifest, final ClassLoader classLoader) {
+    try {
+      final Fingerprint fingerprint = getFingerprint(pluginManifest);
+      if (fingerprint == NO_FINGERPRINT) {
+        if (logger.isLoggable(Level.FINE))
+          logger.fine("Allowing integration with \"" + pluginManifest.name + "\" due to \"" + UtilConstants.FINGERPRINT_FILE + " not found\"\nin: " + pluginManifest.file);
+
+        return true;
+      }
+
+      // The classes that are read to compute the digest are reused by the
+      // verification, so that they are only read and parsed once
+      final MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
+      messageDigest.update(pluginManifest.name.getBytes(StandardCharsets.UTF_8));
+      messageDigest.update(fingerprint.digest);
+      final Object readers = fingerprint.libraryFingerprint.getClass().getDeclaredMethod("digest", ClassLoader.class, MessageDigest.class).invoke(fingerprint.libraryFingerprint, classLoader, messageDigest);
+      final String digest = SpecialAgentUtil.toHexString(messageDigest.digest());
+
+      // An empty string represents the absence of errors
+      String errors = digestToErrors.get(digest);
+      if (errors == null && (errors = readErrors(digest)) != null)
+        digestToErrors.putIfAbsent(digest, errors);
+
+      if (errors != null) {
+        if (logger.isLoggable(Level.FINE))
+          logger.fine((errors.length() == 0 ? "Allowing" : "Disallowing") + " integration with \"" + pluginManifest.name + "\" due to cached \"" + UtilConstants.FINGERPRINT_FILE + (errors.length() == 0 ? " match\"" : " mismatch\" errors:\n" + errors) + "\nin: " + pluginManifest.file);
+
+        return errors.length() == 0;
+      }
+
+      final Method isCompatibleMethod = fingerprint.libraryFingerprint.getClass().getDeclaredMethod("isCompatible", ClassLoader.class, Map.class);
+      final List<?> errorList = (List<?>)isCompatibleMethod.invoke(fingerprint.libraryFingerprint, classLoader, readers);
+      errors = errorList == null ? "" : AssembleUtil.toIndentedString(errorList);
+      digestToErrors.put(digest, errors);
+      writeErrors(digest, errors);
+      if (errorList != null) {
+        if (logger.isLoggable(Level.FINE))
+          logger.fine("Disallowing integration with \"" + pluginManifest.name + "\" due to \"" + UtilConstants.FINGERPRINT_FILE + " mismatch\" errors:\n" + errors + "\nin: " + pluginManifest.file);
+
+        return false;
+      }
+
+      if (logger.isLoggable(Level.FINE))
+        logger.fine("Allowing integration with \"" + pluginManifest.name + "\" due to \"" + UtilConstants.FINGERPRINT_FILE + " match\" for: " + pluginManifest.file);
+
+      return true;
+    }
+    catch (final ClassNotFoundException | IllegalAccessException | InvocationTargetException | NoSuchAlgorithmException | NoSuchMethodException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,267 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * A read-only JAR file that is memory-mapped once, and indexed by the entries
+ * of its central directory. The bytes of an entry are read directly from the
+ * mapped buffer, which avoids the {@code URLConnection} and
+ * {@code InputStream} machinery of {@link java.net.URLClassLoader} on each read,
+ * as well as the re-inflation of the full JAR to enumerate its classes.
+ * <p>
+ * Instances are shared across all {@link RuleClassLoader}s that refer to the
+ * same JAR file via {@link #get(File)}, and are counted by reference. When the
+ * last {@link RuleClassLoader} that refers to a JAR file is closed, the
+ * instance is released with {@link #release(MappedJarFile)}, so that the
+ * mapping is dropped by the garbage collector. The mapping is not unmapped
+ * explicitly, because a thread may still be reading from it.
+ * <p>
+ * The JAR files that are mapped are the JARs of the Integration Rules that are
+ * extracted to the extraction cache directory by
+ * {@link SpecialAgentUtil#findJarResources}. The nested JAR entries of the
+ * agent JAR are not read directly from the agent JAR, because the rule JARs
+ * must also be available to {@link java.net.URLClassLoader} as files. The
+ * extraction is instead paid once per host, because the extracted JARs are
+ * reused across restarts.
+ *
+ * @author Seva Safris
+ */
+final class MappedJarFile {
+  private static final Logger logger = Logger.getLogger(MappedJarFile.class);
+  private static final int LOCSIG = 0x04034b50;
+  private static final int CENSIG = 0x02014b50;
+  private static final int ENDSIG = 0x06054b50;
+  private static final int LOCHDR = 30;
+  private static final int CENHDR = 46;
+  private static final int ENDHDR = 22;
+
+  private static final MappedJarFile UNMAPPED = new MappedJarFile(null, null, null, null);
+  private static final HashMap<File,MappedJarFile> fileToMappedJarFile = new HashMap<>();
+
+  /**
+   * Returns the {@code MappedJarFile} for the specified JAR file, or
+   * {@code null} if the file is not a JAR file that can be mapped (i.e. it is a
+   * directory, or a ZIP64 archive). Each returned instance must be released
+   * with {@link #release(MappedJarFile)} when it is no longer used.
+   *
+   * @param file The JAR file.
+   * @return The {@code MappedJarFile} for the specified JAR file, or
+   *         {@code null} if the file is not a JAR file that can be mapped.
+   */
+  static synchronized MappedJarFile get(final File file) {
+    if (!file.isFile())
+      return null;
+
+    MappedJarFile jarFile = fileToMappedJarFile.get(file);
+    if (jarFile == null) {
+      try {
+        jarFile = map(file);
+      }
+      catch (final IOException e) {
+        if (logger.isLoggable(Level.FINE))
+          logger.fine("Unable to map " + file + ": " + e.getMessage());
+
+        jarFile = UNMAPPED;
+      }
+
+      fileToMappedJarFile.put(file, jarFile);
+    }
+
+    if (jarFile == UNMAPPED)
+      return null;
+
+    ++jarFile.references;
+    return jarFile;
+  }
+
+  /**
+   * Releases the specified {@code MappedJarFile} that was returned by
+   * {@link #get(File)}. When the last reference is released, the instance is
+   * removed from the cache, so that its mapping is dropped by the garbage
+   * collector.
+   *
+   * @param jarFile The {@code MappedJarFile}.
+   */
+  static synchronized void release(final MappedJarFile jarFile) {
+    if (--jarFile.references == 0)
+      fileToMappedJarFile.remove(jarFile.file);
+  }
+
+  private static MappedJarFile map(final File file) throws IOException {
+    final MappedByteBuffer buffer;
+    try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+    // Find the end of central directory record, which may be followed by a comment of up to 0xFFFF bytes
+    final int min = Math.max(0, buffer.limit() - ENDHDR - 0xffff);
+    int end = buffer.limit() - ENDHDR;
+    while (end >= min && buffer.getInt(end) != ENDSIG)
+      --end;
+
+    if (end < min)
+      throw new IOException("End of central directory not found");
+
+    final int total = buffer.getShort(end + 10) & 0xffff;
+    final int cenOffset = buffer.getInt(end + 16);
+    if (total == 0xffff || cenOffset < 0)
+      throw new IOException("ZIP64 is not supported");
+
+    final HashMap<String,Entry> nameToEntry = new HashMap<>();
+    final ArrayList<String> classResources = new ArrayList<>();
+    for (int i = 0, offset = cenOffset; i < total; ++i) {
+      if (buffer.getInt(offset) != CENSIG)
+        throw new IOException("Invalid central directory header at " + offset);
+
+      final int method = buffer.getShort(offset + 10) & 0xffff;
+      final int compressedSize = buffer.getInt(offset + 20);
+      final int size = buffer.getInt(offset + 24);
+      final int nameLength = buffer.getShort(offset + 28) & 0xffff;
+      final int extraLength = buffer.getShort(offset + 30) & 0xffff;
+      final int commentLength = buffer.getShort(offset + 32) & 0xffff;
+      final int localOffset = buffer.getInt(offset + 42);
+      if (compressedSize < 0 || size < 0 || localOffset < 0)
+        throw new IOException("ZIP64 is not supported");
+
+      final byte[] bytes = new byte[nameLength];
+      for (int j = 0; j < nameLength; ++j)
+        bytes[j] = buffer.get(offset + CENHDR + j);
+
+      final String name = new String(bytes, StandardCharsets.UTF_8);
+      if (!name.endsWith("/")) {
+        nameToEntry.put(name, new Entry(method, compressedSize, size, localOffset));
+        if (name.endsWith(".class") && !name.startsWith("META-INF/") && !name.startsWith("module-info"))
+          classResources.add(name);
+      }
+
+      offset += CENHDR + nameLength + extraLength + commentLength;
+    }
+
+    return new MappedJarFile(file, buffer, nameToEntry, classResources.toArray(new String[classResources.size()]));
+  }
+
+  private static final class Entry {
+    private final int method;
+    private final int compressedSize;
+    private final int size;
+    private final int localOffset;
+
+    private Entry(final int method, final int compressedSize, final int size, final int localOffset) {
+      this.method = method;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.localOffset = localOffset;
+    }
+  }
+
+  private final File file;
+  private final ByteBuffer buffer;
+  private final HashMap<String,Entry> nameToEntry;
+  private final String[] classResources;
+  private int references;
+
+  private MappedJarFile(final File file, final ByteBuffer buffer, final HashMap<String,Entry> nameToEntry, final String[] classResources) {
+    this.file = file;
+    this.buffer = buffer;
+    this.nameToEntry = nameToEntry;
+    this.classResources = classResources;
+  }
+
+  /**
+   * @return The resource names of the classes in this JAR file, excluding
+   *         classes in {@code META-INF/} and {@code module-info}.
+   */
+  String[] getClassResources() {
+    return classResources;
+  }
+
+  /**
+   * Returns {@code true} if this JAR file has an entry by the specified name,
+   * which is determined from the index of its central directory without
+   * reading the entry.
+   *
+   * @param name The name of the entry.
+   * @return {@code true} if this JAR file has an entry by the specified name.
+   */
+  boolean contains(final String name) {
+    return nameToEntry.containsKey(name);
+  }
+
+  /**
+   * Returns the bytes of the entry by the specified name, or {@code null} if
+   * this JAR file does not have such an entry.
+   *
+   * @param name The name of the entry.
+   * @return The bytes of the entry by the specified name, or {@code null} if
+   *         this JAR file does not have such an entry.
+   * @throws IOException If an I/O error has occurred, or if the entry is
+   *           compressed with an unsupported method.
+   */
+  byte[] getBytes(final String name) throws IOException {
+    final Entry entry = nameToEntry.get(name);
+    if (entry == null)
+      return null;
+
+    if (buffer.getInt(entry.localOffset) != LOCSIG)
+      throw new IOException("Invalid local file header for " + name);
+
+    final int dataOffset = entry.localOffset + LOCHDR + (buffer.getShort(entry.localOffset + 26) & 0xffff) + (buffer.getShort(entry.localOffset + 28) & 0xffff);
+    final ByteBuffer data = buffer.duplicate();
+    data.position(dataOffset);
+    final byte[] bytes = new byte[entry.size];
+    if (entry.method == ZipEntry.STORED) {
+      data.get(bytes);
+      return bytes;
+    }
+
+    if (entry.method != ZipEntry.DEFLATED)
+      throw new IOException("Unsupported compression method " + entry.method + " for " + name);
+
+    final byte[] compressed = new byte[entry.compressedSize];
+    data.get(compressed);
+    final Inflater inflater = new Inflater(true);
+    try {
+      inflater.setInput(compressed);
+      for (int offset = 0, len; offset < bytes.length; offset += len)
+        if ((len = inflater.inflate(bytes, offset, bytes.length - offset)) == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+          throw new IOException("Unexpected end of entry " + name);
+
+      return bytes;
+    }
+    catch (final DataFormatException e) {
+      throw new IOException(e);
+    }
+    finally {
+      inflater.end();
+    }
+  }
+}
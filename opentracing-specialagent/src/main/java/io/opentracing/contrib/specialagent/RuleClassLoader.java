@@ -17,12 +17,17 @@ package io.opentracing.contrib.specialagent;
 
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * An {@link URLClassLoader} that encloses an Integration Rule, and provides the
@@ -30,14 +35,25 @@ import java.util.List;
  * <ol>
  * <li>{@link #isCompatible(ClassLoader)}: Determines whether the Integration
  * Rule it repserents is compatible with a specified {@code ClassLoader}.</li>
+ * <li>{@link #inject(ClassLoader)}: Loads all classes of the Integration Rule
+ * into a specified {@code ClassLoader}, unless {@code -Dsa.inject.lazy} is
+ * specified, in which case the class resource paths from
+ * {@link #getClassResources()} are registered for the {@code ClassLoader},
+ * and each class is defined in the {@code ClassLoader} on demand, when it is
+ * first not found by {@link ClassLoaderAgent.LoadClass}.</li>
  * </ol>
  *
  * @author Seva Safris
  */
 class RuleClassLoader extends URLClassLoader {
   private static final Logger logger = Logger.getLogger(RuleClassLoader.class);
-  private static final String SKIP_FINGERPRINT = "sa.fingerprint.skip";
-  private static final boolean skipFingerprint = AssembleUtil.isSystemProperty(SKIP_FINGERPRINT, null);
+  static final boolean lazyInject = AssembleUtil.isSystemProperty(Constants.INJECT_LAZY, null);
+
+  /**
+   * A class loader without resources of its own, which resolves resources of
+   * the bootstrap class loader for a {@code RuleClassLoader} without a parent.
+   */
+  private static final ClassLoader bootstrapLoader = new ClassLoader(null) {};
 
   /**
    * Callback that is used to load a class by the specified resource path into
@@ -59,25 +75,67 @@ class RuleClassLoader extends URLClassLoader {
     }
   };
 
+  /**
+   * Callback that is used to add the resource path of a class to a set.
+   */
+  private static final BiConsumer<String,Set<String>> addClassResource = new BiConsumer<String,Set<String>>() {
+    @Override
+    public void accept(final String path, final Set<String> classResources) {
+      classResources.add(path);
+    }
+  };
+
+  /**
+   * Index of the class resource paths of the files that are not JARs that can
+   * be mapped with {@link MappedJarFile}, shared by all
+   * {@code RuleClassLoader}s.
+   */
+  private static final ConcurrentHashMap<File,Set<String>> fileToClassResources = new ConcurrentHashMap<>();
+
+  private static Set<String> getClassResources(final File file) {
+    Set<String> classResources = fileToClassResources.get(file);
+    if (classResources != null)
+      return classResources;
+
+    classResources = new HashSet<>();
+    try {
+      AssembleUtil.forEachClass(AssembleUtil.toURLs(file), classResources, addClassResource);
+    }
+    catch (final IOException e) {
+      throw new IllegalStateException(e);
+    }
+
+    classResources = Collections.unmodifiableSet(classResources);
+    final Set<String> existing = fileToClassResources.putIfAbsent(file, classResources);
+    return existing != null ? existing : classResources;
+  }
+
   private final ClassLoaderMap<Boolean> compatibility = new ClassLoaderMap<>();
   private final ClassLoaderMap<Boolean> injected = new ClassLoaderMap<>();
   private final PluginManifest pluginManifest;
-  private final ClassLoader isoClassLoader;
+  private final CompatibilityChecker compatibilityChecker;
+  private final File[] files;
+  private final MappedJarFile[] jarFiles;
+  private volatile boolean closed;
 
   /**
    * Creates a new {@code RuleClassLoader} with the specified classpath URLs and
    * parent {@code ClassLoader}.
    *
    * @param pluginManifest The {@link PluginManifest}.
-   * @param isoClassLoader {@code IsoClassLoader} supplying classes that are
-   *          isolated from parent class loaders.
+   * @param compatibilityChecker The {@link CompatibilityChecker}.
    * @param parent The parent {@code ClassLoader}.
    * @param files The classpath URLs.
    */
-  RuleClassLoader(final PluginManifest pluginManifest, final ClassLoader isoClassLoader, final ClassLoader parent, final File ... files) {
+  RuleClassLoader(final PluginManifest pluginManifest, final CompatibilityChecker compatibilityChecker, final ClassLoader parent, final File ... files) {
     super(AssembleUtil.toURLs(files), parent);
     this.pluginManifest = pluginManifest;
-    this.isoClassLoader = isoClassLoader;
+    this.compatibilityChecker = compatibilityChecker;
+    this.files = files;
+    this.jarFiles = new MappedJarFile[files.length];
+    for (int i = 0; i < files.length; ++i)
+      jarFiles[i] = MappedJarFile.get(files[i]);
+
     if (parent == null || parent == ClassLoader.getSystemClassLoader())
       injected.put(parent, Boolean.TRUE);
   }
@@ -91,11 +149,16 @@ class RuleClassLoader extends URLClassLoader {
    * will load all dependent classes that are also needed to be loaded, which
    * may belong to a different class loader (i.e. the parent, or parent's
    * parent, and so on).
+   * <p>
+   * If {@link #lazyInject} is {@code true}, this method does nothing, and this
+   * {@code RuleClassLoader} remains open for {@link #getClassBytes(String)} to
+   * supply the classes that the specified {@link ClassLoader classLoader} does
+   * not find.
    *
    * @param classLoader The target {@code ClassLoader} of the injection.
    */
   void inject(final ClassLoader classLoader) {
-    if (injected.containsKey(classLoader))
+    if (lazyInject || injected.containsKey(classLoader))
       return;
 
     synchronized (classLoader) {
@@ -109,7 +172,17 @@ class RuleClassLoader extends URLClassLoader {
       // the caller's class loader.
       try {
         injected.put(classLoader, Boolean.FALSE);
-        AssembleUtil.<ClassLoader>forEachClass(getURLs(), classLoader, loadClass);
+        final URL[] urls = getURLs();
+        for (int i = 0; i < jarFiles.length; ++i) {
+          final MappedJarFile jarFile = jarFiles[i];
+          if (jarFile == null) {
+            AssembleUtil.<ClassLoader>forEachClass(new URL[] {urls[i]}, classLoader, loadClass);
+          }
+          else {
+            for (final String classResource : jarFile.getClassResources())
+              loadClass.accept(classResource, classLoader);
+          }
+        }
       }
       catch (final IOException e) {
         throw new IllegalStateException(e);
@@ -120,6 +193,138 @@ class RuleClassLoader extends URLClassLoader {
     }
   }
 
+  /**
+   * Returns the resource paths of all classes in the files of this
+   * {@code RuleClassLoader}.
+   *
+   * @return The resource paths of all classes in the files of this
+   *         {@code RuleClassLoader}.
+   */
+  Collection<String> getClassResources() {
+    final Collection<String> classResources = new ArrayList<>();
+    for (int i = 0; i < files.length; ++i) {
+      final MappedJarFile jarFile = jarFiles[i];
+      if (jarFile != null)
+        classResources.addAll(Arrays.asList(jarFile.getClassResources()));
+      else
+        classResources.addAll(getClassResources(files[i]));
+    }
+
+    return classResources;
+  }
+
+  /**
+   * Returns the bytecode of the class by the specified resource name, or
+   * {@code null} if the class is not found. As with
+   * {@link ClassLoader#getResource(String)}, the parent class loader is
+   * consulted first, so that the bytecode of a class that the parent shadows
+   * is read from the parent. Otherwise, the bytecode is read directly from the
+   * memory-mapped JAR files of this {@code RuleClassLoader}. Whether the class
+   * is present in each file is determined from an index of its class resource
+   * paths, so that a class that is not present is rejected without opening the
+   * file, and without consulting the parent.
+   *
+   * @param resourceName The resource name of the class.
+   * @return The bytecode of the class by the specified resource name, or
+   *         {@code null} if the class is not found.
+   * @throws IllegalStateException If an illegal state occurs due to an
+   *           {@link IOException}.
+   */
+  byte[] getClassBytes(final String resourceName) {
+    if (!mayContainResource(resourceName))
+      return null;
+
+    try {
+      final ClassLoader parent = getParent();
+      final URL parentUrl = (parent != null ? parent : bootstrapLoader).getResource(resourceName);
+      if (parentUrl != null)
+        return AssembleUtil.readBytes(parentUrl);
+
+      for (int i = 0; i < files.length; ++i) {
+        final MappedJarFile jarFile = jarFiles[i];
+        if (jarFile != null) {
+          final byte[] bytecode = jarFile.getBytes(resourceName);
+          if (bytecode != null)
+            return bytecode;
+        }
+        else if (!getClassResources(files[i]).contains(resourceName)) {
+          continue;
+        }
+        else if (files[i].isDirectory()) {
+          final File file = new File(files[i], resourceName);
+          if (file.isFile())
+            return Files.readAllBytes(file.toPath());
+        }
+        else {
+          // The file is a JAR that could not be mapped
+          final URL resourceUrl = findResource(resourceName);
+          return resourceUrl == null ? null : AssembleUtil.readBytes(resourceUrl);
+        }
+      }
+
+      return null;
+    }
+    catch (final IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Returns {@code false} if the resource by the specified name is known not to
+   * be present in this {@code RuleClassLoader}, which is determined from the
+   * indexes of its memory-mapped JAR files.
+   *
+   * @param name The name of the resource.
+   * @return {@code false} if the resource by the specified name is known not to
+   *         be present in this {@code RuleClassLoader}.
+   */
+  private boolean mayContainResource(final String name) {
+    if (closed)
+      return false;
+
+    if (name.endsWith("/"))
+      return true;
+
+    for (final MappedJarFile jarFile : jarFiles)
+      if (jarFile == null || jarFile.contains(name))
+        return true;
+
+    return false;
+  }
+
+  @Override
+  public URL findResource(final String name) {
+    return mayContainResource(name) ? super.findResource(name) : null;
+  }
+
+  @Override
+  public Enumeration<URL> findResources(final String name) throws IOException {
+    return mayContainResource(name) ? super.findResources(name) : Collections.<URL>emptyEnumeration();
+  }
+
+  /**
+   * Closes this {@code RuleClassLoader}, and releases its memory-mapped JAR
+   * files, so that their mappings are dropped once no other
+   * {@code RuleClassLoader} refers to them.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (jarFiles) {
+      if (closed)
+        return;
+
+      closed = true;
+      for (int i = 0; i < jarFiles.length; ++i) {
+        if (jarFiles[i] != null) {
+          MappedJarFile.release(jarFiles[i]);
+          jarFiles[i] = null;
+        }
+      }
+    }
+
+    super.close();
+  }
+
   boolean isClosed(final ClassLoader classLoader) {
     final Boolean preLoaded = injected.get(classLoader);
     return preLoaded != null && preLoaded;
@@ -130,8 +335,9 @@ class RuleClassLoader extends URLClassLoader {
    * is compatible with its target classes that are loaded in the specified
    * {@code ClassLoader}.
    * <p>
-   * This method utilizes the {@link LibraryFingerprint} class to determine
-   * compatibility via "fingerprinting".
+   * This method delegates to the {@link CompatibilityChecker}, which utilizes
+   * the {@link LibraryFingerprint} class to determine compatibility via
+   * "fingerprinting".
    * <p>
    * Once "fingerprinting" has been performed, the resulting value is associated
    * with the specified {@code ClassLoader} in the {@link #compatibility} map as
@@ -145,64 +351,23 @@ class RuleClassLoader extends URLClassLoader {
    *         represented by this {@code RuleClassLoader}, and {@code false} if
    *         the specified {@code ClassLoader} is incompatible.
    */
-  boolean isCompatible(ClassLoader classLoader) {
-    if (classLoader == null)
-      classLoader = BootProxyClassLoader.INSTANCE;
-
+  boolean isCompatible(final ClassLoader classLoader) {
     Boolean compatible = compatibility.get(classLoader);
     if (compatible != null)
       return compatible;
 
-    synchronized (classLoader) {
-      compatible = compatibility.get(classLoader);
-      if (compatible != null)
-        return compatible;
-
+    compatible = compatibilityChecker.isCompatible(pluginManifest, classLoader);
+    if (!compatible) {
       try {
-        compatible = isFingerprintCompatible(classLoader);
-        if (!compatible)
-          close();
-
-        compatibility.put(classLoader, compatible);
-        return compatible;
+        close();
       }
-      catch (final ClassNotFoundException | IllegalAccessException | InvocationTargetException | IOException | NoSuchMethodException e) {
+      catch (final IOException e) {
         throw new IllegalStateException(e);
       }
     }
-  }
-
-  private boolean isFingerprintCompatible(final ClassLoader classLoader) throws ClassNotFoundException, IllegalAccessException, InvocationTargetException, NoSuchMethodException {
-    if (skipFingerprint) {
-      if (logger.isLoggable(Level.FINE))
-        logger.fine("Allowing integration with \"" + pluginManifest.name + "\" due to \"-D" + SKIP_FINGERPRINT + "=true\"");
-
-      return true;
-    }
-
-    final Class<?> libraryFingerprintClass = isoClassLoader.loadClass("io.opentracing.contrib.specialagent.LibraryFingerprint");
-    final Method fromFileMethod = libraryFingerprintClass.getDeclaredMethod("fromFile", URL.class);
-    final Object fingerprint = fromFileMethod.invoke(null, pluginManifest.getFingerprint());
-    if (fingerprint != null) {
-      final Method isCompatibleMethod = libraryFingerprintClass.getDeclaredMethod("isCompatible", ClassLoader.class);
-      final List<?> errors = (List<?>)isCompatibleMethod.invoke(fingerprint, classLoader);
-      if (errors != null) {
-        if (logger.isLoggable(Level.FINE))
-          logger.fine("Disallowing integration with \"" + pluginManifest.name + "\" due to \"" + UtilConstants.FINGERPRINT_FILE + " mismatch\" errors:\n" + AssembleUtil.toIndentedString(errors) + "\nin:\n" + AssembleUtil.toIndentedString(getURLs()));
-
-        return false;
-      }
-
-      if (logger.isLoggable(Level.FINE))
-        logger.fine("Allowing integration with \"" + pluginManifest.name + "\" due to \"" + UtilConstants.FINGERPRINT_FILE + " match\" for:\n" + AssembleUtil.toIndentedString(getURLs()));
-
-      return true;
-    }
-
-    if (logger.isLoggable(Level.FINE))
-      logger.fine("Allowing integration with \"" + pluginManifest.name + "\" due to \"" + UtilConstants.FINGERPRINT_FILE + " not found\"\nin:\n" + AssembleUtil.toIndentedString(getURLs()));
 
-    return true;
+    compatibility.put(classLoader, compatible);
+    return compatible;
   }
 
   @Override
@@ -23,8 +23,8 @@ import java.lang.instrument.Instrumentation;
 import java.lang.reflect.InvocationTargetException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -33,6 +33,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.JarFile;
 import java.util.regex.Pattern;
 
@@ -51,12 +52,14 @@ public class SpecialAgent {
   }
 
   private static final Logger logger = Logger.getLogger(SpecialAgent.class);
-  private static final String DEFINE_CLASS = ClassLoader.class.getName() + ".defineClass";
   private static final PluginManifest.Directory pluginManifestDirectory = new PluginManifest.Directory();
   private static final ClassLoaderMap<List<RuleClassLoader>> classLoaderToRuleClassLoader = new ClassLoaderMap<>();
+  private static final ClassLoaderMap<ConcurrentHashMap<String,RuleClassLoader>> classLoaderToClassIndex = new ClassLoaderMap<>();
   private static final HashMap<File,File[]> pluginFileToDependencies = new HashMap<>();
+  private static final HashMap<File,PluginIndex.Entry> pluginFileToIndexEntry = new HashMap<>();
 
   private static PluginsClassLoader pluginsClassLoader;
+  private static CompatibilityChecker compatibilityChecker;
   public static IsoClassLoader isoClassLoader;
 
   // FIXME: ByteBuddy is now the only Instrumenter. Should this complexity be removed?
@@ -160,7 +163,7 @@ public class SpecialAgent {
     BootLoaderAgent.premain(inst, null);
 
     // Third, load the `AgentRule` class, in order to load
-    // `AgentRule.isThreadInstrumentable`, so that the lineage of threads can
+    // `AgentRule.threadState`, so that the lineage of threads can
     // be captured as early in the VM's lifecycle as possible.
     AgentRule.$Access.load();
 
@@ -215,12 +218,7 @@ public class SpecialAgent {
 
       @Override
       public File get() {
-        try {
-          return destDir == null ? destDir = Files.createTempDirectory("opentracing-specialagent").toFile() : destDir;
-        }
-        catch (final IOException e) {
-          throw new IllegalStateException(e);
-        }
+        return destDir == null ? destDir = SpecialAgentUtil.getCacheDir() : destDir;
       }
     };
 
@@ -252,11 +250,9 @@ public class SpecialAgent {
       SpecialAgent.isoClassLoader = new IsoClassLoader(isoUrls.toArray(new URL[isoUrls.size()]), ClassLoader.getSystemClassLoader());
 
       // Process the plugin JARs from AssembleUtil#META_INF_PLUGIN_PATH
-      final Predicate<File> loadPluginPredicate = new Predicate<File>() {
+      final BiPredicate<File,PluginManifest> loadPlugin = new BiPredicate<File,PluginManifest>() {
         @Override
-        public boolean test(final File file) {
-          // Then, identify whether the JAR is an Integration Rule or Trace Exporter
-          final PluginManifest pluginManifest = PluginManifest.getPluginManifest(file);
+        public boolean test(final File file, final PluginManifest pluginManifest) {
           boolean enablePlugin = true;
           if (pluginManifest != null) {
             final boolean isIntegration = pluginManifest.type == PluginManifest.Type.INSTRUMENTATION;
@@ -294,10 +290,24 @@ public class SpecialAgent {
       // First, load all plugins explicitly included with the `-Dsa.classpath=...` system property.
       if (classPaths != null)
         for (final File classPath : classPaths)
-          loadPluginPredicate.test(classPath);
+          loadPlugin.test(classPath, PluginManifest.getPluginManifest(classPath));
+
+      // Then, load the plugins inside the SpecialAgent JAR, using the index computed at assembly time, if present.
+      final PluginIndex pluginIndex = SpecialAgentUtil.readPluginIndex();
+      SpecialAgentUtil.findJarResources(UtilConstants.META_INF_PLUGIN_PATH, destDir, new Predicate<File>() {
+        @Override
+        public boolean test(final File file) {
+          final PluginIndex.Entry entry = pluginIndex == null ? null : pluginIndex.get(file.getName());
+          if (entry == null)
+            return loadPlugin.test(file, PluginManifest.getPluginManifest(file));
+
+          if (!loadPlugin.test(file, entry.toPluginManifest(file)))
+            return false;
 
-      // Then, load the plugins inside the SpecialAgent JAR.
-      SpecialAgentUtil.findJarResources(UtilConstants.META_INF_PLUGIN_PATH, destDir, loadPluginPredicate);
+          pluginFileToIndexEntry.put(file.getAbsoluteFile(), entry);
+          return true;
+        }
+      });
 
       if (pluginManifestDirectory.size() == 0)
         logger.warning("No JARs were found under " + UtilConstants.META_INF_PLUGIN_PATH + ", and ruleFiles == null");
@@ -319,14 +329,72 @@ public class SpecialAgent {
     pluginsClassLoader = new PluginsClassLoader(pluginManifestDirectory.keySet());
 
     final HashMap<String,String> nameToVersion = new HashMap<>();
-    final int count = loadDependencies(pluginsClassLoader, nameToVersion) + loadDependencies(ClassLoader.getSystemClassLoader(), nameToVersion);
+    int count = loadIndexedDependencies(nameToVersion);
+    // Only scan the pluginsClassLoader if it has plugin JARs that are not in the index
+    if (pluginFileToIndexEntry.size() < pluginManifestDirectory.size())
+      count += loadDependencies(pluginsClassLoader, nameToVersion);
+
+    count += loadDependencies(ClassLoader.getSystemClassLoader(), nameToVersion);
     if (count == 0)
       logger.log(Level.SEVERE, "Could not find " + DEPENDENCIES_TGF + " in any rule JARs");
 
+    final ArrayList<PluginManifest> rulePluginManifests = new ArrayList<>();
+    for (final File pluginFile : pluginFileToDependencies.keySet()) {
+      final PluginManifest pluginManifest = pluginManifestDirectory.get(pluginFile);
+      if (pluginManifest != null)
+        rulePluginManifests.add(pluginManifest);
+    }
+
+    compatibilityChecker = new CompatibilityChecker(SpecialAgent.isoClassLoader, rulePluginManifests);
+
     final Event[] events = SpecialAgentUtil.digestEventsProperty(System.getProperty(LOG_EVENTS_PROPERTY));
     loadRules(manager, events);
   }
 
+  /**
+   * Cross-links the dependency references with the matching rule JARs, as
+   * computed from dependencies.tgf files at assembly time.
+   *
+   * @param nameToVersion The map of plugin name to version to be filled by this
+   *          method.
+   * @return The number of rule JARs for which dependencies were registered.
+   */
+  private static int loadIndexedDependencies(final Map<String,String> nameToVersion) {
+    int count = 0;
+    for (final Map.Entry<File,PluginIndex.Entry> entry : pluginFileToIndexEntry.entrySet()) {
+      final File jarFile = entry.getKey();
+      final String[] dependencies = entry.getValue().getDependencies();
+      final PluginManifest pluginManifest = pluginManifestDirectory.get(jarFile);
+      if (dependencies == null || pluginManifest == null)
+        continue;
+
+      final String version = entry.getValue().getVersion();
+      final String exists = nameToVersion.get(pluginManifest.name);
+      if (exists != null && !exists.equals(version))
+        throw new IllegalStateException("Illegal attempt to overwrite previously defined version for: " + pluginManifest.name);
+
+      nameToVersion.put(pluginManifest.name, version);
+
+      // Select the dependency files in the order of the pluginsClassLoader classpath, as MavenUtil#filterRuleURLs does
+      final HashSet<String> fileNames = new HashSet<>(Arrays.asList(dependencies));
+      final ArrayList<File> dependencyFiles = new ArrayList<>(dependencies.length);
+      for (final File file : pluginsClassLoader.getFiles())
+        if (file.isFile() && fileNames.contains(file.getName()))
+          dependencyFiles.add(file);
+
+      if (!dependencyFiles.contains(jarFile))
+        throw new IllegalStateException("Could not find a rule JAR referenced in " + jarFile + DEPENDENCIES_TGF + " from: \n" + AssembleUtil.toIndentedString(dependencyFiles));
+
+      if (logger.isLoggable(Level.FINEST))
+        logger.finest("Registering indexed dependencies for " + jarFile + ":\n" + AssembleUtil.toIndentedString(dependencyFiles));
+
+      ++count;
+      pluginFileToDependencies.put(jarFile, dependencyFiles.toArray(new File[dependencyFiles.size()]));
+    }
+
+    return count;
+  }
+
   /**
    * Loads all dependencies.tgf files, and cross-links the dependency references
    * with the matching rule JARs.
@@ -349,6 +417,8 @@ public class SpecialAgent {
         logger.finest("Found " + DEPENDENCIES_TGF + ": <" + AssembleUtil.getNameId(url) + ">" + url);
 
       final File jarFile = AssembleUtil.getSourceLocation(url, DEPENDENCIES_TGF);
+      if (pluginFileToIndexEntry.containsKey(jarFile))
+        continue;
 
       final String dependenciesTgf = new String(AssembleUtil.readBytes(url));
       final String firstLine = dependenciesTgf.substring(0, dependenciesTgf.indexOf('\n'));
@@ -448,7 +518,7 @@ public class SpecialAgent {
           }
         }, classNameToName);
 
-        final int noDeferrers = manager.scanRules(inst, pluginsClassLoader, pluginManifestDirectory, integrationRules, classNameToName);
+        final int noDeferrers = manager.scanRules(inst, pluginsClassLoader, pluginManifestDirectory, pluginFileToIndexEntry, integrationRules, classNameToName);
         loadAdapter(tracerExcludedClasses, integrationRules);
         if (tracerExcludedClasses.size() == 0)
           logger.warning("No adapter was loaded!");
@@ -556,7 +626,7 @@ public class SpecialAgent {
       logger.finest("[" + pluginManifest.name + "] new " + RuleClassLoader.class.getSimpleName() + "([\n" + AssembleUtil.toIndentedString(pluginDependencyFiles) + "]\n, " + AssembleUtil.getNameId(classLoader) + ");");
 
     // Create an isolated (no parent class loader) URLClassLoader with the pluginDependencyFiles
-    final RuleClassLoader ruleClassLoader = new RuleClassLoader(pluginManifest, isoClassLoader, classLoader, pluginDependencyFiles);
+    final RuleClassLoader ruleClassLoader = new RuleClassLoader(pluginManifest, compatibilityChecker, classLoader, pluginDependencyFiles);
     compatible = ruleClassLoader.isCompatible(classLoader);
     classLoaderToCompatibility.put(classLoader, compatible);
     if (!compatible) {
@@ -618,16 +688,25 @@ public class SpecialAgent {
       }
     }
 
+    // If injection is lazy, register the class names of the RuleClassLoader
+    // with the target class loader, from which the classes are defined on
+    // demand by ClassLoaderAgent.LoadClass
+    if (RuleClassLoader.lazyInject) {
+      if (logger.isLoggable(Level.FINER))
+        logger.finer("[" + pluginManifest.name + "] Injection of integration classes on demand");
+
+      registerClassIndex(classLoader, ruleClassLoader);
+      return true;
+    }
+
     // If the callstack is coming from ClassLoader#defineClass, defer injection of
     // classes, as injection from ClassLoader#defineClass may lead to LinkageError
     // (duplicate class definition), or a ClassCircularityError.
-    for (final StackTraceElement stackTraceElement : Thread.currentThread().getStackTrace()) {
-      if (DEFINE_CLASS.equals(stackTraceElement.getClassName() + "." + stackTraceElement.getMethodName())) {
-        if (logger.isLoggable(Level.FINER))
-          logger.finer("[" + pluginManifest.name + "] Injection of integration classes deferred");
+    if (ClassLoaderAgent.DefineClass.isDefining()) {
+      if (logger.isLoggable(Level.FINER))
+        logger.finer("[" + pluginManifest.name + "] Injection of integration classes deferred");
 
-        return true;
-      }
+      return true;
     }
 
     // Otherwise, inject the classes immediately.
@@ -638,6 +717,32 @@ public class SpecialAgent {
     return true;
   }
 
+  /**
+   * Registers the class resource paths of the specified
+   * {@link RuleClassLoader} in the index of the specified target
+   * {@link ClassLoader}, which is used by
+   * {@link #findClass(ClassLoader,String)} to locate the
+   * {@link RuleClassLoader} of a class with a single lookup when injection is
+   * lazy. If a class resource path is already registered, the
+   * {@link RuleClassLoader} that registered it first is retained.
+   *
+   * @param classLoader The target {@code ClassLoader}.
+   * @param ruleClassLoader The {@link RuleClassLoader} to register.
+   */
+  private static void registerClassIndex(final ClassLoader classLoader, final RuleClassLoader ruleClassLoader) {
+    ConcurrentHashMap<String,RuleClassLoader> classIndex = classLoaderToClassIndex.get(classLoader);
+    if (classIndex == null) {
+      synchronized (classLoaderToClassIndex) {
+        classIndex = classLoaderToClassIndex.get(classLoader);
+        if (classIndex == null)
+          classLoaderToClassIndex.put(classLoader, classIndex = new ConcurrentHashMap<>());
+      }
+    }
+
+    for (final String classResource : ruleClassLoader.getClassResources())
+      classIndex.putIfAbsent(classResource, ruleClassLoader);
+  }
+
   /**
    * Invoke the specified arguments applied to the provided {@link QuadFunction
    * function}. The contract of this method is as follows:
@@ -713,6 +818,9 @@ public class SpecialAgent {
    * @param classLoader The target {@code ClassLoader} of the injection.
    */
   public static void inject(final ClassLoader classLoader) {
+    if (RuleClassLoader.lazyInject)
+      return;
+
     if (logger.isLoggable(Level.FINEST))
       logger.finest(">>>>>>>> inject(" + AssembleUtil.getNameId(classLoader) + ")");
 
@@ -741,12 +849,11 @@ public class SpecialAgent {
           continue;
         }
 
-        final URL resourceUrl = ruleClassLoader.getResource(resourceName);
-        if (resourceUrl == null)
+        // Return the resource's bytes
+        final byte[] bytecode = ruleClassLoader.getClassBytes(resourceName);
+        if (bytecode == null)
           continue;
 
-        // Return the resource's bytes
-        final byte[] bytecode = AssembleUtil.readBytes(resourceUrl);
         if (logger.isLoggable(Level.FINEST))
           logger.finest(">>>>>>>> findClass(" + AssembleUtil.getNameId(targetLoader) + ", \"" + name + "\"): BYTECODE " + (bytecode != null ? "!" : "=") + "= null");
 
@@ -769,7 +876,9 @@ public class SpecialAgent {
    * locate the bytecode for the requested {@code Class} in the inheritance
    * chain of parent class loaders starting with the provided {@link ClassLoader
    * classLoader}, or if it has already been called for {@code classLoader} and
-   * {@code name}.
+   * {@code name}. If injection is lazy, the {@link RuleClassLoader} of the
+   * class is found in the index registered for {@code classLoader} or its
+   * parents when the rule was linked.
    *
    * @param classLoader The {@code ClassLoader} to match to a
    *          {@link RuleClassLoader} that contains Integration classes intended
@@ -780,7 +889,29 @@ public class SpecialAgent {
    *         {@code classLoader} and {@code name}.
    */
   public static byte[] findClass(final ClassLoader classLoader, final String name) {
-    return invoke(name, classLoader, findClass);
+    if (!RuleClassLoader.lazyInject)
+      return invoke(name, classLoader, findClass);
+
+    final String resourceName = AssembleUtil.classNameToResource(name);
+    for (ClassLoader contextLoader = classLoader; contextLoader != null; contextLoader = contextLoader.getParent()) {
+      final Map<String,RuleClassLoader> classIndex = classLoaderToClassIndex.get(contextLoader);
+      if (classIndex == null)
+        continue;
+
+      final RuleClassLoader ruleClassLoader = classIndex.get(resourceName);
+      if (ruleClassLoader == null)
+        continue;
+
+      final byte[] bytecode = ruleClassLoader.getClassBytes(resourceName);
+      if (bytecode != null) {
+        if (logger.isLoggable(Level.FINEST))
+          logger.finest(">>>>>>>> findClass(" + AssembleUtil.getNameId(classLoader) + ", \"" + name + "\"): BYTECODE from index of " + AssembleUtil.getNameId(contextLoader));
+
+        return bytecode;
+      }
+    }
+
+    return null;
   }
 
   /**
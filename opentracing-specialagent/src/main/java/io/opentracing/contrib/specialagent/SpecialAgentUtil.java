@@ -15,33 +15,55 @@
 
 package io.opentracing.contrib.specialagent;
 
+import static io.opentracing.contrib.specialagent.Constants.*;
+
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.lang.management.ManagementFactory;
 import java.net.JarURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
 import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 
 /**
@@ -286,12 +308,131 @@ public final class SpecialAgentUtil {
   }
 
   /**
-   * Fills the specified {@code fileToPluginManifest} map with JAR files having
-   * a prefix path that match {@code path}, and the associated
-   * {@link PluginManifest}.
+   * The time after which a sub-directory of the extraction cache that has not
+   * been used is deleted.
+   */
+  private static final long CACHE_EXPIRY = TimeUnit.DAYS.toMillis(30);
+
+  /**
+   * Returns the root directory of the extraction cache, as specified by the
+   * {@code -Dsa.cache.dir} system property, or
+   * {@code ${java.io.tmpdir}/opentracing-specialagent-${user.name}} by default.
+   * The directory is created with permissions that restrict access to the
+   * current user. If the directory cannot be created, is not owned by the
+   * current user, or is writable by other users, this method returns a
+   * temporary directory that is deleted on shutdown, because the JARs in the
+   * cache are loaded by the agent without being extracted again.
+   *
+   * @return The root directory of the extraction cache.
+   * @throws IllegalStateException If an illegal state occurs due to an
+   *           {@link IOException}.
+   */
+  static File getCacheDir() {
+    final String cacheDir = System.getProperty(CACHE_DIR_PROPERTY);
+    final File dir = cacheDir != null ? new File(cacheDir) : new File(System.getProperty("java.io.tmpdir"), "opentracing-specialagent-" + System.getProperty("user.name"));
+    if (isPrivateDir(dir.toPath()))
+      return dir;
+
+    logger.warning("Cache dir " + dir.getAbsolutePath() + " is not private to user " + System.getProperty("user.name") + ", falling back to temporary dir");
+    try {
+      final File tempDir = Files.createTempDirectory("opentracing-specialagent").toFile();
+      deleteOnShutdown(tempDir);
+      return tempDir;
+    }
+    catch (final IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Tests whether the specified path is a directory that is owned by the
+   * current user, and is not writable by other users. If the directory does
+   * not exist, it is created with permissions that restrict access to the
+   * current user.
+   *
+   * @param dir The path of the directory.
+   * @return {@code true} if the specified path is a directory that is owned by
+   *         the current user, and is not writable by other users, otherwise
+   *         {@code false}.
+   */
+  static boolean isPrivateDir(final Path dir) {
+    try {
+      final boolean posix = dir.getFileSystem().supportedFileAttributeViews().contains("posix");
+      if (!Files.exists(dir, LinkOption.NOFOLLOW_LINKS)) {
+        try {
+          if (posix)
+            Files.createDirectories(dir, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+          else
+            Files.createDirectories(dir);
+        }
+        catch (final FileAlreadyExistsException e) {
+          // Created concurrently, and verified below
+        }
+      }
+
+      if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS) || !Files.isWritable(dir))
+        return false;
+
+      final UserPrincipal user = dir.getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName(System.getProperty("user.name"));
+      if (!user.equals(Files.getOwner(dir, LinkOption.NOFOLLOW_LINKS)))
+        return false;
+
+      if (!posix)
+        return true;
+
+      final Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(dir, LinkOption.NOFOLLOW_LINKS);
+      return !permissions.contains(PosixFilePermission.GROUP_WRITE) && !permissions.contains(PosixFilePermission.OTHERS_WRITE);
+    }
+    catch (final IOException | UnsupportedOperationException e) {
+      if (logger.isLoggable(Level.FINE))
+        logger.log(Level.FINE, "Unable to verify cache dir " + dir, e);
+
+      return false;
+    }
+  }
+
+  /**
+   * Returns the {@link PluginIndex} that was computed for the plugin JARs at
+   * assembly time, or {@code null} if the index is not present or cannot be
+   * read.
+   *
+   * @return The {@link PluginIndex} that was computed for the plugin JARs at
+   *         assembly time, or {@code null} if the index is not present or
+   *         cannot be read.
+   */
+  static PluginIndex readPluginIndex() {
+    final URL url = ClassLoader.getSystemClassLoader().getResource(UtilConstants.META_INF_PLUGIN_INDEX);
+    if (url == null)
+      return null;
+
+    try {
+      return PluginIndex.read(url);
+    }
+    catch (final IOException e) {
+      logger.log(Level.WARNING, "Unable to read " + url + ", falling back to scanning plugin JARs", e);
+      return null;
+    }
+  }
+
+  /**
+   * Calls the specified {@code callback} with each JAR file having a prefix
+   * path that matches {@code path}.
    * <p>
-   * This method will add a shutdown hook to delete any temporary directory and
-   * file resources it created.
+   * The JAR files are extracted into a sub-directory of {@code destDir} that is
+   * named after the digest of the names, CRCs and sizes of the matched
+   * entries. If this sub-directory already exists, and the sizes and CRCs of
+   * the JAR files it contains match those of the entries, the JAR files are
+   * reused without being extracted again. Otherwise, the JAR files are
+   * extracted into a sibling temporary directory that is atomically renamed to
+   * the digest name upon completion, so that concurrent JVMs on one host can
+   * safely share the cache. A JVM holds a shared lock on a sibling
+   * {@code .lock} file of each sub-directory it uses for as long as it runs.
+   * Sub-directories that have not been used for 30 days are deleted, unless
+   * their lock is held by a running JVM.
+   * <p>
+   * If {@code destDir} is a temporary directory, JAR files for which the
+   * {@code callback} returns {@code false} are deleted. JAR files in the cache
+   * are retained, because they may be used by other JVMs.
    *
    * @param path The prefix path to match when finding resources.
    * @param destDir Callback that supplies the destDir.
@@ -299,7 +440,7 @@ public final class SpecialAgentUtil {
    * @throws IllegalStateException If an illegal state occurs due to an
    *           {@link IOException}.
    */
-  static void findJarResources(final String path, final Supplier<File> destDir, Predicate<File> callback) {
+  static void findJarResources(final String path, final Supplier<File> destDir, final Predicate<File> callback) {
     try {
       final Enumeration<URL> resources = ClassLoader.getSystemClassLoader().getResources(path);
       if (!resources.hasMoreElements())
@@ -332,36 +473,198 @@ public final class SpecialAgentUtil {
         final JarURLConnection jarURLConnection = (JarURLConnection)connection;
         jarURLConnection.setUseCaches(false);
         final JarFile jarFile = jarURLConnection.getJarFile();
-        final Enumeration<JarEntry> jarEntries = jarFile.entries();
-        while (jarEntries.hasMoreElements()) {
-          final String jarEntry = jarEntries.nextElement().getName();
-          if (jarEntry.length() <= path.length() || !jarEntry.startsWith(path))
+        final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        final Map<String,JarEntry> jarEntryToSize = new LinkedHashMap<>();
+        final Enumeration<JarEntry> enumeration = jarFile.entries();
+        while (enumeration.hasMoreElements()) {
+          final JarEntry jarEntry = enumeration.nextElement();
+          final String name = jarEntry.getName();
+          if (jarEntry.isDirectory() || name.length() <= path.length() || !name.startsWith(path) || !name.endsWith(".jar"))
             continue;
 
-          final int slash = jarEntry.lastIndexOf('/');
-          final String jarFileName = jarEntry.substring(slash + 1);
+          jarEntryToSize.put(name, jarEntry);
+          digest.update(name.getBytes(StandardCharsets.UTF_8));
+          digest.update(ByteBuffer.allocate(16).putLong(jarEntry.getCrc()).putLong(jarEntry.getSize()).array());
+        }
 
-          // First, extract the JAR into a temp dir
-          final File subDir = new File(outDir, jarEntry.substring(0, slash));
-          subDir.mkdirs();
-          final File file = new File(subDir, jarFileName);
-          if (!file.isDirectory() && !file.getName().endsWith(".jar"))
-            continue;
+        if (jarEntryToSize.size() == 0)
+          continue;
+
+        final File cacheDir = new File(outDir, toHexString(digest.digest()));
+        final boolean temporary = deleteDirs != null && deleteDirs.contains(outDir);
+        if (!temporary)
+          lockShared(cacheDir);
 
-          final URL jarUrl = new URL(resource, jarEntry.substring(path.length()));
-          Files.copy(jarUrl.openStream(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        if (isExtracted(cacheDir, jarEntryToSize)) {
+          cacheDir.setLastModified(System.currentTimeMillis());
+          if (logger.isLoggable(Level.FINE))
+            logger.fine("Reusing " + jarEntryToSize.size() + " JARs extracted to " + cacheDir.getAbsolutePath());
+        }
+        else {
+          if (cacheDir.exists()) {
+            logger.warning("Extracting again " + jarEntryToSize.size() + " JARs that do not match the JARs in " + cacheDir.getAbsolutePath());
+            AssembleUtil.recurseDir(cacheDir, deletePredicate);
+          }
 
-          if (!callback.test(file))
+          extractJarEntries(resource, path, jarEntryToSize.keySet(), cacheDir);
+        }
+
+        for (final String jarEntry : jarEntryToSize.keySet()) {
+          final File file = new File(cacheDir, jarEntry);
+          if (!callback.test(file) && temporary)
             file.delete();
         }
+
+        if (!temporary)
+          deleteExpiredDirs(outDir);
       }
       while (resources.hasMoreElements());
+    }
+    catch (final IOException | NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static boolean isExtracted(final File cacheDir, final Map<String,JarEntry> jarEntryToSize) throws IOException {
+    if (!cacheDir.isDirectory())
+      return false;
+
+    for (final Map.Entry<String,JarEntry> entry : jarEntryToSize.entrySet()) {
+      final File file = new File(cacheDir, entry.getKey());
+      if (!file.isFile() || file.length() != entry.getValue().getSize() || getCrc(file) != entry.getValue().getCrc())
+        return false;
+    }
+
+    return true;
+  }
 
-      if (outDir != null)
-        deleteOnShutdown(outDir);
+  private static long getCrc(final File file) throws IOException {
+    final CRC32 crc = new CRC32();
+    final byte[] bytes = new byte[8192];
+    try (final InputStream in = new FileInputStream(file)) {
+      for (int len; (len = in.read(bytes)) != -1; crc.update(bytes, 0, len));
+    }
+
+    return crc.getValue();
+  }
+
+  /**
+   * The channels of the lock files of the cache sub-directories that are used
+   * by this JVM, which hold a shared lock until the JVM exits.
+   */
+  private static final List<FileChannel> lockChannels = new ArrayList<>();
+
+  private static File getLockFile(final File cacheDir) {
+    return new File(cacheDir.getParentFile(), cacheDir.getName() + ".lock");
+  }
+
+  /**
+   * Acquires a shared lock on the lock file of the specified cache
+   * sub-directory, which is held until this JVM exits, so that the
+   * sub-directory is not deleted as expired by another JVM while it is used.
+   * If the sub-directory is being deleted by another JVM, this method blocks
+   * until the deletion is complete.
+   *
+   * @param cacheDir The cache sub-directory.
+   */
+  private static void lockShared(final File cacheDir) {
+    FileChannel channel = null;
+    try {
+      channel = new RandomAccessFile(getLockFile(cacheDir), "rw").getChannel();
+      channel.lock(0, Long.MAX_VALUE, true);
+      synchronized (lockChannels) {
+        lockChannels.add(channel);
+      }
     }
     catch (final IOException e) {
-      throw new IllegalStateException(e);
+      close(channel);
+      logger.log(Level.WARNING, "Unable to lock cache dir " + cacheDir.getAbsolutePath() + ": " + e.getMessage(), e);
+    }
+    catch (final OverlappingFileLockException e) {
+      // The lock is already held by this JVM
+      close(channel);
+    }
+  }
+
+  private static void close(final FileChannel channel) {
+    if (channel == null)
+      return;
+
+    try {
+      channel.close();
+    }
+    catch (final IOException e) {
+    }
+  }
+
+  private static void deleteExpiredDirs(final File outDir) {
+    final File[] dirs = outDir.listFiles();
+    if (dirs == null)
+      return;
+
+    final long expiry = System.currentTimeMillis() - CACHE_EXPIRY;
+    for (final File dir : dirs) {
+      if (!dir.isDirectory() || dir.lastModified() >= expiry)
+        continue;
+
+      // Skip dirs that are locked by a running JVM, including this one
+      try (final FileChannel channel = new RandomAccessFile(getLockFile(dir), "rw").getChannel()) {
+        final FileLock lock = channel.tryLock();
+        if (lock == null)
+          continue;
+
+        if (logger.isLoggable(Level.FINE))
+          logger.fine("Deleting expired cache dir " + dir.getAbsolutePath());
+
+        AssembleUtil.recurseDir(dir, deletePredicate);
+        lock.release();
+      }
+      catch (final IOException | OverlappingFileLockException e) {
+        if (logger.isLoggable(Level.FINE))
+          logger.fine("Skipping cache dir " + dir.getAbsolutePath() + " that is in use: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Returns the lowercase hexadecimal representation of the specified bytes.
+   *
+   * @param bytes The bytes.
+   * @return The lowercase hexadecimal representation of the specified bytes.
+   */
+  static String toHexString(final byte[] bytes) {
+    final StringBuilder builder = new StringBuilder(bytes.length * 2);
+    for (final byte b : bytes)
+      builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+
+    return builder.toString();
+  }
+
+  private static void extractJarEntries(final URL resource, final String path, final Collection<String> jarEntries, final File cacheDir) throws IOException {
+    final File tempDir = Files.createTempDirectory(cacheDir.getParentFile().toPath(), cacheDir.getName() + ".").toFile();
+    try {
+      for (final String jarEntry : jarEntries) {
+        final File file = new File(tempDir, jarEntry);
+        file.getParentFile().mkdirs();
+        try (final InputStream in = new URL(resource, jarEntry.substring(path.length())).openStream()) {
+          Files.copy(in, file.toPath());
+        }
+      }
+
+      try {
+        Files.move(tempDir.toPath(), cacheDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        if (logger.isLoggable(Level.FINE))
+          logger.fine("Extracted " + jarEntries.size() + " JARs to " + cacheDir.getAbsolutePath());
+      }
+      catch (final FileSystemException e) {
+        // Another JVM may have populated the cache concurrently
+        if (!cacheDir.isDirectory())
+          throw e;
+      }
+    }
+    finally {
+      if (tempDir.exists())
+        AssembleUtil.recurseDir(tempDir, deletePredicate);
     }
   }
 
@@ -18,6 +18,10 @@ package io.opentracing.contrib.specialagent;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -117,6 +121,34 @@ public class SpecialAgentUtilTest {
     assertNull(events[Event.IGNORED.ordinal()]);
   }
 
+  @Test
+  public void testPrivateDir() throws IOException {
+    final Path parent = Files.createTempDirectory("specialagent");
+    final Path dir = parent.resolve("cache");
+    try {
+      assertTrue(SpecialAgentUtil.isPrivateDir(dir));
+      assertTrue(Files.isDirectory(dir));
+      if (!dir.getFileSystem().supportedFileAttributeViews().contains("posix"))
+        return;
+
+      assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(dir)));
+      Files.setPosixFilePermissions(dir, PosixFilePermissions.fromString("rwxrwxrwx"));
+      assertFalse(SpecialAgentUtil.isPrivateDir(dir));
+
+      final Path link = Files.createSymbolicLink(parent.resolve("link"), parent);
+      assertFalse(SpecialAgentUtil.isPrivateDir(link));
+    }
+    finally {
+      Files.deleteIfExists(parent.resolve("link"));
+      AssembleUtil.recurseDir(parent.toFile(), new Predicate<File>() {
+        @Override
+        public boolean test(final File t) {
+          return t.delete();
+        }
+      });
+    }
+  }
+
   @Test
   public void testEnumeration() {
     final String[] a = new String[] {"a", "b", "c"};
@@ -35,10 +35,11 @@ import io.opentracing.util.GlobalTracer;
 
 public class AkkaAgentIntercept {
   static final String COMPONENT_NAME = "java-akka";
+  static final int COMPONENT_ID = LocalSpanContext.register(COMPONENT_NAME);
 
   public static Object aroundReceiveStart(final Object thiz, final Object message) {
-    if (!(message instanceof TracedMessage) && LocalSpanContext.get(COMPONENT_NAME) != null) {
-      LocalSpanContext.get(COMPONENT_NAME).increment();
+    if (!(message instanceof TracedMessage) && LocalSpanContext.get(COMPONENT_ID) != null) {
+      LocalSpanContext.get(COMPONENT_ID).increment();
       return message;
     }
 
@@ -61,13 +62,13 @@ public class AkkaAgentIntercept {
     final Span span = spanBuilder.start();
     final Scope scope = tracer.activateSpan(span);
 
-    LocalSpanContext.set(COMPONENT_NAME, span, scope);
+    LocalSpanContext.set(COMPONENT_ID, span, scope);
 
     return tracedMessage != null ? tracedMessage.getMessage() : message;
   }
 
   public static void aroundReceiveEnd(final Throwable thrown) {
-    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_NAME);
+    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_ID);
     if (context == null || context.decrementAndGet() != 0)
       return;
 
@@ -114,7 +115,7 @@ public class AkkaAgentIntercept {
     tracer.inject(span.context(), Format.Builtin.TEXT_MAP_INJECT, headers::put);
 
     final Scope scope = tracer.activateSpan(span);
-    LocalSpanContext.set(COMPONENT_NAME, span, scope);
+    LocalSpanContext.set(COMPONENT_ID, span, scope);
 
     return new TracedMessage<>(message, headers);
   }
@@ -123,7 +124,7 @@ public class AkkaAgentIntercept {
     if (sender instanceof PromiseActorRef || arg0 instanceof PromiseActorRef || !(message instanceof TracedMessage))
       return;
 
-    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_NAME);
+    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_ID);
     if (context == null)
       return;
 
@@ -0,0 +1,56 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent.rule.concurrent;
+
+import static net.bytebuddy.matcher.ElementMatchers.*;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinTask;
+
+import io.opentracing.contrib.specialagent.AgentRule;
+import net.bytebuddy.agent.builder.AgentBuilder;
+import net.bytebuddy.agent.builder.AgentBuilder.Transformer;
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.DynamicType.Builder;
+import net.bytebuddy.utility.JavaModule;
+
+/**
+ * Propagates the active span to the asynchronous dependent stages of a
+ * {@code CompletableFuture}, such as {@code thenApplyAsync}. Such a stage is
+ * executed when its source completes, possibly by another thread, so the span
+ * is associated with the stage when the stage is created with an executor.
+ * The stages of {@code supplyAsync} and {@code runAsync} are executed when
+ * they are created, and are therefore handled by {@link ExecutorAgentRule}.
+ */
+public class CompletableFutureAgentRule extends AgentRule {
+  @Override
+  public AgentBuilder buildAgentChainedGlobal1(final AgentBuilder builder) {
+    return builder
+      .type(named("java.util.concurrent.CompletableFuture$UniCompletion"))
+      .transform(new Transformer() {
+        @Override
+        public Builder<?> transform(final Builder<?> builder, final TypeDescription typeDescription, final ClassLoader classLoader, final JavaModule module) {
+          return builder.visit(advice(typeDescription).to(CompletableFutureAgentRule.class).on(isConstructor().and(takesArgument(0, Executor.class))));
+        }});
+  }
+
+  @Advice.OnMethodExit
+  public static void exit(final @ClassName String className, final @Advice.Origin String origin, final @Advice.This ForkJoinTask<?> thiz, final @Advice.Argument(value = 0) Executor executor) {
+    if (executor != null && isAllowed(className, origin))
+      ForkJoinTaskAgentIntercept.capture(thiz);
+  }
+}
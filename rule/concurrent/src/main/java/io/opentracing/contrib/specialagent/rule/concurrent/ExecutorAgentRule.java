@@ -18,10 +18,10 @@ package io.opentracing.contrib.specialagent.rule.concurrent;
 import static net.bytebuddy.matcher.ElementMatchers.*;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinTask;
 
 import io.opentracing.Span;
 import io.opentracing.Tracer;
-import io.opentracing.contrib.common.WrapperProxy;
 import io.opentracing.contrib.specialagent.AgentRule;
 import io.opentracing.tag.Tags;
 import io.opentracing.util.GlobalTracer;
@@ -48,7 +48,7 @@ public class ExecutorAgentRule extends AgentRule {
   }
 
   @Advice.OnMethodEnter
-  public static void exit(final @ClassName String className, final @Advice.Origin String origin, @Advice.Argument(value = 0, readOnly = false, typing = Typing.DYNAMIC) Runnable arg) throws Exception {
+  public static void exit(final @ClassName String className, final @Advice.Origin String origin, final @Advice.This Object thiz, @Advice.Argument(value = 0, readOnly = false, typing = Typing.DYNAMIC) Runnable arg) throws Exception {
     if (!isAllowed(className, origin))
       return;
 
@@ -58,11 +58,15 @@ public class ExecutorAgentRule extends AgentRule {
         .buildSpan("execute")
         .withTag(Tags.COMPONENT, "java-concurrent")
         .start();
-      arg = WrapperProxy.wrap(arg, new TracedRunnable(arg, span, true));
+      arg = arg instanceof ForkJoinTask ? ForkJoinTaskAgentIntercept.execute(thiz, arg, span, true) : TracedRunnable.wrap(thiz, arg, span, true);
       span.finish();
     }
-    else if (tracer.activeSpan() != null) {
-      arg = WrapperProxy.wrap(arg, new TracedRunnable(arg, tracer.activeSpan(), false));
+    else {
+      final Span activeSpan = tracer.activeSpan();
+      if (arg instanceof ForkJoinTask)
+        arg = ForkJoinTaskAgentIntercept.execute(thiz, arg, activeSpan, false);
+      else if (activeSpan != null)
+        arg = TracedRunnable.wrap(thiz, arg, activeSpan, false);
     }
   }
 }
\ No newline at end of file
@@ -22,7 +22,6 @@ import java.util.concurrent.TimeUnit;
 
 import io.opentracing.Span;
 import io.opentracing.Tracer;
-import io.opentracing.contrib.common.WrapperProxy;
 import io.opentracing.contrib.specialagent.AgentRule;
 import io.opentracing.tag.Tags;
 import io.opentracing.util.GlobalTracer;
@@ -49,7 +48,7 @@ public class FixedDelayAgentRule extends AgentRule {
   }
 
   @Advice.OnMethodEnter
-  public static void exit(final @ClassName String className, final @Advice.Origin String origin, @Advice.Argument(value = 0, readOnly = false, typing = Typing.DYNAMIC) Runnable arg) throws Exception {
+  public static void exit(final @ClassName String className, final @Advice.Origin String origin, final @Advice.This Object thiz, @Advice.Argument(value = 0, readOnly = false, typing = Typing.DYNAMIC) Runnable arg) throws Exception {
     if (!isAllowed(className, origin))
       return;
 
@@ -59,11 +58,13 @@ public class FixedDelayAgentRule extends AgentRule {
         .buildSpan("scheduleWithFixedDelay")
         .withTag(Tags.COMPONENT, "java-concurrent")
         .start();
-      arg = WrapperProxy.wrap(arg, new TracedRunnable(arg, span, true));
+      arg = TracedRunnable.wrap(thiz, arg, span, true);
       span.finish();
     }
-    else if (tracer.activeSpan() != null) {
-      arg = WrapperProxy.wrap(arg, new TracedRunnable(arg, tracer.activeSpan(), false));
+    else {
+      final Span activeSpan = tracer.activeSpan();
+      if (activeSpan != null)
+        arg = TracedRunnable.wrap(thiz, arg, activeSpan, false);
     }
   }
 }
\ No newline at end of file
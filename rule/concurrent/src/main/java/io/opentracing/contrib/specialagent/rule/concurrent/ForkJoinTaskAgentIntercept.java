@@ -0,0 +1,113 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent.rule.concurrent;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.contrib.specialagent.AgentRuleUtil;
+import io.opentracing.contrib.specialagent.ConcurrentWeakIdentityHashMap;
+import io.opentracing.util.GlobalTracer;
+
+/**
+ * Propagates the active {@link Span} to {@link ForkJoinTask}s, which are
+ * executed by a {@link ForkJoinPool} without being wrapped. The {@link Span}
+ * that is active when a task is forked or submitted, or when an asynchronous
+ * stage of a {@code CompletableFuture} is created, is associated with the task
+ * itself, and is activated when the task is executed.
+ */
+public class ForkJoinTaskAgentIntercept {
+  public static final ConcurrentMap<ForkJoinTask<?>,Span> taskToSpan;
+
+  static {
+    if (ForkJoinTaskAgentIntercept.class.getClassLoader() == null) {
+      taskToSpan = new ConcurrentWeakIdentityHashMap<>();
+    }
+    else {
+      taskToSpan = AgentRuleUtil.getFieldInBootstrapClass(ForkJoinTaskAgentIntercept.class, "taskToSpan");
+    }
+  }
+
+  /**
+   * Associates the active {@link Span} with the specified task, unless the
+   * task is already associated with a {@link Span}.
+   *
+   * @param task The task.
+   */
+  public static void capture(final ForkJoinTask<?> task) {
+    final Span span = GlobalTracer.get().activeSpan();
+    if (span != null)
+      taskToSpan.putIfAbsent(task, span);
+  }
+
+  /**
+   * Returns the specified task to be executed by the specified executor. A
+   * {@link ForkJoinPool} executes the task directly, so the active
+   * {@link Span} is associated with the task, and is activated when the task
+   * is executed, also in verbose mode. Other executors only run the task, so
+   * the task is wrapped in a {@link TracedRunnable} with the {@link Span} that
+   * is associated with the task, or otherwise the active {@link Span}.
+   *
+   * @param executor The executor.
+   * @param task The task, which is a {@link ForkJoinTask}.
+   * @param activeSpan The active {@link Span}, or {@code null}.
+   * @param verbose Whether a span is created for the execution of the task by
+   *          an executor other than a {@link ForkJoinPool}.
+   * @return The task to be executed by the specified executor.
+   */
+  public static Runnable execute(final Object executor, final Runnable task, final Span activeSpan, final boolean verbose) {
+    if (executor instanceof ForkJoinPool) {
+      if (activeSpan != null)
+        taskToSpan.putIfAbsent((ForkJoinTask<?>)task, activeSpan);
+
+      return task;
+    }
+
+    final Span span = taskToSpan.remove(task);
+    final Span parent = span != null ? span : activeSpan;
+    return parent == null ? task : TracedRunnable.wrap(executor, task, parent, verbose);
+  }
+
+  /**
+   * Activates the {@link Span} that is associated with the specified task, if
+   * it is not already active.
+   *
+   * @param task The task.
+   * @return The {@link Scope} of the activated {@link Span}, or {@code null}
+   *         if no {@link Span} was activated.
+   */
+  public static Object execEnter(final ForkJoinTask<?> task) {
+    // Every ForkJoinTask in the JVM is executed through here, so avoid the lookup when no task is associated with a span
+    if (taskToSpan.isEmpty())
+      return null;
+
+    final Span span = taskToSpan.remove(task);
+    if (span == null)
+      return null;
+
+    final Tracer tracer = GlobalTracer.get();
+    return tracer.activeSpan() == span ? null : tracer.activateSpan(span);
+  }
+
+  public static void execExit(final Object scope) {
+    if (scope != null)
+      ((Scope)scope).close();
+  }
+}
@@ -0,0 +1,78 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent.rule.concurrent;
+
+import static net.bytebuddy.matcher.ElementMatchers.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import io.opentracing.contrib.specialagent.AgentRule;
+import net.bytebuddy.agent.builder.AgentBuilder;
+import net.bytebuddy.agent.builder.AgentBuilder.Transformer;
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.DynamicType.Builder;
+import net.bytebuddy.utility.JavaModule;
+
+public class ForkJoinTaskAgentRule extends AgentRule {
+  @Override
+  public AgentBuilder buildAgentChainedGlobal1(final AgentBuilder builder) {
+    return builder
+      .type(named("java.util.concurrent.ForkJoinTask"))
+      .transform(new Transformer() {
+        @Override
+        public Builder<?> transform(final Builder<?> builder, final TypeDescription typeDescription, final ClassLoader classLoader, final JavaModule module) {
+          return builder
+            .visit(advice(typeDescription).to(Fork.class).on(named("fork").and(takesArguments(0))))
+            .visit(advice(typeDescription).to(Exec.class).on(named("doExec").and(takesArguments(0))));
+        }})
+      .type(isSubTypeOf(ForkJoinPool.class))
+      .transform(new Transformer() {
+        @Override
+        public Builder<?> transform(final Builder<?> builder, final TypeDescription typeDescription, final ClassLoader classLoader, final JavaModule module) {
+          return builder.visit(advice(typeDescription).to(Submit.class).on(named("execute").or(named("submit")).or(named("invoke")).and(takesArguments(ForkJoinTask.class))));
+        }});
+  }
+
+  public static class Fork {
+    @Advice.OnMethodEnter
+    public static void enter(final @ClassName String className, final @Advice.Origin String origin, final @Advice.This ForkJoinTask<?> thiz) {
+      if (isAllowed(className, origin))
+        ForkJoinTaskAgentIntercept.capture(thiz);
+    }
+  }
+
+  public static class Submit {
+    @Advice.OnMethodEnter
+    public static void enter(final @ClassName String className, final @Advice.Origin String origin, final @Advice.Argument(value = 0) ForkJoinTask<?> task) {
+      if (isAllowed(className, origin) && task != null)
+        ForkJoinTaskAgentIntercept.capture(task);
+    }
+  }
+
+  public static class Exec {
+    @Advice.OnMethodEnter
+    public static Object enter(final @ClassName String className, final @Advice.Origin String origin, final @Advice.This ForkJoinTask<?> thiz) {
+      return isAllowed(className, origin) ? ForkJoinTaskAgentIntercept.execEnter(thiz) : null;
+    }
+
+    @Advice.OnMethodExit(onThrowable = Throwable.class)
+    public static void exit(final @Advice.Enter Object scope) {
+      ForkJoinTaskAgentIntercept.execExit(scope);
+    }
+  }
+}
@@ -62,8 +62,10 @@ public class ScheduledCallableAgentRule extends AgentRule {
       arg = new TracedCallable<>(arg, span, true);
       span.finish();
     }
-    else if (tracer.activeSpan() != null) {
-      arg = new TracedCallable<>(arg, tracer.activeSpan(), false);
+    else {
+      final Span activeSpan = tracer.activeSpan();
+      if (activeSpan != null)
+        arg = new TracedCallable<>(arg, activeSpan, false);
     }
   }
 }
\ No newline at end of file
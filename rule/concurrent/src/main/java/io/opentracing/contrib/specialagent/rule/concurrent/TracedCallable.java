@@ -52,6 +52,9 @@ public class TracedCallable<V> implements Callable<V> {
       }
     }
 
+    if (TracedRunnable.isActive(tracer, parent))
+      return delegate.call();
+
     try (final Scope scope = tracer.activateSpan(parent)) {
       return delegate.call();
     }
@@ -15,14 +15,79 @@
 
 package io.opentracing.contrib.specialagent.rule.concurrent;
 
+import java.util.concurrent.ForkJoinPool;
+
 import io.opentracing.References;
 import io.opentracing.Scope;
 import io.opentracing.Span;
 import io.opentracing.Tracer;
+import io.opentracing.contrib.common.WrapperProxy;
 import io.opentracing.tag.Tags;
 import io.opentracing.util.GlobalTracer;
 
 public class TracedRunnable implements Runnable {
+  /**
+   * Whether a class implements no interfaces other than {@link Runnable}, in
+   * which case its instances can be replaced by a {@link TracedRunnable}
+   * without a {@link WrapperProxy} that implements its other interfaces.
+   */
+  private static final ClassValue<Boolean> isPlainRunnable = new ClassValue<Boolean>() {
+    @Override
+    protected Boolean computeValue(final Class<?> type) {
+      for (Class<?> cls = type; cls != null; cls = cls.getSuperclass())
+        for (final Class<?> iface : cls.getInterfaces())
+          if (iface != Runnable.class)
+            return Boolean.FALSE;
+
+      return Boolean.TRUE;
+    }
+  };
+
+  /**
+   * Returns the specified {@link Runnable} wrapped to run in the scope of the
+   * specified parent {@link Span}. The {@link Runnable} is wrapped in a
+   * {@link WrapperProxy} only if it implements other interfaces that the
+   * executor may rely on, such as {@code RunnableFuture}. A
+   * {@link ForkJoinPool} adapts all {@link Runnable}s to its own tasks, so a
+   * {@link Runnable} that is executed by a {@link ForkJoinPool} is never
+   * wrapped in a {@link WrapperProxy}.
+   *
+   * @param executor The executor that executes the {@link Runnable}.
+   * @param runnable The {@link Runnable}.
+   * @param parent The parent {@link Span}.
+   * @param verbose Whether a span is created for the execution of the
+   *          {@link Runnable}.
+   * @return The specified {@link Runnable} wrapped to run in the scope of the
+   *         specified parent {@link Span}.
+   */
+  public static Runnable wrap(final Object executor, final Runnable runnable, final Span parent, final boolean verbose) {
+    if (runnable == null || runnable instanceof TracedRunnable)
+      return runnable;
+
+    final TracedRunnable traced = new TracedRunnable(runnable, parent, verbose);
+    return executor instanceof ForkJoinPool || isPlainRunnable.get(runnable.getClass()) ? traced : WrapperProxy.wrap(runnable, traced);
+  }
+
+  /**
+   * Returns whether the specified parent {@link Span} is the active span of
+   * the specified {@link Tracer}. The spans are compared by their
+   * {@link io.opentracing.SpanContext}, because a tracer that wraps the spans
+   * of its target tracer, such as the {@code RewritableTracer}, returns a new
+   * wrapper of the same span from each call of {@link Tracer#activeSpan()}.
+   *
+   * @param tracer The {@link Tracer}.
+   * @param parent The parent {@link Span}.
+   * @return Whether the specified parent {@link Span} is the active span of
+   *         the specified {@link Tracer}.
+   */
+  static boolean isActive(final Tracer tracer, final Span parent) {
+    final Span activeSpan = tracer.activeSpan();
+    if (activeSpan == parent)
+      return true;
+
+    return activeSpan != null && parent != null && activeSpan.context() == parent.context();
+  }
+
   private final Runnable delegate;
   private final Span parent;
   private final boolean verbose;
@@ -49,10 +114,15 @@ public class TracedRunnable implements Runnable {
         span.finish();
       }
     }
+    else if (isActive(tracer, parent)) {
+      // The runnable is run by the thread that executed it, such as with a
+      // direct executor or the CallerRunsPolicy, so the parent is still active
+      delegate.run();
+    }
     else {
       try (final Scope scope = tracer.activateSpan(parent)) {
         delegate.run();
       }
     }
   }
-}
\ No newline at end of file
+}
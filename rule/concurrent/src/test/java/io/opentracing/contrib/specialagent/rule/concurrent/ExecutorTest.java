@@ -20,6 +20,7 @@ import static org.junit.Assert.*;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.After;
 import org.junit.Before;
@@ -28,6 +29,7 @@ import org.junit.runner.RunWith;
 
 import io.opentracing.Scope;
 import io.opentracing.contrib.specialagent.AgentRunner;
+import io.opentracing.mock.MockSpan;
 import io.opentracing.mock.MockTracer;
 
 /**
@@ -81,4 +83,25 @@ public class ExecutorTest extends AbstractConcurrentTest {
     countDownLatch.await();
     assertFalse(tracer.finishedSpans().isEmpty());
   }
-}
\ No newline at end of file
+
+  @Test
+  @AgentRunner.TestConfig(verbose=false)
+  public void testForkJoinPoolExecuteSilentWithParent(final MockTracer tracer) throws InterruptedException {
+    final ForkJoinPool forkJoinPool = new ForkJoinPool(2);
+    try {
+      final CountDownLatch countDownLatch = new CountDownLatch(1);
+      final MockSpan parent = (MockSpan)tracer.buildSpan("parent").start();
+      try (final Scope scope = tracer.activateSpan(parent)) {
+        forkJoinPool.execute(new TestRunnable(tracer, countDownLatch));
+      }
+
+      countDownLatch.await();
+      parent.finish();
+      assertEquals(2, tracer.finishedSpans().size());
+      assertEquals(parent.context().spanId(), tracer.finishedSpans().get(0).parentId());
+    }
+    finally {
+      forkJoinPool.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent.rule.concurrent;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.opentracing.Scope;
+import io.opentracing.Tracer;
+import io.opentracing.contrib.specialagent.AgentRunner;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+
+/**
+ * @author Seva Safris
+ */
+@RunWith(AgentRunner.class)
+public class ForkJoinTest extends AbstractConcurrentTest {
+  private static class SumTask extends RecursiveTask<Integer> {
+    private static final long serialVersionUID = -1398530426455476632L;
+    private final Tracer tracer;
+    private final int from;
+    private final int to;
+
+    SumTask(final Tracer tracer, final int from, final int to) {
+      this.tracer = tracer;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected Integer compute() {
+      if (to - from <= 1) {
+        tracer.buildSpan("leaf").start().finish();
+        return from;
+      }
+
+      final int mid = (from + to) / 2;
+      final SumTask left = new SumTask(tracer, from, mid);
+      left.fork();
+      return new SumTask(tracer, mid, to).compute() + left.join();
+    }
+  }
+
+  private static void assertChildrenOf(final MockSpan parent, final List<MockSpan> spans) {
+    for (final MockSpan span : spans)
+      if (span != parent)
+        assertEquals(span.operationName(), parent.context().spanId(), span.parentId());
+  }
+
+  @Test
+  @AgentRunner.TestConfig(verbose=false)
+  public void testForkJoinTask(final MockTracer tracer) {
+    final ForkJoinPool forkJoinPool = new ForkJoinPool(4);
+    try {
+      final MockSpan parent = (MockSpan)tracer.buildSpan("parent").start();
+      try (final Scope scope = tracer.activateSpan(parent)) {
+        assertEquals(Integer.valueOf(120), forkJoinPool.invoke(new SumTask(tracer, 0, 16)));
+      }
+
+      parent.finish();
+      assertEquals(17, tracer.finishedSpans().size());
+      assertChildrenOf(parent, tracer.finishedSpans());
+    }
+    finally {
+      forkJoinPool.shutdownNow();
+    }
+  }
+
+  @Test
+  @AgentRunner.TestConfig(verbose=false)
+  public void testCompletableFuture(final MockTracer tracer) throws ExecutionException, InterruptedException {
+    final CompletableFuture<String> source = new CompletableFuture<>();
+    final CompletableFuture<String> future;
+    final MockSpan parent = (MockSpan)tracer.buildSpan("parent").start();
+    try (final Scope scope = tracer.activateSpan(parent)) {
+      future = CompletableFuture.supplyAsync(new Supplier<String>() {
+        @Override
+        public String get() {
+          tracer.buildSpan("supply").start().finish();
+          return "supply";
+        }
+      }).thenCombineAsync(source, new BiFunction<String,String,String>() {
+        @Override
+        public String apply(final String a, final String b) {
+          return a + b;
+        }
+      }).thenApplyAsync(new Function<String,String>() {
+        @Override
+        public String apply(final String value) {
+          tracer.buildSpan("apply").start().finish();
+          return value;
+        }
+      });
+    }
+
+    // The source is completed by a thread without an active span
+    final Thread thread = new Thread() {
+      @Override
+      public void run() {
+        source.complete("source");
+      }
+    };
+    thread.start();
+
+    assertEquals("supplysource", future.get());
+    parent.finish();
+    assertEquals(3, tracer.finishedSpans().size());
+    assertChildrenOf(parent, tracer.finishedSpans());
+  }
+}
@@ -0,0 +1,67 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent.rule.concurrent;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.junit.Test;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.mock.MockTracer;
+
+public class TracedRunnableTest {
+  private static <T>T wrap(final Class<T> type, final Object target) {
+    return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, new InvocationHandler() {
+      @Override
+      public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        try {
+          final Object result = method.invoke(target, args);
+          // Return a new wrapper of the active span from each call
+          return "activeSpan".equals(method.getName()) && result != null ? wrap(Span.class, result) : result;
+        }
+        catch (final InvocationTargetException e) {
+          throw e.getCause();
+        }
+      }
+    }));
+  }
+
+  @Test
+  public void testIsActiveWithWrappingTracer() {
+    final MockTracer target = new MockTracer();
+    final Tracer tracer = wrap(Tracer.class, target);
+    final Span parent = target.buildSpan("parent").start();
+    assertFalse(TracedRunnable.isActive(tracer, parent));
+    try (final Scope scope = target.activateSpan(parent)) {
+      final Span activeSpan = tracer.activeSpan();
+      assertNotSame(activeSpan, tracer.activeSpan());
+      assertTrue(TracedRunnable.isActive(tracer, parent));
+      assertTrue(TracedRunnable.isActive(tracer, activeSpan));
+
+      final Span other = target.buildSpan("other").start();
+      try (final Scope inner = target.activateSpan(other)) {
+        assertFalse(TracedRunnable.isActive(tracer, parent));
+      }
+    }
+  }
+}
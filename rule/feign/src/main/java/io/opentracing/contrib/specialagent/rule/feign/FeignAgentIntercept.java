@@ -33,6 +33,7 @@ import io.opentracing.util.GlobalTracer;
 
 public class FeignAgentIntercept {
   static final String COMPONENT_NAME = "java-feign";
+  static final int COMPONENT_ID = LocalSpanContext.register(COMPONENT_NAME);
 
   public static Object onRequest(final Object arg1, final Object arg2) {
     final Request request = (Request)arg1;
@@ -47,7 +48,7 @@ public class FeignAgentIntercept {
       decorator.onRequest(request, (Options)arg2, span);
 
     final Scope scope = tracer.activateSpan(span);
-    LocalSpanContext.set(COMPONENT_NAME, span, scope);
+    LocalSpanContext.set(COMPONENT_ID, span, scope);
 
     return inject(tracer, span.context(), request);
   }
@@ -75,7 +76,7 @@ public class FeignAgentIntercept {
   }
 
   private static void finish() {
-    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_NAME);
+    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_ID);
     if (context != null)
       context.closeAndFinish();
   }
@@ -29,10 +29,11 @@ import io.opentracing.util.GlobalTracer;
 
 public class GoogleHttpClientAgentIntercept {
   static final String COMPONENT_NAME = "google-http-client";
+  static final int COMPONENT_ID = LocalSpanContext.register(COMPONENT_NAME);
 
   public static void enter(final Object thiz) {
-    if (LocalSpanContext.get(COMPONENT_NAME) != null) {
-      LocalSpanContext.get(COMPONENT_NAME).increment();
+    if (LocalSpanContext.get(COMPONENT_ID) != null) {
+      LocalSpanContext.get(COMPONENT_ID).increment();
       return;
     }
 
@@ -50,11 +51,11 @@ public class GoogleHttpClientAgentIntercept {
     final Scope scope = tracer.activateSpan(span);
     tracer.inject(span.context(), Builtin.HTTP_HEADERS, new HttpHeadersInjectAdapter(request.getHeaders()));
 
-    LocalSpanContext.set(COMPONENT_NAME, span, scope);
+    LocalSpanContext.set(COMPONENT_ID, span, scope);
   }
 
   public static void exit(Throwable thrown, Object returned) {
-    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_NAME);
+    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_ID);
     if (context == null)
       return;
 
@@ -31,10 +31,11 @@ import io.opentracing.util.GlobalTracer;
 
 public class HttpURLConnectionAgentIntercept {
   static final String COMPONENT_NAME = "http-url-connection";
+  static final int COMPONENT_ID = LocalSpanContext.register(COMPONENT_NAME);
 
   public static void enter(final Object thiz, final boolean connected) {
-    if (LocalSpanContext.get(COMPONENT_NAME) != null) {
-      LocalSpanContext.get(COMPONENT_NAME).increment();
+    if (LocalSpanContext.get(COMPONENT_ID) != null) {
+      LocalSpanContext.get(COMPONENT_ID).increment();
       return;
     }
 
@@ -58,11 +59,11 @@ public class HttpURLConnectionAgentIntercept {
     final Scope scope = tracer.activateSpan(span);
     tracer.inject(span.context(), Builtin.HTTP_HEADERS, new HttpURLConnectionInjectAdapter(connection));
 
-    LocalSpanContext.set(COMPONENT_NAME, span, scope);
+    LocalSpanContext.set(COMPONENT_ID, span, scope);
   }
 
   public static void exit(final Throwable thrown, int responseCode) {
-    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_NAME);
+    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_ID);
     if (context == null)
       return;
 
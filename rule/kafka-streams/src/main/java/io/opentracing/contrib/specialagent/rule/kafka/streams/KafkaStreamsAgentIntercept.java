@@ -30,13 +30,14 @@ import io.opentracing.util.GlobalTracer;
 
 public class KafkaStreamsAgentIntercept {
   static final String COMPONENT_NAME = "kafka-streams";
+  static final int COMPONENT_ID = LocalSpanContext.register(COMPONENT_NAME);
 
   public static void onNextRecordExit(final Object record) {
     if (record == null)
       return;
 
-    if (LocalSpanContext.get(COMPONENT_NAME) != null) {
-      LocalSpanContext.get(COMPONENT_NAME).increment();
+    if (LocalSpanContext.get(COMPONENT_ID) != null) {
+      LocalSpanContext.get(COMPONENT_ID).increment();
       return;
     }
 
@@ -57,11 +58,11 @@ public class KafkaStreamsAgentIntercept {
       spanBuilder.asChildOf(parentContext);
 
     final Span span = spanBuilder.start();
-    LocalSpanContext.set(COMPONENT_NAME, span, tracer.activateSpan(span));
+    LocalSpanContext.set(COMPONENT_ID, span, tracer.activateSpan(span));
   }
 
   public static void onProcessExit(final Throwable thrown) {
-    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_NAME);
+    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_ID);
     if (context == null || context.decrementAndGet() != 0)
       return;
 
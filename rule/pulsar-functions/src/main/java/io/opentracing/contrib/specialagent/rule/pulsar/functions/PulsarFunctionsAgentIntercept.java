@@ -33,6 +33,7 @@ import io.opentracing.util.GlobalTracer;
 
 public class PulsarFunctionsAgentIntercept {
   static final String COMPONENT_NAME = "java-pulsar-functions";
+  static final int COMPONENT_ID = LocalSpanContext.register(COMPONENT_NAME);
 
   public static void handleMessageEnter(final Object function, final Object contextArg, final Object arg0) {
     final Tracer tracer = GlobalTracer.get();
@@ -51,7 +52,7 @@ public class PulsarFunctionsAgentIntercept {
     final Span span = spanBuilder.start();
     final Scope scope = tracer.activateSpan(span);
 
-    LocalSpanContext.set(COMPONENT_NAME, span, scope);
+    LocalSpanContext.set(COMPONENT_ID, span, scope);
   }
 
   private static String getFunctionName(final Object function, final Object contextArg) {
@@ -69,12 +70,12 @@ public class PulsarFunctionsAgentIntercept {
   }
 
   public static void handleMessageEnd(final Object returned, final Throwable thrown) {
-    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_NAME);
+    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_ID);
     if (context == null)
       return;
 
-    context.closeScope();
     final Span span = context.getSpan();
+    context.closeScope();
 
     if (thrown != null) {
       OpenTracingApiUtil.setErrorTag(span, thrown);
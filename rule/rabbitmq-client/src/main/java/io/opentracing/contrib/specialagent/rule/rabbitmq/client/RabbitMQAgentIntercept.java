@@ -33,6 +33,8 @@ import io.opentracing.contrib.specialagent.OpenTracingApiUtil;
 import io.opentracing.util.GlobalTracer;
 
 public class RabbitMQAgentIntercept {
+  static final int COMPONENT_ID = LocalSpanContext.register(SpanDecorator.COMPONENT_NAME);
+
   public static void exitGet(final Object response, final Object queue, final Throwable thrown) {
     final Span span = TracingUtils.buildChildSpan(((GetResponse)response).getProps(), (String)queue, GlobalTracer.get());
     if (thrown != null)
@@ -42,7 +44,7 @@ public class RabbitMQAgentIntercept {
   }
 
   public static void finish(final Throwable thrown) {
-    final LocalSpanContext context = LocalSpanContext.get(SpanDecorator.COMPONENT_NAME);
+    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_ID);
     if (context == null)
       return;
 
@@ -58,7 +60,7 @@ public class RabbitMQAgentIntercept {
     final Span span = TracingUtils.buildSpan((String)exchange, (String)routingKey, properties, tracer);
 
     final Scope scope = tracer.activateSpan(span);
-    LocalSpanContext.set(SpanDecorator.COMPONENT_NAME, span, scope);
+    LocalSpanContext.set(COMPONENT_ID, span, scope);
 
     return inject(properties, span, tracer);
   }
@@ -33,10 +33,11 @@ import io.opentracing.util.GlobalTracer;
 
 public class SpringJmsAgentIntercept {
   static final String COMPONENT_NAME = "spring-jms";
+  static final int COMPONENT_ID = LocalSpanContext.register(COMPONENT_NAME);
 
   public static void onMessageEnter(final Object msg) {
-    if (LocalSpanContext.get(COMPONENT_NAME) != null) {
-      LocalSpanContext.get(COMPONENT_NAME).increment();
+    if (LocalSpanContext.get(COMPONENT_ID) != null) {
+      LocalSpanContext.get(COMPONENT_ID).increment();
       return;
     }
 
@@ -57,11 +58,11 @@ public class SpringJmsAgentIntercept {
       builder.addReference(References.FOLLOWS_FROM, spanContext);
 
     final Span span = builder.start();
-    LocalSpanContext.set(COMPONENT_NAME, span, tracer.activateSpan(span));
+    LocalSpanContext.set(COMPONENT_ID, span, tracer.activateSpan(span));
   }
 
   public static void onMessageExit(final Throwable thrown) {
-    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_NAME);
+    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_ID);
     if (context == null || context.decrementAndGet() != 0)
       return;
 
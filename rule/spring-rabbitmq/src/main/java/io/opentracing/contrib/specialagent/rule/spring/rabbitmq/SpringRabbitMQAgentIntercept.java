@@ -39,10 +39,11 @@ import io.opentracing.util.GlobalTracer;
 
 public class SpringRabbitMQAgentIntercept {
   static final String COMPONENT_NAME = "spring-rabbitmq";
+  static final int COMPONENT_ID = LocalSpanContext.register(COMPONENT_NAME);
 
   public static void onMessageEnter(final Object msg) {
-    if (LocalSpanContext.get(COMPONENT_NAME) != null) {
-      LocalSpanContext.get(COMPONENT_NAME).increment();
+    if (LocalSpanContext.get(COMPONENT_ID) != null) {
+      LocalSpanContext.get(COMPONENT_ID).increment();
       return;
     }
 
@@ -61,11 +62,11 @@ public class SpringRabbitMQAgentIntercept {
     }
 
     final Span span = builder.start();
-    LocalSpanContext.set(COMPONENT_NAME, span, tracer.activateSpan(span));
+    LocalSpanContext.set(COMPONENT_ID, span, tracer.activateSpan(span));
   }
 
   public static void onMessageExit(final Throwable thrown) {
-    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_NAME);
+    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_ID);
     if (context == null || context.decrementAndGet() != 0)
       return;
 
@@ -86,11 +87,11 @@ public class SpringRabbitMQAgentIntercept {
     final Tracer tracer = GlobalTracer.get();
     final Span span = TracingUtils.buildChildSpan(properties, null, tracer);
     final Scope scope = tracer.activateSpan(span);
-    LocalSpanContext.set(COMPONENT_NAME, span, scope);
+    LocalSpanContext.set(COMPONENT_ID, span, scope);
   }
 
   public static void handleDeliveryEnd(final Throwable thrown) {
-    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_NAME);
+    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_ID);
     if (context == null)
       return;
 
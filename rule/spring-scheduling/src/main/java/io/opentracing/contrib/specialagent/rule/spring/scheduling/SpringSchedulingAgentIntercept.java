@@ -29,6 +29,7 @@ import io.opentracing.util.GlobalTracer;
 
 public class SpringSchedulingAgentIntercept {
   static final String COMPONENT_NAME = "spring-scheduled";
+  static final int COMPONENT_ID = LocalSpanContext.register(COMPONENT_NAME);
 
   public static void enter(final Object thiz) {
     final ScheduledMethodRunnable runnable = (ScheduledMethodRunnable)thiz;
@@ -41,11 +42,11 @@ public class SpringSchedulingAgentIntercept {
       .start();
 
     final Scope scope = tracer.activateSpan(span);
-    LocalSpanContext.set(COMPONENT_NAME, span, scope);
+    LocalSpanContext.set(COMPONENT_ID, span, scope);
   }
 
   public static void exit(final Throwable thrown) {
-    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_NAME);
+    final LocalSpanContext context = LocalSpanContext.get(COMPONENT_ID);
     if (context == null)
       return;
 
@@ -15,44 +15,125 @@
 
 package io.opentracing.contrib.specialagent.rule.thread;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import io.opentracing.Scope;
 import io.opentracing.Span;
 import io.opentracing.contrib.specialagent.AgentRuleUtil;
+import io.opentracing.contrib.specialagent.ConcurrentWeakIdentityHashMap;
 import io.opentracing.util.GlobalTracer;
 
 public class ThreadAgentIntercept {
-  public static final Map<Long,Span> threadIdToSpan;
-  private static final ThreadLocal<Scope> localScope = new ThreadLocal<>();
+  /**
+   * The holder of the span of a thread, which is inherited by the thread from
+   * the thread that constructs it. The holder is set in the constructing thread
+   * immediately before the inheritable thread-locals are copied to the new
+   * thread, and is removed from the constructing thread right after the
+   * thread is constructed. The holder is empty until the thread is started,
+   * when it is set to the span that is active in the starting thread, and is
+   * consumed by the new thread when it runs. The span is thereby held by the
+   * thread itself, rather than by a global map, so that it is collected
+   * together with the thread, which is necessary for virtual threads, of which
+   * there may be millions.
+   */
+  public static final InheritableThreadLocal<AtomicReference<Span>> inheritedSpan;
+
+  /**
+   * The last thread constructed by the current thread that has inherited a
+   * holder, which is cleared when the thread is started. The thread is weakly
+   * referenced, so that a thread that is never started is not retained by the
+   * thread that constructed it.
+   */
+  public static final ThreadLocal<WeakReference<Thread>> constructedThread;
+
+  /**
+   * The holder inherited by the {@link #constructedThread}, which is empty
+   * until the thread is started, and thus never retains a span.
+   */
+  public static final ThreadLocal<AtomicReference<Span>> constructedSpan;
+
+  /**
+   * The spans of threads whose holder is not known to the starting thread,
+   * such as threads that are constructed with no active span, or that are
+   * started by a thread other than the one that constructed them. Entries are
+   * removed when the thread runs, and are collected with the thread if it
+   * never runs.
+   */
+  public static final ConcurrentMap<Thread,Span> threadToSpan;
 
   static {
     if (ThreadAgentIntercept.class.getClassLoader() == null) {
-      threadIdToSpan = new ConcurrentHashMap<>();
+      inheritedSpan = new InheritableThreadLocal<>();
+      constructedThread = new ThreadLocal<>();
+      constructedSpan = new ThreadLocal<>();
+      threadToSpan = new ConcurrentWeakIdentityHashMap<>();
     }
     else {
-      threadIdToSpan = AgentRuleUtil.getFieldInBootstrapClass(ThreadAgentIntercept.class, "threadIdToSpan");
+      inheritedSpan = AgentRuleUtil.getFieldInBootstrapClass(ThreadAgentIntercept.class, "inheritedSpan");
+      constructedThread = AgentRuleUtil.getFieldInBootstrapClass(ThreadAgentIntercept.class, "constructedThread");
+      constructedSpan = AgentRuleUtil.getFieldInBootstrapClass(ThreadAgentIntercept.class, "constructedSpan");
+      threadToSpan = AgentRuleUtil.getFieldInBootstrapClass(ThreadAgentIntercept.class, "threadToSpan");
     }
   }
 
+  public static void initEnter() {
+    if (GlobalTracer.get().activeSpan() != null)
+      inheritedSpan.set(new AtomicReference<Span>());
+    else
+      inheritedSpan.remove();
+  }
+
+  public static void initExit(final Thread thread) {
+    final AtomicReference<Span> holder = inheritedSpan.get();
+    if (holder == null)
+      return;
+
+    // The new thread has its own copy of the holder, so the constructing thread
+    // only keeps track of it until the thread is started
+    inheritedSpan.remove();
+    constructedThread.set(new WeakReference<>(thread));
+    constructedSpan.set(holder);
+  }
+
   public static void start(final Thread thread) {
     final Span span = GlobalTracer.get().activeSpan();
-    if (span != null)
-      threadIdToSpan.put(thread.getId(), span);
+    final WeakReference<Thread> constructed = constructedThread.get();
+    if (constructed != null && constructed.get() == thread) {
+      final AtomicReference<Span> holder = constructedSpan.get();
+      constructedThread.remove();
+      constructedSpan.remove();
+      if (span != null)
+        holder.set(span);
+    }
+    else if (span != null) {
+      threadToSpan.put(thread, span);
+    }
   }
 
-  public static void runEnter(final Thread thread) {
-    final Span span = threadIdToSpan.get(thread.getId());
-    if (span != null)
-      localScope.set(GlobalTracer.get().activateSpan(span));
+  public static Object runEnter(final Thread thread) {
+    // The `run` method may be called directly, rather than as the body of the
+    // thread, and `VirtualThread.run(Runnable)` is called by the carrier thread
+    // before the virtual thread is mounted
+    if (thread != Thread.currentThread())
+      return null;
+
+    // The span is consumed by the outermost `run` method, so that `super.run()`
+    // and `runWith(...)` do not activate it again
+    final AtomicReference<Span> holder = inheritedSpan.get();
+    if (holder != null)
+      inheritedSpan.remove();
+
+    Span span = threadToSpan.isEmpty() ? null : threadToSpan.remove(thread);
+    if (span == null && (holder == null || (span = holder.getAndSet(null)) == null))
+      return null;
+
+    return GlobalTracer.get().activateSpan(span);
   }
 
-  @SuppressWarnings("resource")
-  public static void runExit(final Thread thread) {
-    threadIdToSpan.remove(thread.getId());
-    final Scope scope = localScope.get();
+  public static void runExit(final Object scope) {
     if (scope != null)
-      scope.close();
+      ((Scope)scope).close();
   }
-}
\ No newline at end of file
+}
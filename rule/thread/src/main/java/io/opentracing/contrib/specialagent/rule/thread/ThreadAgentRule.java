@@ -33,40 +33,46 @@ public class ThreadAgentRule extends AgentRule {
       .transform(new Transformer() {
         @Override
         public Builder<?> transform(final Builder<?> builder, final TypeDescription typeDescription, final ClassLoader classLoader, final JavaModule module) {
+          // `Thread.runWith(Object,Runnable)` runs the task of virtual threads
+          // once they are mounted (JDK 21+)
           return builder
-            .visit(advice(typeDescription).to(Start.class).on(named("start")))
-            .visit(advice(typeDescription).to(Run.class).on(named("run")))
-            .visit(advice(typeDescription).to(RunError.class).on(named("run")));
+            .visit(advice(typeDescription).to(Init.class).on(isConstructor().and(isDeclaredBy(Thread.class))))
+            .visit(advice(typeDescription).to(Start.class).on(named("start").and(takesArguments(0))))
+            .visit(advice(typeDescription).to(Run.class).on(named("run").or(named("runWith"))));
         }});
   }
 
-  public static class Start {
+  public static class Init {
     @Advice.OnMethodEnter
-    public static void enter(final @ClassName String className, final @Advice.Origin String origin, final @Advice.This Thread thiz) {
+    public static void enter(final @ClassName String className, final @Advice.Origin String origin) {
       if (isAllowed(className, origin))
-        ThreadAgentIntercept.start(thiz);
+        ThreadAgentIntercept.initEnter();
+    }
+
+    @Advice.OnMethodExit
+    public static void exit(final @ClassName String className, final @Advice.Origin String origin, final @Advice.This Thread thiz) {
+      if (isAllowed(className, origin))
+        ThreadAgentIntercept.initExit(thiz);
     }
   }
 
-  public static class Run {
+  public static class Start {
     @Advice.OnMethodEnter
     public static void enter(final @ClassName String className, final @Advice.Origin String origin, final @Advice.This Thread thiz) {
       if (isAllowed(className, origin))
-        ThreadAgentIntercept.runEnter(thiz);
+        ThreadAgentIntercept.start(thiz);
     }
+  }
 
-    @Advice.OnMethodExit
-    public static void exit(final @ClassName String className, final @Advice.Origin String origin, final @Advice.This Thread thiz) {
-      if (isAllowed(className, origin))
-        ThreadAgentIntercept.runExit(thiz);
+  public static class Run {
+    @Advice.OnMethodEnter
+    public static Object enter(final @ClassName String className, final @Advice.Origin String origin, final @Advice.This Thread thiz) {
+      return isAllowed(className, origin) ? ThreadAgentIntercept.runEnter(thiz) : null;
     }
-  }
 
-  public static class RunError {
     @Advice.OnMethodExit(onThrowable = Throwable.class)
-    public static void exit(final @ClassName String className, final @Advice.Origin String origin, final @Advice.This Thread thiz, final @Advice.Thrown Throwable thrown) {
-      if (isAllowed(className, origin) && thrown != null)
-        ThreadAgentIntercept.runExit(thiz);
+    public static void exit(final @Advice.Enter Object scope) {
+      ThreadAgentIntercept.runExit(scope);
     }
   }
-}
\ No newline at end of file
+}
@@ -116,6 +116,56 @@ public class ThreadTest {
     assertNull(GlobalTracer.get().activeSpan());
   }
 
+  @Test
+  public void testConstructedInSpan(final MockTracer tracer) throws InterruptedException {
+    final AtomicBoolean foundSpan = new AtomicBoolean(false);
+    final Thread thread;
+    try (final Scope scope = tracer.buildSpan("parent").startActive(true)) {
+      thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          foundSpan.set(tracer.activeSpan() != null);
+        }
+      });
+    }
+
+    // The thread is started with no active span, so the span in which it was constructed is not activated
+    thread.start();
+    thread.join(10_000);
+    assertFalse(foundSpan.get());
+    assertEquals(1, tracer.finishedSpans().size());
+    assertNull(GlobalTracer.get().activeSpan());
+  }
+
+  @Test
+  public void testStartedByAnotherThread(final MockTracer tracer) throws InterruptedException {
+    final AtomicBoolean foundSpan = new AtomicBoolean(false);
+    final Thread thread;
+    try (final Scope scope = tracer.buildSpan("parent").startActive(true)) {
+      thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          foundSpan.set(tracer.activeSpan() != null);
+        }
+      });
+    }
+
+    // The thread is started by another thread with no active span, so the span
+    // in which it was constructed is not activated
+    final Thread starter = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        thread.start();
+      }
+    });
+    starter.start();
+    starter.join(10_000);
+    thread.join(10_000);
+    assertFalse(foundSpan.get());
+    assertEquals(1, tracer.finishedSpans().size());
+    assertNull(GlobalTracer.get().activeSpan());
+  }
+
   private static class CustomThread extends Thread {
     CustomThread(final Runnable runnable) {
       super(runnable);
@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.objectweb.asm.ClassReader;
@@ -34,17 +35,47 @@ import org.objectweb.asm.Type;
 class ClassScanner extends ClassVisitor {
   private static final Logger logger = Logger.getLogger(ClassScanner.class);
 
-  static ClassFingerprint fingerprint(final ClassLoader classLoader, final String resourcePath, final Set<String> innerClassExcludes) throws IOException {
+  static ClassFingerprint fingerprint(final ClassLoader classLoader, final String resourcePath, final Set<String> innerClassExcludes, final Map<String,ClassReader> readers) throws IOException {
     final Collection<MethodFingerprint> methods = new LinkedHashSet<>();
     final List<FieldFingerprint> fields = new ArrayList<>();
-    final ClassScanner scanner = scan(classLoader, resourcePath, methods, fields, innerClassExcludes);
+    final ClassScanner scanner = scan(classLoader, resourcePath, methods, fields, innerClassExcludes, readers);
     return scanner == null ? null : new ClassFingerprint(scanner.className, scanner.superClass, scanner.constructors, new ArrayList<>(methods), fields);
   }
 
-  private static ClassScanner scan(final ClassLoader classLoader, final String resourcePath, final Collection<MethodFingerprint> methods, final List<FieldFingerprint> fields, final Set<String> innerClassExcludes) throws IOException {
-    final ClassScanner scanner = new ClassScanner(classLoader, methods, fields, innerClassExcludes);
+  /**
+   * Returns the {@code ClassReader} of the class at the specified resource
+   * path, which is taken from the specified map of readers if it contains the
+   * resource path, and is otherwise read from the specified
+   * {@code ClassLoader}.
+   *
+   * @param classLoader The {@code ClassLoader}.
+   * @param resourcePath The resource path of the class.
+   * @param readers The map of readers of classes that have already been read
+   *          from the {@code ClassLoader}, in which a {@code null} value
+   *          represents a class that is not found, or {@code null}.
+   * @return The {@code ClassReader} of the class at the specified resource
+   *         path.
+   * @throws IOException If an I/O error has occurred, or if the class is not
+   *           found.
+   */
+  private static ClassReader getReader(final ClassLoader classLoader, final String resourcePath, final Map<String,ClassReader> readers) throws IOException {
+    if (readers != null && readers.containsKey(resourcePath)) {
+      final ClassReader reader = readers.get(resourcePath);
+      if (reader == null)
+        throw new IOException("Class not found");
+
+      return reader;
+    }
+
     try (final InputStream in = classLoader.getResourceAsStream(resourcePath)) {
-      new ClassReader(in).accept(scanner, 0);
+      return new ClassReader(in);
+    }
+  }
+
+  private static ClassScanner scan(final ClassLoader classLoader, final String resourcePath, final Collection<MethodFingerprint> methods, final List<FieldFingerprint> fields, final Set<String> innerClassExcludes, final Map<String,ClassReader> readers) throws IOException {
+    final ClassScanner scanner = new ClassScanner(classLoader, methods, fields, innerClassExcludes, readers);
+    try {
+      getReader(classLoader, resourcePath, readers).accept(scanner, 0);
       scanner.scanSupers();
       return scanner;
     }
@@ -59,12 +90,12 @@ class ClassScanner extends ClassVisitor {
     }
   }
 
-  private static void scanInterfaces(final List<String> interfaces, final ClassLoader classLoader, final Collection<MethodFingerprint> methods, final List<FieldFingerprint> fields, final Set<String> innerClassExcludes) throws IOException {
+  private static void scanInterfaces(final List<String> interfaces, final ClassLoader classLoader, final Collection<MethodFingerprint> methods, final List<FieldFingerprint> fields, final Set<String> innerClassExcludes, final Map<String,ClassReader> readers) throws IOException {
     for (final String cls : interfaces) {
       if (!FingerprintUtil.isExcluded(cls)) {
-        final ClassScanner scanner = ClassScanner.scan(classLoader, AssembleUtil.classNameToResource(cls), methods, fields, innerClassExcludes);
+        final ClassScanner scanner = ClassScanner.scan(classLoader, AssembleUtil.classNameToResource(cls), methods, fields, innerClassExcludes, readers);
         if (scanner != null && scanner.interfaces != null)
-          scanInterfaces(scanner.interfaces, classLoader, methods, fields, innerClassExcludes);
+          scanInterfaces(scanner.interfaces, classLoader, methods, fields, innerClassExcludes, readers);
       }
     }
   }
@@ -78,10 +109,12 @@ class ClassScanner extends ClassVisitor {
   private List<String> interfaces;
   private final ClassLoader classLoader;
   private final Set<String> innerClassExcludes;
+  private final Map<String,ClassReader> readers;
 
-  private ClassScanner(final ClassLoader classLoader, final Collection<MethodFingerprint> methods, final List<FieldFingerprint> fields, final Set<String> innerClassExcludes) {
+  private ClassScanner(final ClassLoader classLoader, final Collection<MethodFingerprint> methods, final List<FieldFingerprint> fields, final Set<String> innerClassExcludes, final Map<String,ClassReader> readers) {
     super(Opcodes.ASM5);
     this.classLoader = classLoader;
+    this.readers = readers;
     this.methods = methods;
     this.fields = fields;
     this.innerClassExcludes = innerClassExcludes;
@@ -90,12 +123,12 @@ class ClassScanner extends ClassVisitor {
   private void scanSupers() throws IOException {
     String superClass = this.superClass;
     while (superClass != null) {
-      final ClassScanner next = ClassScanner.scan(classLoader, AssembleUtil.classNameToResource(superClass), methods, fields, innerClassExcludes);
+      final ClassScanner next = ClassScanner.scan(classLoader, AssembleUtil.classNameToResource(superClass), methods, fields, innerClassExcludes, readers);
       superClass = next == null ? null : next.superClass;
     }
 
     if (interfaces != null)
-      scanInterfaces(interfaces, classLoader, methods, fields, innerClassExcludes);
+      scanInterfaces(interfaces, classLoader, methods, fields, innerClassExcludes, readers);
   }
 
   @Override
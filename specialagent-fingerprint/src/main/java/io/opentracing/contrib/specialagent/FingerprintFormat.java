@@ -0,0 +1,303 @@
+/* Copyright 2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentracing.contrib.specialagent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * The binary format of {@link LibraryFingerprint}, which replaces Java
+ * serialization of {@code fingerprint.bin}.
+ * <p>
+ * The format starts with a magic number and a version, followed by a table of
+ * all distinct strings in the fingerprint. Every string in the fingerprint is
+ * encoded as an index into that table, so that the many repetitions of class
+ * names in method and field signatures are stored, and decoded, only once.
+ * Each {@link ClassFingerprint} is encoded as a length-prefixed record.
+ * Integers are encoded as unsigned variable-length quantities, where the
+ * indices of strings and the sizes of lists are offset by one so that
+ * {@code 0} represents {@code null}.
+ *
+ * <pre>
+ * fingerprint  := MAGIC VERSION strings list(present) list(absent) count(class) class*
+ * strings      := count(string) (length utf8)*
+ * class        := length name superClass count(ctor) ctor* count(method) method* count(field) field*
+ * ctor         := list(parameterType) list(exceptionType)
+ * method       := name returnType list(parameterType) list(exceptionType)
+ * field        := name type
+ * </pre>
+ *
+ * @author Seva Safris
+ */
+final class FingerprintFormat {
+  private static final int MAGIC = 0x53414650;
+  private static final int VERSION = 1;
+
+  /**
+   * Returns {@code true} if the specified buffer starts with the magic number
+   * of this format.
+   *
+   * @param buffer The buffer.
+   * @return {@code true} if the specified buffer starts with the magic number
+   *         of this format.
+   */
+  static boolean isFormat(final ByteBuffer buffer) {
+    return buffer.remaining() >= 4 && buffer.getInt(buffer.position()) == MAGIC;
+  }
+
+  /**
+   * Writes the specified {@link LibraryFingerprint} to the specified
+   * {@code OutputStream}.
+   *
+   * @param fingerprint The {@link LibraryFingerprint}.
+   * @param out The {@code OutputStream}.
+   * @throws IOException If an I/O error has occurred.
+   */
+  static void write(final LibraryFingerprint fingerprint, final OutputStream out) throws IOException {
+    final Writer writer = new Writer();
+    final ClassFingerprint[] classes = fingerprint.getClasses();
+    writer.writeStrings(fingerprint.getPresents());
+    writer.writeStrings(fingerprint.getAbsents());
+    writer.writeSize(classes == null ? null : classes.length);
+    if (classes != null) {
+      final Writer record = new Writer(writer.strings);
+      for (final ClassFingerprint cls : classes) {
+        record.bytes.reset();
+        record.writeClass(cls);
+        writer.writeInt(record.bytes.size());
+        record.bytes.writeTo(writer.bytes);
+      }
+    }
+
+    final Writer header = new Writer();
+    header.writeInt(writer.strings.size());
+    for (final String string : writer.strings.keySet()) {
+      final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+      header.writeInt(bytes.length);
+      header.bytes.write(bytes);
+    }
+
+    final ByteBuffer magic = ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION);
+    out.write(magic.array());
+    header.bytes.writeTo(out);
+    writer.bytes.writeTo(out);
+  }
+
+  /**
+   * Returns the {@link LibraryFingerprint} read from the specified buffer,
+   * which is decoded in place.
+   *
+   * @param buffer The buffer.
+   * @return The {@link LibraryFingerprint} read from the specified buffer.
+   * @throws IOException If the buffer is not in this format, has an unsupported
+   *           version, or is truncated.
+   */
+  static LibraryFingerprint read(final ByteBuffer buffer) throws IOException {
+    if (!isFormat(buffer))
+      throw new IOException("Unrecognized fingerprint format");
+
+    buffer.getInt();
+    final int version = buffer.getInt();
+    if (version != VERSION)
+      throw new IOException("Unsupported fingerprint version: " + version);
+
+    try {
+      return new Reader(buffer).readFingerprint();
+    }
+    catch (final BufferUnderflowException | IndexOutOfBoundsException e) {
+      throw new IOException("Truncated fingerprint", e);
+    }
+  }
+
+  private static final class Writer {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final LinkedHashMap<String,Integer> strings;
+
+    private Writer(final LinkedHashMap<String,Integer> strings) {
+      this.strings = strings;
+    }
+
+    private Writer() {
+      this(new LinkedHashMap<String,Integer>());
+    }
+
+    private void writeInt(int value) {
+      while ((value & ~0x7f) != 0) {
+        bytes.write((value & 0x7f) | 0x80);
+        value >>>= 7;
+      }
+
+      bytes.write(value);
+    }
+
+    private void writeSize(final Integer size) {
+      writeInt(size == null ? 0 : size + 1);
+    }
+
+    private void writeString(final String string) {
+      if (string == null) {
+        writeInt(0);
+        return;
+      }
+
+      Integer index = strings.get(string);
+      if (index == null)
+        strings.put(string, index = strings.size());
+
+      writeInt(index + 1);
+    }
+
+    private void writeStrings(final List<String> strings) {
+      writeSize(strings == null ? null : strings.size());
+      if (strings != null)
+        for (final String string : strings)
+          writeString(string);
+    }
+
+    private void writeClass(final ClassFingerprint cls) {
+      writeString(cls.getName());
+      writeString(cls.getSuperClass());
+      final List<ConstructorFingerprint> constructors = cls.getConstructors();
+      writeSize(constructors == null ? null : constructors.size());
+      if (constructors != null) {
+        for (final ConstructorFingerprint constructor : constructors) {
+          writeStrings(constructor.getParameterTypes());
+          writeStrings(constructor.getExceptionTypes());
+        }
+      }
+
+      final List<MethodFingerprint> methods = cls.getMethods();
+      writeSize(methods == null ? null : methods.size());
+      if (methods != null) {
+        for (final MethodFingerprint method : methods) {
+          writeString(method.getName());
+          writeString(method.getReturnType());
+          writeStrings(method.getParameterTypes());
+          writeStrings(method.getExceptionTypes());
+        }
+      }
+
+      final List<FieldFingerprint> fields = cls.getFields();
+      writeSize(fields == null ? null : fields.size());
+      if (fields != null) {
+        for (final FieldFingerprint field : fields) {
+          writeString(field.getName());
+          writeString(field.getType());
+        }
+      }
+    }
+  }
+
+  private static final class Reader {
+    private final ByteBuffer buffer;
+    private String[] strings;
+
+    private Reader(final ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    private int readInt() throws IOException {
+      int value = 0;
+      for (int shift = 0; shift < 32; shift += 7) {
+        final byte b = buffer.get();
+        value |= (b & 0x7f) << shift;
+        if ((b & 0x80) == 0)
+          return value;
+      }
+
+      throw new IOException("Malformed integer in fingerprint");
+    }
+
+    private String readString() throws IOException {
+      final int index = readInt();
+      return index == 0 ? null : strings[index - 1];
+    }
+
+    private List<String> readStrings() throws IOException {
+      final int size = readInt() - 1;
+      if (size == -1)
+        return null;
+
+      final List<String> list = new ArrayList<>(size);
+      for (int i = 0; i < size; ++i)
+        list.add(readString());
+
+      return list;
+    }
+
+    private LibraryFingerprint readFingerprint() throws IOException {
+      strings = new String[readInt()];
+      final byte[] array = buffer.hasArray() ? buffer.array() : null;
+      for (int i = 0; i < strings.length; ++i) {
+        final int length = readInt();
+        if (array != null) {
+          strings[i] = new String(array, buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+          buffer.position(buffer.position() + length);
+        }
+        else {
+          final byte[] bytes = new byte[length];
+          buffer.get(bytes);
+          strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+      }
+
+      final List<String> presents = readStrings();
+      final List<String> absents = readStrings();
+      final int size = readInt() - 1;
+      final ClassFingerprint[] classes = size == -1 ? null : new ClassFingerprint[size];
+      for (int i = 0; i < size; ++i) {
+        final int length = readInt();
+        final int end = buffer.position() + length;
+        classes[i] = readClass();
+        if (buffer.position() != end)
+          throw new IOException("Malformed class record in fingerprint: " + classes[i].getName());
+      }
+
+      return new LibraryFingerprint(classes, presents, absents);
+    }
+
+    private ClassFingerprint readClass() throws IOException {
+      final String name = readString();
+      final String superClass = readString();
+      final int constructorSize = readInt() - 1;
+      final List<ConstructorFingerprint> constructors = constructorSize == -1 ? null : new ArrayList<ConstructorFingerprint>(constructorSize);
+      for (int i = 0; i < constructorSize; ++i)
+        constructors.add(new ConstructorFingerprint(readStrings(), readStrings()));
+
+      final int methodSize = readInt() - 1;
+      final List<MethodFingerprint> methods = methodSize == -1 ? null : new ArrayList<MethodFingerprint>(methodSize);
+      for (int i = 0; i < methodSize; ++i)
+        methods.add(new MethodFingerprint(readString(), readString(), readStrings(), readStrings()));
+
+      final int fieldSize = readInt() - 1;
+      final List<FieldFingerprint> fields = fieldSize == -1 ? null : new ArrayList<FieldFingerprint>(fieldSize);
+      for (int i = 0; i < fieldSize; ++i)
+        fields.add(new FieldFingerprint(readString(), readString()));
+
+      return new ClassFingerprint(name, superClass, constructors, methods, fields);
+    }
+  }
+
+  private FingerprintFormat() {
+  }
+}
@@ -22,6 +22,7 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
+import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 
 /**
@@ -33,11 +34,26 @@ import org.objectweb.asm.ClassVisitor;
 class FingerprintVerifier {
   private static final Logger logger = Logger.getLogger(FingerprintVerifier.class);
 
+  private final Map<String,ClassReader> readers;
+
   /**
-   * Creates a new {@code Fingerprinter}.
+   * Creates a new {@code FingerprintVerifier}.
    */
   FingerprintVerifier() {
-    super();
+    this(null);
+  }
+
+  /**
+   * Creates a new {@code FingerprintVerifier} that reuses the specified
+   * readers of classes that have already been read from the
+   * {@code ClassLoader} to be verified.
+   *
+   * @param readers The map of resource paths to {@code ClassReader}s, in which
+   *          a {@code null} value represents a class that is not found, or
+   *          {@code null}.
+   */
+  FingerprintVerifier(final Map<String,ClassReader> readers) {
+    this.readers = readers;
   }
 
   private final Map<String,ClassFingerprint> classNameToFingerprint = new HashMap<>();
@@ -89,6 +105,6 @@ class FingerprintVerifier {
     if (logger.isLoggable(Level.FINEST))
       logger.finest(AssembleUtil.getNameId(this) + "#fingerprint(" + AssembleUtil.getNameId(classLoader) + ", \"" + resourcePath + "\")");
 
-    return ClassScanner.fingerprint(classLoader, resourcePath, innerClassExcludes);
+    return ClassScanner.fingerprint(classLoader, resourcePath, innerClassExcludes, readers);
   }
 }
\ No newline at end of file
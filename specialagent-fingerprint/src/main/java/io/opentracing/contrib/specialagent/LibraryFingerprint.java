@@ -15,16 +15,30 @@
 
 package io.opentracing.contrib.specialagent;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Type;
 
 /**
  * A {@link Fingerprint} that represents the fingerprint of a library.
@@ -36,26 +50,50 @@ public class LibraryFingerprint extends Fingerprint {
   private static final Logger logger = Logger.getLogger(LibraryFingerprint.class);
 
   /**
-   * Returns a {@code LibraryFingerprint} for the serialized object encoding at
-   * the specified URL.
+   * Returns a {@code LibraryFingerprint} for the encoding at the specified URL.
+   * The encoding is expected to be in the binary format of
+   * {@link FingerprintFormat}, and otherwise is read as a serialized object,
+   * as written by prior versions. Resources at {@code file:} URLs are
+   * memory-mapped and decoded in place.
    *
-   * @param url The URL referencing the resource with the serialized object
-   *          encoding representing a {@code LibraryFingerprint} object.
-   * @return A {@code LibraryFingerprint} for the serialized object encoding at
-   *         the specified URL.
+   * @param url The URL referencing the resource with the encoding representing
+   *          a {@code LibraryFingerprint} object.
+   * @return A {@code LibraryFingerprint} for the encoding at the specified URL.
    * @throws IOException If an I/O error has occurred.
    */
   public static LibraryFingerprint fromFile(final URL url) throws IOException {
-    try (final ObjectInputStream in = new ObjectInputStream(url.openStream())) {
-      final LibraryFingerprint libraryFingerprint = (LibraryFingerprint)in.readObject();
-      if (logger.isLoggable(Level.FINEST))
-        logger.finest("LibraryFingerprint#fromFile(\"" + url + "\"): " + libraryFingerprint);
+    final ByteBuffer buffer;
+    if ("file".equals(url.getProtocol())) {
+      try (final FileChannel channel = FileChannel.open(Paths.get(url.toURI()), StandardOpenOption.READ)) {
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+      catch (final URISyntaxException e) {
+        throw new IllegalArgumentException(e);
+      }
+    }
+    else {
+      try (final InputStream in = url.openStream()) {
+        buffer = ByteBuffer.wrap(AssembleUtil.readBytes(in));
+      }
+    }
 
-      return libraryFingerprint == null ? null : libraryFingerprint;
+    final LibraryFingerprint libraryFingerprint;
+    if (FingerprintFormat.isFormat(buffer)) {
+      libraryFingerprint = FingerprintFormat.read(buffer);
     }
-    catch (final ClassNotFoundException e) {
-      throw new UnsupportedOperationException(e);
+    else {
+      try (final ObjectInputStream in = new ObjectInputStream(url.openStream())) {
+        libraryFingerprint = (LibraryFingerprint)in.readObject();
+      }
+      catch (final ClassNotFoundException e) {
+        throw new UnsupportedOperationException(e);
+      }
     }
+
+    if (logger.isLoggable(Level.FINEST))
+      logger.finest("LibraryFingerprint#fromFile(\"" + url + "\"): " + libraryFingerprint);
+
+    return libraryFingerprint;
   }
 
   private final ClassFingerprint[] classes;
@@ -86,6 +124,20 @@ public class LibraryFingerprint extends Fingerprint {
     this.absents = absents;
   }
 
+  /**
+   * Creates a new {@code LibraryFingerprint} with the specified classes, as
+   * decoded by {@link FingerprintFormat}.
+   *
+   * @param classes The {@code ClassFingerprint} array.
+   * @param presents List of classes the fingerprint must assert are present.
+   * @param absents List of classes the fingerprint must assert are absent.
+   */
+  LibraryFingerprint(final ClassFingerprint[] classes, final List<String> presents, final List<String> absents) {
+    this.classes = classes;
+    this.presents = presents;
+    this.absents = absents;
+  }
+
   /**
    * Creates a new {@code LibraryFingerprint} that is empty.
    */
@@ -97,14 +149,14 @@ public class LibraryFingerprint extends Fingerprint {
 
   /**
    * Exports this {@code LibraryFingerprint} to the specified {@code File} in
-   * the form of a serialized object representation.
+   * the binary format of {@link FingerprintFormat}.
    *
    * @param file The {@code File} to which to export.
    * @throws IOException If an I/O error has occurred.
    */
   void toFile(final File file) throws IOException {
-    try (final ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file))) {
-      out.writeObject(this);
+    try (final OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+      FingerprintFormat.write(this, out);
     }
   }
 
@@ -130,6 +182,100 @@ public class LibraryFingerprint extends Fingerprint {
     return this.absents;
   }
 
+  /**
+   * Updates the specified {@code MessageDigest} with the state of the runtime
+   * represented by the specified {@code ClassLoader} that is read by
+   * {@link #isCompatible(ClassLoader)}: the presence of the classes in
+   * {@link #getPresents()} and {@link #getAbsents()}, and the bytes of the
+   * classes in {@link #getClasses()} together with the bytes of the
+   * superclasses and interfaces that are scanned with them. Since
+   * {@link #isCompatible(ClassLoader)} is a function of exactly this state,
+   * two runtimes that produce the same digest yield the same result, which
+   * allows the result to be reused without having to scan the classes again.
+   * <p>
+   * The classes that are read are returned, so that if the result is not
+   * reused, they can be passed to {@link #isCompatible(ClassLoader,Map)}
+   * without being read and parsed again.
+   *
+   * @param classLoader The {@code ClassLoader} representing the runtime.
+   * @param digest The {@code MessageDigest} to update.
+   * @return The map of the resource paths of the classes that were read to
+   *         their {@code ClassReader}s, in which a {@code null} value
+   *         represents a class that is not found.
+   * @throws IOException If an I/O error has occurred.
+   */
+  public Map<String,ClassReader> digest(final ClassLoader classLoader, final MessageDigest digest) throws IOException {
+    if (presents != null)
+      for (final String present : presents)
+        digest.update(classLoader.getResource(AssembleUtil.classNameToResource(present)) != null ? (byte)1 : (byte)0);
+
+    if (absents != null)
+      for (final String absent : absents)
+        digest.update(classLoader.getResource(AssembleUtil.classNameToResource(absent)) != null ? (byte)1 : (byte)0);
+
+    final Map<String,ClassReader> readers = new HashMap<>();
+    if (classes != null)
+      for (final ClassFingerprint expected : classes)
+        digest(classLoader, expected.getName(), digest, readers);
+
+    return readers;
+  }
+
+  /**
+   * Updates the specified {@code MessageDigest} with the name and bytes of the
+   * class by the specified name, followed by its superclasses and interfaces
+   * in the order in which {@link ClassScanner} scans them.
+   *
+   * @param classLoader The {@code ClassLoader} representing the runtime.
+   * @param className The name of the class.
+   * @param digest The {@code MessageDigest} to update.
+   * @param readers The map of the resource paths of the classes that have
+   *          already been digested to their {@code ClassReader}s.
+   * @throws IOException If an I/O error has occurred.
+   */
+  private static void digest(final ClassLoader classLoader, final String className, final MessageDigest digest, final Map<String,ClassReader> readers) throws IOException {
+    final String resourcePath = AssembleUtil.classNameToResource(className);
+    if (readers.containsKey(resourcePath))
+      return;
+
+    readers.put(resourcePath, null);
+    digest.update(className.getBytes(StandardCharsets.UTF_8));
+    final byte[] bytes;
+    try (final InputStream in = classLoader.getResourceAsStream(resourcePath)) {
+      if (in == null) {
+        digest.update((byte)0);
+        return;
+      }
+
+      bytes = AssembleUtil.readBytes(in);
+    }
+
+    digest.update((byte)1);
+    digest.update(bytes);
+
+    final ClassReader reader;
+    try {
+      reader = new ClassReader(bytes);
+    }
+    catch (final RuntimeException e) {
+      // Let the compatibility test read the class, and fail, by itself
+      readers.remove(resourcePath);
+      return;
+    }
+
+    readers.put(resourcePath, reader);
+
+    final String superName = reader.getSuperName();
+    if (superName != null && !"java/lang/Object".equals(superName))
+      digest(classLoader, Type.getObjectType(superName).getClassName(), digest, readers);
+
+    for (final String interfaceName : reader.getInterfaces()) {
+      final String name = Type.getObjectType(interfaceName).getClassName();
+      if (!FingerprintUtil.isExcluded(name))
+        digest(classLoader, name, digest, readers);
+    }
+  }
+
   /**
    * Tests whether the runtime represented by the specified {@code ClassLoader}
    * is compatible with this fingerprint.
@@ -141,6 +287,23 @@ public class LibraryFingerprint extends Fingerprint {
    *         the runtime is compatible with this fingerprint.
    */
   public List<FingerprintError> isCompatible(final ClassLoader classLoader) {
+    return isCompatible(classLoader, null);
+  }
+
+  /**
+   * Tests whether the runtime represented by the specified {@code ClassLoader}
+   * is compatible with this fingerprint, reusing the classes that have already
+   * been read by {@link #digest(ClassLoader,MessageDigest)}.
+   *
+   * @param classLoader The {@code ClassLoader} representing the runtime to test
+   *          for compatibility.
+   * @param readers The map returned by
+   *          {@link #digest(ClassLoader,MessageDigest)}, or {@code null}.
+   * @return A list of {@code FingerprintError} objects representing all
+   *         errors encountered in the compatibility test, or {@code null} if
+   *         the runtime is compatible with this fingerprint.
+   */
+  public List<FingerprintError> isCompatible(final ClassLoader classLoader, final Map<String,ClassReader> readers) {
     final List<FingerprintError> errors = new ArrayList<>();
     if (presents != null) {
       for (final String present : presents) {
@@ -158,7 +321,7 @@ public class LibraryFingerprint extends Fingerprint {
       }
     }
 
-    final FingerprintVerifier verifier = new FingerprintVerifier();
+    final FingerprintVerifier verifier = new FingerprintVerifier(readers);
     for (int i = 0; i < classes.length; ++i) {
       try {
         final ClassFingerprint expected = classes[i];
@@ -17,9 +17,11 @@ package io.opentracing.contrib.specialagent;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.List;
 
@@ -37,6 +39,21 @@ public class FingerprintTest {
     System.out.println(AssembleUtil.toIndentedString(classFingerprints));
   }
 
+  @Test
+  public void testFormat() throws IOException {
+    final List<ClassFingerprint> classFingerprints = new FingerprintBuilder(logger).build(ClassLoader.getSystemClassLoader(), Integer.MAX_VALUE, FpTestClass1.class);
+    final LibraryFingerprint expected = new LibraryFingerprint(classFingerprints.toArray(new ClassFingerprint[classFingerprints.size()]), Arrays.asList("java.lang.String"), null);
+    final File file = File.createTempFile("fingerprint", ".bin");
+    file.deleteOnExit();
+    expected.toFile(file);
+
+    final LibraryFingerprint actual = LibraryFingerprint.fromFile(file.toURI().toURL());
+    assertEquals(expected, actual);
+    assertEquals(expected.toString(), actual.toString());
+    assertEquals(expected.getPresents(), actual.getPresents());
+    assertNull(actual.getAbsents());
+  }
+
   @Test
   @Ignore
   public void test1() throws IOException {
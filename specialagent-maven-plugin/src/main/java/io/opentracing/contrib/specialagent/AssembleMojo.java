@@ -21,6 +21,7 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Set;
@@ -51,6 +52,7 @@ import org.apache.maven.project.ProjectDependenciesResolver;
 public final class AssembleMojo extends ResolveDependenciesMojo {
   private static final String pluginsDestDir = "dependencies/" + UtilConstants.META_INF_PLUGIN_PATH;
   private static final String isoDestDir = "dependencies/" + UtilConstants.META_INF_ISO_PATH;
+  private static final String pluginIndexFile = "dependencies/" + UtilConstants.META_INF_PLUGIN_INDEX;
   private static final String declarationScopeOfIntegrations = "provided";
 
   @Inject
@@ -150,6 +152,18 @@ public final class AssembleMojo extends ResolveDependenciesMojo {
         }
       }
 
+      // Index the plugin JARs, so that the SpecialAgent does not have to open each JAR at startup
+      final File[] pluginFiles = pluginsPath.listFiles();
+      if (pluginFiles != null) {
+        Arrays.sort(pluginFiles);
+        final PluginIndex pluginIndex = new PluginIndex();
+        for (final File pluginFile : pluginFiles)
+          if (pluginFile.getName().endsWith(".jar"))
+            pluginIndex.add(PluginIndex.scan(pluginFile));
+
+        pluginIndex.write(new File(getProject().getBuild().getDirectory(), pluginIndexFile));
+      }
+
       if (isolatedDependencies != null && isolatedDependencies.size() > 0) {
         for (final IsolatedDependency dependency : isolatedDependencies) {
           if (dependency.getVersion() != null)